@@ -6,30 +6,183 @@ import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs tasks one at a time on a background thread, and calls back on the main thread.
+ * <p>
+ * A task submitted with a key replaces the task of the same key which is still waiting; so only the latest one of a burst runs
+ * (e.g. translations while the baseline is being dragged). A replaced task is dropped, and its callback is never called.
+ * Tasks already running are not interrupted.
+ * <p>
+ * Callbacks are queued and delivered in one main-thread post for all of those queued meanwhile, not one post each.
+ * Only a {@link StartCallback} is told when its task starts; a plain {@link Callback} costs a single delivery, on completion.
+ * Queue depth, queue wait and run time are kept for each key, see {@link TaskExecutor#getStats(Object)}.
+ */
 public class TaskExecutor {
-    private final ExecutorService sService;
-    private final Handler handler;
+    private final ThreadPoolExecutor sService;
+    /* Runs the deliveries of callbacks; posts to the main thread */
+    private final Executor mainThread;
+    /* Waiting task of each key */
+    private final Map<Object, Task<?>> pendingTasks;
+    /* Statistics of each key; null key for tasks without one */
+    private final Map<Object, Stats> stats;
+    /* Callbacks waiting for the main thread, and whether a post delivering them is on its way */
+    private final List<Runnable> pendingCallbacks;
+    private boolean dispatchPosted;
+    private final Runnable dispatcher;
 
     TaskExecutor() {
+        this(new Handler(Looper.getMainLooper())::post);
+    }
+
+    /**
+     * @param mainThread delivers the callbacks, in place of the main thread
+     */
+    TaskExecutor(@NonNull Executor mainThread) {
         this.sService = new ThreadPoolExecutor(0, 1,
                 3L, TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>());
-        this.handler = new Handler(Looper.getMainLooper());
+        this.mainThread = mainThread;
+        this.pendingTasks = new HashMap<>();
+        this.stats = new HashMap<>();
+        this.pendingCallbacks = new ArrayList<>();
+        this.dispatchPosted = false;
+        this.dispatcher = this::dispatchCallbacks;
     }
 
+    /**
+     * Queues a task behind all others.
+     */
     public <R> void execute(@NonNull Callable<R> callable, @Nullable Callback<R> callback) {
-        sService.execute(() -> {
-            handler.post(() -> {
-                if (callback != null) {
-                    callback.onStart();
+        submit(null, callable, callback);
+    }
+
+    /**
+     * Queues a task; replaces the waiting task of the same key, if any.
+     *
+     * @param key identifies the tasks superseding each other; compared by equals
+     */
+    public <R> void execute(@NonNull Object key, @NonNull Callable<R> callable, @Nullable Callback<R> callback) {
+        submit(key, callable, callback);
+    }
+
+    private <R> void submit(@Nullable Object key, @NonNull Callable<R> callable, @Nullable Callback<R> callback) {
+        final Task<R> task = new Task<>(key, callable, callback);
+        synchronized (stats) {
+            final Stats keyStats = statsOf(key);
+            keyStats.submitted++;
+            keyStats.queueDepth++;
+            if (key != null) {
+                final Task<?> replaced = pendingTasks.put(key, task);
+                if (replaced != null && sService.remove(replaced)) {
+                    keyStats.replaced++;
+                    keyStats.queueDepth--;
+                }
+            }
+            // Queued under the lock, so a newer task always finds this one in the queue
+            sService.execute(task);
+        }
+    }
+
+    private Stats statsOf(@Nullable Object key) {
+        Stats keyStats = stats.get(key);
+        if (keyStats == null) {
+            keyStats = new Stats();
+            stats.put(key, keyStats);
+        }
+        return keyStats;
+    }
+
+    /* Queues a callback, and posts the delivery unless one is on its way */
+    private void postCallback(@NonNull Runnable callback) {
+        synchronized (pendingCallbacks) {
+            pendingCallbacks.add(callback);
+            if (dispatchPosted) {
+                return;
+            }
+            dispatchPosted = true;
+        }
+        mainThread.execute(dispatcher);
+    }
+
+    private void dispatchCallbacks() {
+        final Runnable[] callbacks;
+        synchronized (pendingCallbacks) {
+            callbacks = pendingCallbacks.toArray(new Runnable[0]);
+            pendingCallbacks.clear();
+            dispatchPosted = false;
+        }
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * @param key key of the tasks; null for tasks submitted without a key
+     * @return snapshot of the statistics of the key; all zero if no task was submitted with it
+     */
+    @NonNull
+    public Stats getStats(@Nullable Object key) {
+        synchronized (stats) {
+            final Stats keyStats = stats.get(key);
+            return keyStats == null ? new Stats() : keyStats.copy();
+        }
+    }
+
+    public void stop() {
+        sService.shutdown();
+    }
+
+    /**
+     * Called on the main thread once the task is done; with null if it failed. Never called for a replaced task.
+     */
+    public interface Callback<R> {
+        void onComplete(R result);
+    }
+
+    /**
+     * Also told, on the main thread, when the task starts running.
+     */
+    public interface StartCallback<R> extends Callback<R> {
+        void onStart();
+    }
+
+    private class Task<R> implements Runnable {
+        private final Object key;
+        private final Callable<R> callable;
+        private final Callback<R> callback;
+        private final long submitTime;
+
+        Task(@Nullable Object key, @NonNull Callable<R> callable, @Nullable Callback<R> callback) {
+            this.key = key;
+            this.callable = callable;
+            this.callback = callback;
+            this.submitTime = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            final long startTime = System.nanoTime();
+            synchronized (stats) {
+                if (key != null && pendingTasks.get(key) == this) {
+                    pendingTasks.remove(key);
                 }
-            });
+                final Stats keyStats = statsOf(key);
+                keyStats.queueDepth--;
+                keyStats.record(startTime - submitTime, true);
+            }
+            if (callback instanceof StartCallback) {
+                postCallback(((StartCallback<R>) callback)::onStart);
+            }
             R r = null;
             try {
                 r = callable.call();
@@ -37,23 +190,120 @@ public class TaskExecutor {
                 // Ignore
                 e.printStackTrace();
             } finally {
+                synchronized (stats) {
+                    statsOf(key).record(System.nanoTime() - startTime, false);
+                }
                 R result = r;
-                handler.post(() -> {
-                    if (callback != null) {
-                        callback.onComplete(result);
-                    }
-                });
+                if (callback != null) {
+                    postCallback(() -> callback.onComplete(result));
+                }
             }
-        });
+        }
     }
 
-    public void stop() {
-        sService.shutdown();
-    }
+    /**
+     * Statistics of the tasks of a key. Times are in nanoseconds; queue wait is from submission to start.
+     */
+    public static class Stats {
+        private int queueDepth;
+        private long submitted;
+        private long replaced;
+        private long started;
+        private long completed;
+        private long totalWaitTime;
+        private long maxWaitTime;
+        private long lastWaitTime;
+        private long totalRunTime;
+        private long maxRunTime;
+        private long lastRunTime;
 
-    public interface Callback<R> {
-        void onStart();
+        private void record(long time, boolean wait) {
+            if (wait) {
+                started++;
+                totalWaitTime += time;
+                maxWaitTime = Math.max(maxWaitTime, time);
+                lastWaitTime = time;
+            } else {
+                completed++;
+                totalRunTime += time;
+                maxRunTime = Math.max(maxRunTime, time);
+                lastRunTime = time;
+            }
+        }
 
-        void onComplete(R result);
+        private Stats copy() {
+            final Stats copy = new Stats();
+            copy.queueDepth = queueDepth;
+            copy.submitted = submitted;
+            copy.replaced = replaced;
+            copy.started = started;
+            copy.completed = completed;
+            copy.totalWaitTime = totalWaitTime;
+            copy.maxWaitTime = maxWaitTime;
+            copy.lastWaitTime = lastWaitTime;
+            copy.totalRunTime = totalRunTime;
+            copy.maxRunTime = maxRunTime;
+            copy.lastRunTime = lastRunTime;
+            return copy;
+        }
+
+        /**
+         * @return number of tasks waiting to start
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return number of tasks dropped for a newer one
+         */
+        public long getReplaced() {
+            return replaced;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getAverageWaitTime() {
+            return started == 0 ? 0L : totalWaitTime / started;
+        }
+
+        public long getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        public long getLastWaitTime() {
+            return lastWaitTime;
+        }
+
+        public long getAverageRunTime() {
+            return completed == 0 ? 0L : totalRunTime / completed;
+        }
+
+        public long getMaxRunTime() {
+            return maxRunTime;
+        }
+
+        public long getLastRunTime() {
+            return lastRunTime;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "queueDepth=" + queueDepth +
+                    ", submitted=" + submitted +
+                    ", replaced=" + replaced +
+                    ", completed=" + completed +
+                    ", averageWaitTime=" + getAverageWaitTime() +
+                    ", averageRunTime=" + getAverageRunTime() +
+                    '}';
+        }
     }
 }
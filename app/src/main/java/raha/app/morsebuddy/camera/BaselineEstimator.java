@@ -0,0 +1,87 @@
+package raha.app.morsebuddy.camera;
+
+/**
+ * Estimates the baseline of a recorder session from the histogram of its signal, by Otsu's method.
+ * The histogram is updated in O(1) for each frame; the threshold is searched over its {@link BaselineEstimator#BIN_COUNT} bins.
+ * Allocates nothing after construction, so it is cheap enough to run on every frame.
+ * <p>
+ * Threshold separates the signal into two classes (space and signal) with the highest variance between them.
+ * Baselines equally good (empty bins between the two classes) are resolved to the middle of the gap.
+ * Not thread-safe; only touched from the recording thread.
+ */
+class BaselineEstimator {
+    /* One bin for each contrast value */
+    static final int BIN_COUNT = 256;
+
+    private final int[] histogram;
+    private long count;
+    private long sum;
+
+    BaselineEstimator() {
+        this.histogram = new int[BIN_COUNT];
+        reset();
+    }
+
+    /**
+     * Adds a frame of the signal.
+     *
+     * @param value contrast of the frame; clamped to the bins
+     */
+    void add(int value) {
+        final int bin = Math.max(0, Math.min(value, BIN_COUNT - 1));
+        histogram[bin]++;
+        count++;
+        sum += bin;
+    }
+
+    /**
+     * Removes all frames.
+     */
+    void reset() {
+        for (int i = 0; i < BIN_COUNT; i++) {
+            histogram[i] = 0;
+        }
+        count = 0L;
+        sum = 0L;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Searches the threshold; frames above it are signal.
+     *
+     * @return the threshold, or -1 if the frames do not have two distinct values yet
+     */
+    int getThreshold() {
+        long spaceCount = 0L;
+        long spaceSum = 0L;
+        double bestVariance = -1.0;
+        int bestStart = -1;
+        int bestEnd = -1;
+        for (int threshold = 0; threshold < BIN_COUNT - 1; threshold++) {
+            spaceCount += histogram[threshold];
+            spaceSum += (long) threshold * histogram[threshold];
+            final long signalCount = count - spaceCount;
+            if (spaceCount == 0L) {
+                continue;
+            }
+            if (signalCount == 0L) {
+                break;
+            }
+            final double difference = (double) spaceSum / spaceCount - (double) (sum - spaceSum) / signalCount;
+            // Variance between the classes, up to a constant factor
+            final double variance = (double) spaceCount * signalCount * difference * difference;
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                bestStart = threshold;
+                bestEnd = threshold;
+            } else if (variance == bestVariance) {
+                // Same split; an empty bin
+                bestEnd = threshold;
+            }
+        }
+        return bestStart < 0 ? -1 : (bestStart + bestEnd) / 2;
+    }
+}
@@ -1,30 +1,64 @@
 package raha.app.morsebuddy.camera;
 
 import android.content.Context;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.Camera2Interop;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraInfoUnavailableException;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ExtendableBuilder;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
-import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleOwner;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import raha.app.morsebuddy.util.Constants;
 
 /**
  * Simplifies camera interactions.
  * Manages states of the supplied {@link ImageProcessor}.
  * Sends continuous image-frames as {@link ImageProxy} to the supplied {@link ImageProcessor}.
+ * <p>
+ * Image-frames are analyzed on a dedicated high-priority thread, so UI work on the main thread cannot delay them.
+ * Keeps track of analyzer latency and skipped frames to tell how well the stream is delivered.
+ * <p>
+ * The frame rate is negotiated with the camera: among the auto-exposure target FPS ranges the camera supports, the one closest to the target frame rate is requested.
+ * The {@link ImageProcessor} is told the rate the stream is configured for, which might be lower than the target.
  */
 public class CameraHelper {
     private static final String TAG = "CameraHelper";
+    public static final int DEFAULT_IMAGE_QUEUE_DEPTH = 4;
+    /* Timestamps further than this from the chosen clock are considered to be in another timebase */
+    private static final long MAX_PLAUSIBLE_LATENCY = 1_000_000_000L;    // Nanoseconds
+
+    /**
+     * What happens when image-frames arrive faster than they are analyzed.
+     */
+    public enum Backpressure {
+        /* Older frames are dropped, only the latest one is analyzed */
+        KEEP_ONLY_LATEST,
+        /* Frames are queued up to the image queue depth, the camera is blocked when the queue is full */
+        BLOCK_PRODUCER
+    }
 
     private int lensFacing = CameraSelector.LENS_FACING_BACK;
     private CameraSelector cameraSelector;
@@ -37,6 +71,25 @@ public class CameraHelper {
     @Nullable
     private ImageProcessor imageProcessor;
 
+    private Backpressure backpressure = Backpressure.KEEP_ONLY_LATEST;
+    private int imageQueueDepth = DEFAULT_IMAGE_QUEUE_DEPTH;
+    private int targetFrameRate = 0;
+    /* FPS range requested from the camera for the current stream; null means camera default */
+    @Nullable
+    private Range<Integer> fpsRange;
+    /* True if the current camera supports constrained high-speed sessions */
+    private boolean highSpeedSupported;
+
+    /* Runs the analyzer, never the main thread */
+    private final ExecutorService analysisExecutor;
+    /* Written from the analysis thread; also measures the frame rate */
+    private final FrameTiming frameTiming;
+    /* True if image timestamps are in SystemClock.elapsedRealtimeNanos() timebase, otherwise in System.nanoTime() */
+    private boolean realtimeTimestamps;
+    private volatile long analyzedFrameCount;
+    private volatile long skippedFrameCount;
+    private volatile long analyzerLatency;
+
     private final Context context;
     private final LifecycleOwner lifecycleOwner;
     private final PreviewView previewView;
@@ -46,6 +99,12 @@ public class CameraHelper {
         this.lifecycleOwner = lifecycleOwner;
         this.previewView = previewView;
         cameraSelector = new CameraSelector.Builder().requireLensFacing(lensFacing).build();
+        analysisExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+            // Delayed frames distort the recorded signal, so analysis must not starve behind other work
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+            runnable.run();
+        }, "CameraAnalysis"));
+        frameTiming = new FrameTiming();
     }
 
     /**
@@ -68,6 +127,61 @@ public class CameraHelper {
         this.imageProcessor = imageProcessor;
     }
 
+    /**
+     * Sets how image-frames are handled when they arrive faster than they are analyzed.
+     * Takes effect from the next {@link CameraHelper#start()}.
+     *
+     * @param backpressure    the strategy to use
+     * @param imageQueueDepth number of queued frames; only used with {@link Backpressure#BLOCK_PRODUCER}
+     */
+    public void setBackpressure(@NonNull Backpressure backpressure, int imageQueueDepth) {
+        this.backpressure = backpressure;
+        this.imageQueueDepth = Math.max(imageQueueDepth, 1);
+    }
+
+    /**
+     * Sets the frame rate to request from the camera.
+     * The closest range the camera supports is requested; the stream is restarted if it is running and the range changes.
+     *
+     * @param targetFrameRate frames per second; zero or less keeps the camera default and disables skip detection
+     */
+    public void setTargetFrameRate(int targetFrameRate) {
+        if (this.targetFrameRate == targetFrameRate) {
+            return;
+        }
+        this.targetFrameRate = targetFrameRate;
+        // Running stream is only rebound if it would be configured differently
+        if (analysisUseCase != null && cameraProvider != null && !equalRanges(fpsRange, queryFpsRange())) {
+            stop();
+            start();
+        }
+    }
+
+    /**
+     * Highest frame rate the stream is configured to deliver.
+     *
+     * @return upper bound of the requested FPS range; the target frame rate if no range was negotiated
+     */
+    public int getStreamFrameRate() {
+        return fpsRange != null ? fpsRange.getUpper() : targetFrameRate;
+    }
+
+    /**
+     * Frame rate measured from the image timestamps since the stream was last started.
+     *
+     * @return frames per second; zero if not measured yet
+     */
+    public int getMeasuredFrameRate() {
+        return frameTiming.getMeasuredFrameRate();
+    }
+
+    /**
+     * @return true if the current camera supports constrained high-speed sessions; these are not available through CameraX, thus only reported
+     */
+    public boolean isHighSpeedSupported() {
+        return highSpeedSupported;
+    }
+
     /**
      * Starts camera stream.
      * Have no effect if {@link ProcessCameraProvider} not set already.
@@ -91,6 +205,54 @@ public class CameraHelper {
         }
     }
 
+    /**
+     * Releases the analysis thread.
+     * This is the last method to call, the stream cannot be started again afterwards.
+     */
+    public void release() {
+        stop();
+        if (analysisUseCase != null) {
+            analysisUseCase.clearAnalyzer();
+        }
+        analysisExecutor.shutdown();
+    }
+
+    /**
+     * Number of image-frames delivered to the analyzer since the stream was last started.
+     *
+     * @return analyzed frame count
+     */
+    public long getAnalyzedFrameCount() {
+        return analyzedFrameCount;
+    }
+
+    /**
+     * Number of image-frames the camera produced but the analyzer never received since the stream was last started,
+     * detected from gaps between frame timestamps.
+     * Always zero if no target frame rate is set.
+     *
+     * @return skipped frame count
+     */
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+
+    /**
+     * Time between capture of the latest image-frame and the start of its analysis; i.e. how long it was queued.
+     *
+     * @return latency in nanoseconds
+     */
+    public long getAnalyzerLatency() {
+        return analyzerLatency;
+    }
+
+    /**
+     * @return true if the front-facing lens is in use
+     */
+    public boolean isFrontFacing() {
+        return lensFacing == CameraSelector.LENS_FACING_FRONT;
+    }
+
     /**
      * Switch between front-facing and back-facing lenses.
      *
@@ -122,8 +284,10 @@ public class CameraHelper {
             if (previewUseCase != null) {
                 cameraProvider.unbind(previewUseCase);
             }
+            fpsRange = queryFpsRange();
             Preview.Builder previewBuilder = new Preview.Builder();
             previewBuilder.setTargetResolution(targetResolution);
+            requestFpsRange(previewBuilder);
             previewUseCase = previewBuilder.build();
             previewUseCase.setSurfaceProvider(previewView.getSurfaceProvider());
 
@@ -136,14 +300,27 @@ public class CameraHelper {
             }
             ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder();
             analysisBuilder.setTargetResolution(targetResolution);
+            requestFpsRange(analysisBuilder);
+            if (backpressure == Backpressure.BLOCK_PRODUCER) {
+                analysisBuilder.setBackpressureStrategy(ImageAnalysis.STRATEGY_BLOCK_PRODUCER);
+                analysisBuilder.setImageQueueDepth(imageQueueDepth);
+            } else {
+                analysisBuilder.setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
+            }
             analysisUseCase = analysisBuilder.build();
+            if (imageProcessor != null) {
+                imageProcessor.setStreamFrameRate(getStreamFrameRate());
+            }
+            resetAnalyzerStats();
             analysisUseCase.setAnalyzer(
-                    // imageProcessor must use another thread to run the detection underneath,
-                    // thus we can just run the analyzer itself on main thread.
-                    ContextCompat.getMainExecutor(context),
+                    // Dedicated thread, thus layout, drawing and observers on main thread cannot delay the frames.
+                    analysisExecutor,
                     imageProxy -> {
+                        updateAnalyzerStats(imageProxy.getImageInfo().getTimestamp());
                         if (imageProcessor != null) {
                             imageProcessor.processImage(imageProxy);
+                        } else {
+                            imageProxy.close();
                         }
                     });
 
@@ -151,4 +328,103 @@ public class CameraHelper {
             cameraProvider.bindToLifecycle(lifecycleOwner, cameraSelector, previewUseCase, analysisUseCase);
         }
     }
+
+    /**
+     * Chooses the FPS range to request for the target frame rate, among the ranges the current camera supports.
+     *
+     * @return the range, or null to keep the camera default
+     */
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    @Nullable
+    private Range<Integer> queryFpsRange() {
+        if (cameraProvider == null || targetFrameRate <= 0) {
+            return null;
+        }
+        List<CameraInfo> cameraInfos = cameraSelector.filter(cameraProvider.getAvailableCameraInfos());
+        if (cameraInfos.isEmpty()) {
+            return null;
+        }
+        Camera2CameraInfo cameraInfo = Camera2CameraInfo.from(cameraInfos.get(0));
+        Range<Integer>[] ranges = cameraInfo.getCameraCharacteristic(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        int[] capabilities = cameraInfo.getCameraCharacteristic(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        highSpeedSupported = false;
+        if (capabilities != null) {
+            for (int capability : capabilities) {
+                if (capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_CONSTRAINED_HIGH_SPEED_VIDEO) {
+                    highSpeedSupported = true;
+                    break;
+                }
+            }
+        }
+        if (highSpeedSupported) {
+            StreamConfigurationMap map = cameraInfo.getCameraCharacteristic(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (map != null) {
+                for (Range<Integer> highSpeedRange : map.getHighSpeedVideoFpsRanges()) {
+                    Log.d(TAG, "High-speed range " + highSpeedRange + " available, not usable with CameraX.");
+                }
+            }
+        }
+        Range<Integer> chosen = chooseFpsRange(ranges, targetFrameRate);
+        Log.d(TAG, "FPS range " + chosen + " chosen for target " + targetFrameRate);
+        return chosen;
+    }
+
+    /**
+     * Chooses the range that reaches closest to the target rate, see {@link FpsRanges#choose(int[], int[], int)}.
+     *
+     * @param ranges          supported ranges, might be null
+     * @param targetFrameRate frames per second
+     * @return the chosen range, or null if none given
+     */
+    @Nullable
+    static Range<Integer> chooseFpsRange(@Nullable Range<Integer>[] ranges, int targetFrameRate) {
+        if (ranges == null) {
+            return null;
+        }
+        int[] lowers = new int[ranges.length];
+        int[] uppers = new int[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            lowers[i] = ranges[i].getLower();
+            uppers[i] = ranges[i].getUpper();
+        }
+        int chosen = FpsRanges.choose(lowers, uppers, targetFrameRate);
+        return chosen >= 0 ? ranges[chosen] : null;
+    }
+
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private <T> void requestFpsRange(@NonNull ExtendableBuilder<T> builder) {
+        if (fpsRange != null) {
+            new Camera2Interop.Extender<>(builder).setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+        }
+    }
+
+    private static boolean equalRanges(@Nullable Range<Integer> a, @Nullable Range<Integer> b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void resetAnalyzerStats() {
+        final int streamFrameRate = getStreamFrameRate();
+        // Analysis thread is the only writer, so it resets too
+        analysisExecutor.execute(() -> {
+            frameTiming.reset(streamFrameRate > 0 ? 1_000_000_000L / streamFrameRate : 0L);
+            realtimeTimestamps = true;
+            analyzedFrameCount = 0L;
+            skippedFrameCount = 0L;
+            analyzerLatency = 0L;
+        });
+    }
+
+    private void updateAnalyzerStats(long timestamp) {
+        // Camera timestamps are either in elapsed-realtime or in monotonic timebase, decided on the first frame
+        if (analyzedFrameCount == 0L) {
+            long latency = SystemClock.elapsedRealtimeNanos() - timestamp;
+            realtimeTimestamps = latency >= 0L && latency < MAX_PLAUSIBLE_LATENCY;
+        }
+        analyzerLatency = (realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime()) - timestamp;
+        int missing = frameTiming.onFrame(timestamp);
+        if (missing > 0) {
+            skippedFrameCount += missing;
+        }
+        analyzedFrameCount++;
+    }
 }
@@ -0,0 +1,33 @@
+package raha.app.morsebuddy.camera;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of additional signal regions (channels), watched alongside the primary target.
+ * Every channel is a square of the target size; only the top-left corners are kept.
+ * Replaced as a whole on every change, so a reader never sees a half-updated layout.
+ */
+final class ChannelLayout {
+    static final ChannelLayout EMPTY = new ChannelLayout(new int[0], new int[0]);
+
+    final int[] tops;
+    final int[] lefts;
+    final int count;
+
+    ChannelLayout(int[] tops, int[] lefts) {
+        this.tops = tops;
+        this.lefts = lefts;
+        this.count = tops.length;
+    }
+
+    /**
+     * @return a new layout with one more channel
+     */
+    ChannelLayout plus(int top, int left) {
+        int[] newTops = Arrays.copyOf(tops, count + 1);
+        int[] newLefts = Arrays.copyOf(lefts, count + 1);
+        newTops[count] = top;
+        newLefts[count] = left;
+        return new ChannelLayout(newTops, newLefts);
+    }
+}
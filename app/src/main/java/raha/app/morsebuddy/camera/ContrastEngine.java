@@ -0,0 +1,143 @@
+package raha.app.morsebuddy.camera;
+
+import raha.app.morsebuddy.util.Constants;
+
+/**
+ * Calculates luminance contrast of square target regions of an {@link ImageSample}, against their background.
+ * A single target is summed word-wise; for several candidate regions the integral image of the sample is used,
+ * so each region costs O(1) regardless of its size.
+ * Thus the target size can be changed at any time, and several candidate regions can be evaluated for each frame.
+ * <p>
+ * Background is either the whole sample, or a ring of configurable width around the target.
+ * Configuration may be changed from any thread; it is read once for each frame.
+ */
+class ContrastEngine {
+    private static final int SAMPLE_SIZE = ImageSample.SAMPLE_SIZE;
+
+    /* Target square packed as (top << 16 | left << 8 | size) in sample-pixels; written at once, so never seen half-updated */
+    private volatile int target;
+    /* Width of the background ring around the target, in sample-pixels; zero means whole sample */
+    private volatile int ringWidth;
+
+    ContrastEngine() {
+        final int size = Constants.TARGET_SIZE_IN_PIXEL;
+        this.target = pack((SAMPLE_SIZE - size) / 2, (SAMPLE_SIZE - size) / 2, size);
+        this.ringWidth = 0;
+    }
+
+    /**
+     * Resizes the target while keeping its center.
+     *
+     * @param targetSize side of the target square, in sample-pixels
+     */
+    void setTargetSize(int targetSize) {
+        final int current = target;
+        final int oldSize = current & 0xff;
+        moveTarget((current >>> 16) + oldSize / 2, ((current >>> 8) & 0xff) + oldSize / 2, clamp(targetSize, 1, SAMPLE_SIZE));
+    }
+
+    /**
+     * Moves the target, keeping it inside the sample.
+     *
+     * @param row    center row, in sample-pixels
+     * @param column center column, in sample-pixels
+     */
+    void setTargetCenter(int row, int column) {
+        moveTarget(row, column, target & 0xff);
+    }
+
+    private void moveTarget(int row, int column, int size) {
+        this.target = pack(clamp(row - size / 2, 0, SAMPLE_SIZE - size), clamp(column - size / 2, 0, SAMPLE_SIZE - size), size);
+    }
+
+    /**
+     * @param ringWidth width of the background ring around the target in sample-pixels, or zero to use whole sample as background
+     */
+    void setRingWidth(int ringWidth) {
+        this.ringWidth = Math.max(ringWidth, 0);
+    }
+
+    int getTargetSize() {
+        return target & 0xff;
+    }
+
+    int getTargetTop() {
+        return target >>> 16;
+    }
+
+    int getTargetLeft() {
+        return (target >>> 8) & 0xff;
+    }
+
+    /**
+     * Calculates the contrast of the current target.
+     *
+     * @param sample the frame
+     * @return difference of mean luminance of target and background, or zero if target is darker
+     */
+    int calculate(ImageSample sample) {
+        final int current = target;
+        return calculate(sample, current >>> 16, (current >>> 8) & 0xff, current & 0xff);
+    }
+
+    /**
+     * Calculates the contrast of several candidate regions of the same size, in one pass.
+     *
+     * @param sample the frame
+     * @param tops   top row of each region
+     * @param lefts  left column of each region
+     * @param size   side of the regions
+     * @param count  number of regions
+     * @param out    receives the contrast of each region
+     */
+    void calculate(ImageSample sample, int[] tops, int[] lefts, int size, int count, int[] out) {
+        sample.prepareIntegral();
+        for (int i = 0; i < count; i++) {
+            out[i] = calculate(sample, tops[i], lefts[i], size);
+        }
+    }
+
+    /**
+     * Calculates the contrast of a square region.
+     *
+     * @param sample the frame
+     * @param top    top row of the region
+     * @param left   left column of the region
+     * @param size   side of the region
+     * @return difference of mean luminance of region and background, or zero if region is darker
+     */
+    int calculate(ImageSample sample, int top, int left, int size) {
+        final int bottom = top + size;
+        final int right = left + size;
+        final int targetSum = sample.sum(top, left, bottom, right);
+        final int targetMean = targetSum / (size * size);
+
+        final int ring = ringWidth;
+        int backgroundMean;
+        if (ring == 0) {
+            backgroundMean = sample.sum(0, 0, SAMPLE_SIZE, SAMPLE_SIZE) / (SAMPLE_SIZE * SAMPLE_SIZE);
+        } else {
+            // Ring around the region, clipped at the sample bounds
+            final int outerTop = Math.max(top - ring, 0);
+            final int outerLeft = Math.max(left - ring, 0);
+            final int outerBottom = Math.min(bottom + ring, SAMPLE_SIZE);
+            final int outerRight = Math.min(right + ring, SAMPLE_SIZE);
+            final int ringArea = (outerBottom - outerTop) * (outerRight - outerLeft) - size * size;
+            if (ringArea > 0) {
+                backgroundMean = (sample.sum(outerTop, outerLeft, outerBottom, outerRight) - targetSum) / ringArea;
+            } else {
+                backgroundMean = sample.sum(0, 0, SAMPLE_SIZE, SAMPLE_SIZE) / (SAMPLE_SIZE * SAMPLE_SIZE);
+            }
+        }
+
+        return Math.max(targetMean - backgroundMean, 0);
+    }
+
+    private static int pack(int top, int left, int size) {
+        return (top << 16) | (left << 8) | size;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+}
@@ -0,0 +1,38 @@
+package raha.app.morsebuddy.camera;
+
+/**
+ * Choice of the FPS range requested from the camera, on plain bounds so that it does not depend on {@link android.util.Range}.
+ */
+final class FpsRanges {
+    private FpsRanges() {
+    }
+
+    /**
+     * Chooses the range that reaches closest to the target rate; among those, the steadiest one (highest lower bound), then the one with least overshoot.
+     * Ties keep the earlier range.
+     *
+     * @param lowers          lower bound of each range
+     * @param uppers          upper bound of each range
+     * @param targetFrameRate frames per second
+     * @return index of the chosen range, or -1 if none given
+     */
+    static int choose(int[] lowers, int[] uppers, int targetFrameRate) {
+        int chosen = -1;
+        for (int i = 0; i < lowers.length; i++) {
+            if (chosen < 0) {
+                chosen = i;
+                continue;
+            }
+            int reach = Math.min(uppers[i], targetFrameRate);
+            int chosenReach = Math.min(uppers[chosen], targetFrameRate);
+            int floor = Math.min(lowers[i], targetFrameRate);
+            int chosenFloor = Math.min(lowers[chosen], targetFrameRate);
+            if (reach > chosenReach
+                    || (reach == chosenReach && floor > chosenFloor)
+                    || (reach == chosenReach && floor == chosenFloor && uppers[i] < uppers[chosen])) {
+                chosen = i;
+            }
+        }
+        return chosen;
+    }
+}
@@ -0,0 +1,78 @@
+package raha.app.morsebuddy.camera;
+
+/**
+ * Keeps track of consecutive camera frame timestamps, to tell how well a stream is captured.
+ * A frame carrying the same (or an older) timestamp as the previous one is a duplicate.
+ * A gap longer than one and a half nominal frame interval means frames were dropped in between.
+ * Timestamps are compared by their difference, so a timestamp wrapping around past {@link Long#MAX_VALUE} is still taken as newer.
+ * The interval between delivered frames is averaged, see {@link FrameTiming#getMeasuredFrameRate()}.
+ * <p>
+ * Thread-safe; frames arrive on the analysis thread, while a recorder session may reset it from another one.
+ */
+class FrameTiming {
+    /* Returned by onFrame for a duplicated frame */
+    static final int DUPLICATE = -1;
+    /* Intervals averaged before a measured frame rate is reported */
+    static final int MIN_MEASURED_INTERVALS = 8;
+
+    private long nominalInterval;
+    private long lastTimestamp;
+    private boolean started;
+    /* Running average of the interval between delivered frames, over about 16 frames */
+    private long averageInterval;
+    private int measuredIntervals;
+
+    FrameTiming() {
+        reset(0L);
+    }
+
+    /**
+     * Forgets the previous frames.
+     *
+     * @param nominalInterval expected nanoseconds between two consecutive frames; zero or less disables drop detection
+     */
+    synchronized void reset(long nominalInterval) {
+        this.nominalInterval = nominalInterval;
+        this.lastTimestamp = 0L;
+        this.started = false;
+        this.averageInterval = 0L;
+        this.measuredIntervals = 0;
+    }
+
+    /**
+     * Registers the next delivered frame.
+     *
+     * @param timestamp frame timestamp in nanoseconds
+     * @return number of frames dropped right before this frame, or {@link FrameTiming#DUPLICATE} if this frame is a duplicate
+     */
+    synchronized int onFrame(long timestamp) {
+        if (!started) {
+            started = true;
+            lastTimestamp = timestamp;
+            return 0;
+        }
+        long gap = timestamp - lastTimestamp;
+        if (gap <= 0L) {
+            return DUPLICATE;
+        }
+        lastTimestamp = timestamp;
+        averageInterval = averageInterval == 0L ? gap : averageInterval + (gap - averageInterval) / 16;
+        if (measuredIntervals < MIN_MEASURED_INTERVALS) {
+            measuredIntervals++;
+        }
+        if (nominalInterval <= 0L || 2L * gap <= 3L * nominalInterval) {
+            return 0;
+        }
+        // Rounded number of intervals in the gap, minus the delivered frame itself
+        return (int) Math.min((gap + nominalInterval / 2L) / nominalInterval - 1L, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Frame rate measured from the timestamps since the last reset; gaps of dropped frames lower it, duplicates are not counted.
+     *
+     * @return frames per second; zero until {@link FrameTiming#MIN_MEASURED_INTERVALS} intervals are measured
+     */
+    synchronized int getMeasuredFrameRate() {
+        return measuredIntervals >= MIN_MEASURED_INTERVALS ? (int) Math.round(1_000_000_000.0 / averageInterval) : 0;
+    }
+}
@@ -11,8 +11,18 @@ public interface ImageProcessor {
      */
     void startProcessing();
 
+    /**
+     * Informs the frame rate the camera stream is configured to deliver; invoked before processing starts.
+     * Might differ from the requested rate, depending on what the camera supports.
+     *
+     * @param framesPerSecond highest frame rate of the stream
+     */
+    void setStreamFrameRate(int framesPerSecond);
+
     /**
      * Processes ImageProxy image data, e.g. used for CameraX live preview case.
+     * Invoked from the analysis thread, never from the main thread.
+     * Implementation must close the image, even if it is not processed.
      */
     void processImage(ImageProxy image);
 
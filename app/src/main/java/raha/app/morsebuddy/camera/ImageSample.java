@@ -1,76 +1,132 @@
 package raha.app.morsebuddy.camera;
 
-import android.graphics.Rect;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import raha.app.morsebuddy.util.Constants;
 
 /**
  * Lightweight & easily-analyzable data holder that represents a byte-matrix of size {@link ImageSample#SAMPLE_SIZE} x {@link ImageSample#SAMPLE_SIZE}.
- * Contains y-plane values from the {@link android.graphics.ImageFormat#YUV_420_888} format.
- * Used to detect signal by calculating luminance contrast between target and whole image.
+ * Contains y-plane values from the {@link android.graphics.ImageFormat#YUV_420_888} format, downsampled from the center square of the image.
+ * <p>
+ * Region sums are calculated word-wise by {@link LuminanceKernel}, which is cheapest for a few regions of a frame.
+ * When many regions are needed, an integral image (summed-area table) is built once for the frame; after that the sum of any rectangle costs O(1).
+ * Used by {@link ContrastEngine} to detect signal by calculating luminance contrast between target and its background.
  */
 class ImageSample {
-    private static final int SAMPLE_SIZE = Constants.SAMPLE_SIZE_IN_PIXEL;
-    private static final int TARGET_SIZE = Constants.TARGET_SIZE_IN_PIXEL;
+    static final int SAMPLE_SIZE = Constants.SAMPLE_SIZE_IN_PIXEL;
+    /* Side of the integral image; one extra leading row and column of zeros */
+    private static final int INTEGRAL_SIZE = SAMPLE_SIZE + 1;
 
     private final byte[] sample;
-    private final byte[] target;
+    /* View of the sample, for word-wise reads */
+    private final ByteBuffer sampleWords;
+    /* integral[r * INTEGRAL_SIZE + c] is the sum of all pixels above row r and left of column c */
+    private final int[] integral;
+    /* True if integral image is built for the current pixels */
+    private boolean integralValid;
 
     public ImageSample(int rowStride, int pixelStride, int imageWidth, int imageHeight, byte[] imagePlane) {
         //Log.d("ImageSample", "rS=" + rowStride + " pS=" + pixelStride + " w=" + imageWidth + " h=" + imageHeight);
+        this();
 
         /* Offset between two neighboring sample-pixels in the real plane */
         final int pixelOffset = imageWidth / SAMPLE_SIZE;
 
-        // Calculating bounds
-        final Rect sampleRect = new Rect(0, ((imageHeight - imageWidth) / 2), imageWidth, ((imageHeight + imageWidth) / 2));
-        final Rect targetRect = new Rect(((SAMPLE_SIZE - TARGET_SIZE) / 2), ((SAMPLE_SIZE - TARGET_SIZE) / 2), ((SAMPLE_SIZE + TARGET_SIZE) / 2), ((SAMPLE_SIZE + TARGET_SIZE) / 2));
-
-        //Log.d("ImageSample", "sampleRect=" + sampleRect + " targetRect=" + targetRect);
+        // Calculating bounds of the sample (in real plane)
+        final int sampleTop = (imageHeight - imageWidth) / 2;
+        final int sampleBottom = (imageHeight + imageWidth) / 2;
 
         // Populating sample matrix
-        this.sample = new byte[SAMPLE_SIZE * SAMPLE_SIZE];
         int sIndex = 0;
         for (int x = 0; x < imageWidth; x += pixelOffset) {
             for (int y = 0; y < imageHeight; y += pixelOffset) {
-                if (y < sampleRect.top || y >= sampleRect.bottom || x < sampleRect.left || x >= sampleRect.right)
+                if (y < sampleTop || y >= sampleBottom)
                     continue;
-                int index = rowStride * pixelStride * x + y * pixelStride;
+                int index = rowStride * x + y * pixelStride;
                 sample[sIndex++] = imagePlane[index];
             }
         }
-
-        // Populating target matrix
-        this.target = new byte[TARGET_SIZE * TARGET_SIZE];
-        int targetIndex = 0;
-        for (int x = 0; x < SAMPLE_SIZE; ++x) {
-            for (int y = 0; y < SAMPLE_SIZE; ++y) {
-                if (y < targetRect.top || y >= targetRect.bottom || x < targetRect.left || x >= targetRect.right) {
-                    continue;
-                }
-                int index = SAMPLE_SIZE * x + y;
-                target[targetIndex++] = sample[index];
-                //sample[index] = 0;
-            }
-        }
     }
 
     /**
-     * Generates a new {@link ImageSample} with all pixels set to zero.
+     * Samples directly from the y-plane buffer, without copying the whole plane.
      *
-     * @return new {@link ImageSample} instance
+     * @see ImageSample#fill(PlaneOffsets, ByteBuffer)
+     */
+    public ImageSample(int rowStride, int pixelStride, int imageWidth, int imageHeight, ByteBuffer imagePlane) {
+        this();
+        fill(new PlaneOffsets(rowStride, pixelStride, imageWidth, imageHeight), imagePlane);
+    }
+
+    /**
+     * Creates an empty sample with all pixels set to zero; meant to be filled in place afterwards.
      */
-    public static ImageSample zeros() {
-        return new ImageSample(SAMPLE_SIZE, 1, SAMPLE_SIZE, SAMPLE_SIZE, new byte[SAMPLE_SIZE * SAMPLE_SIZE]);
+    public ImageSample() {
+        this.sample = new byte[SAMPLE_SIZE * SAMPLE_SIZE];
+        this.sampleWords = ByteBuffer.wrap(sample);
+        this.integral = new int[INTEGRAL_SIZE * INTEGRAL_SIZE];
+        this.integralValid = false;
     }
 
     /**
-     * Provides a linear byte-array, containing targeted pixels in top-to-bottom fashion.
+     * Overwrites this sample directly from the y-plane buffer, without copying the whole plane.
+     * Only the sample-pixels listed in the offset table are read using absolute {@link ByteBuffer#get(int)}, thus position of the buffer remains unchanged.
+     * Produces exactly the same pixels as {@link ImageSample#ImageSample(int, int, int, int, byte[])} does for a copy of the same plane.
      *
-     * @return byte-array of size {@link ImageSample#TARGET_SIZE}^2
+     * @param planeOffsets offset table built for the geometry of the plane
+     * @param imagePlane   the y-plane
+     * @throws IndexOutOfBoundsException if the plane is smaller than the geometry of the offset table
      */
-    public byte[] getTargetPixels() {
-        return target;
+    public void fill(PlaneOffsets planeOffsets, ByteBuffer imagePlane) {
+        /* Plane content may not start at zero, absolute indices are relative to it */
+        final int base = imagePlane.position();
+        // Bounds are checked once for the whole frame
+        if (base + planeOffsets.getMaxOffset() >= imagePlane.limit()) {
+            throw new IndexOutOfBoundsException("Y-plane is smaller than its geometry.");
+        }
+
+        // Populating sample matrix, only visiting the sample-pixels
+        final int[] offsets = planeOffsets.getOffsets();
+        final byte[] sample = this.sample;
+        final int count = planeOffsets.getCount();
+        for (int i = 0; i < count; i++) {
+            sample[i] = imagePlane.get(base + offsets[i]);
+        }
+        // Geometries smaller than the sample leave the rest dark, rather than pixels of an earlier frame
+        if (count < sample.length) {
+            Arrays.fill(sample, count, sample.length, (byte) 0);
+        }
+        integralValid = false;
+    }
+
+    /**
+     * Builds the integral image of the current pixels, if not built already.
+     * Worth calling before asking for sums of many regions of the same frame.
+     */
+    public void prepareIntegral() {
+        if (integralValid) {
+            return;
+        }
+        // First row and column stay zero
+        for (int row = 0; row < SAMPLE_SIZE; row++) {
+            final int src = row * SAMPLE_SIZE;
+            final int above = row * INTEGRAL_SIZE + 1;
+            final int dst = above + INTEGRAL_SIZE;
+            int rowSum = 0;
+            for (int col = 0; col < SAMPLE_SIZE; col++) {
+                rowSum += sample[src + col] & 0xff; // Range 0 to 255, not -128 to 127
+                integral[dst + col] = integral[above + col] + rowSum;
+            }
+        }
+        integralValid = true;
+    }
+
+    /**
+     * @return true if sums are taken from the integral image, false if summed from the pixels
+     */
+    boolean isIntegralValid() {
+        return integralValid;
     }
 
     /**
@@ -81,4 +137,32 @@ class ImageSample {
     public byte[] getSamplePixels() {
         return sample;
     }
+
+    /**
+     * Sums the luminance of all pixels inside the given rectangle.
+     * Costs O(1) if the integral image is prepared, otherwise reads the rectangle row by row, eight pixels per step.
+     * Bounds must be within the sample.
+     *
+     * @param top    first row, inclusive
+     * @param left   first column, inclusive
+     * @param bottom last row, exclusive
+     * @param right  last column, exclusive
+     * @return sum of unsigned pixel values
+     */
+    public int sum(int top, int left, int bottom, int right) {
+        if (!integralValid) {
+            int total = 0;
+            if (left == 0 && right == SAMPLE_SIZE) {
+                // Full-width rows are contiguous
+                total = LuminanceKernel.sumUnsigned(sampleWords, top * SAMPLE_SIZE, bottom * SAMPLE_SIZE);
+            } else {
+                for (int row = top; row < bottom; row++) {
+                    total += LuminanceKernel.sumUnsigned(sampleWords, row * SAMPLE_SIZE + left, row * SAMPLE_SIZE + right);
+                }
+            }
+            return total;
+        }
+        return integral[bottom * INTEGRAL_SIZE + right] - integral[top * INTEGRAL_SIZE + right]
+                - integral[bottom * INTEGRAL_SIZE + left] + integral[top * INTEGRAL_SIZE + left];
+    }
 }
@@ -0,0 +1,78 @@
+package raha.app.morsebuddy.camera;
+
+/**
+ * Lookup table of y-plane offsets of the sample-pixels, for one camera geometry.
+ * Offsets never change for the same row stride, pixel stride, width and height;
+ * so the table is built once when a geometry is first seen, and each frame is sampled by a plain gather loop.
+ *
+ * @see ImageSample#fill(PlaneOffsets, java.nio.ByteBuffer)
+ */
+class PlaneOffsets {
+    private static final int SAMPLE_SIZE = ImageSample.SAMPLE_SIZE;
+
+    private final int rowStride;
+    private final int pixelStride;
+    private final int imageWidth;
+    private final int imageHeight;
+
+    /* Offset of each sample-pixel in the plane, in sample order */
+    private final int[] offsets;
+    /* Number of valid entries in offsets */
+    private final int count;
+    /* Largest offset; a plane must be larger than this to be sampled */
+    private final int maxOffset;
+
+    /**
+     * Builds the table for the given geometry; same arguments as {@link ImageSample#ImageSample(int, int, int, int, byte[])}.
+     */
+    PlaneOffsets(int rowStride, int pixelStride, int imageWidth, int imageHeight) {
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+
+        /* Offset between two neighboring sample-pixels in the real plane */
+        final int pixelOffset = Math.max(imageWidth / SAMPLE_SIZE, 1);
+
+        // Calculating bounds of the sample (in real plane)
+        final int sampleTop = (imageHeight - imageWidth) / 2;
+        final int sampleBottom = Math.min((imageHeight + imageWidth) / 2, imageHeight);
+        // First sample-pixel column inside the bounds, aligned to the sampling grid
+        final int firstY = sampleTop <= 0 ? 0 : ((sampleTop + pixelOffset - 1) / pixelOffset) * pixelOffset;
+
+        this.offsets = new int[SAMPLE_SIZE * SAMPLE_SIZE];
+        int sIndex = 0;
+        int max = 0;
+        for (int x = 0; x < imageWidth && sIndex < offsets.length; x += pixelOffset) {
+            // Row stride is in bytes, so it already spans the pixel stride
+            final int rowIndex = rowStride * x;
+            for (int y = firstY; y < sampleBottom && sIndex < offsets.length; y += pixelOffset) {
+                final int index = rowIndex + y * pixelStride;
+                offsets[sIndex++] = index;
+                max = Math.max(max, index);
+            }
+        }
+        this.count = sIndex;
+        this.maxOffset = max;
+    }
+
+    /**
+     * @return true if this table is built for the given geometry
+     */
+    boolean matches(int rowStride, int pixelStride, int imageWidth, int imageHeight) {
+        return this.rowStride == rowStride && this.pixelStride == pixelStride
+                && this.imageWidth == imageWidth && this.imageHeight == imageHeight;
+    }
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getMaxOffset() {
+        return maxOffset;
+    }
+}
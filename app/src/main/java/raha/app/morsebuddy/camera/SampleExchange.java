@@ -0,0 +1,88 @@
+package raha.app.morsebuddy.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free triple buffer of preallocated {@link ImageSample}s.
+ * Hands over samples from exactly one writer (the analyzer thread) to exactly one reader (the sampler thread).
+ * <p>
+ * The writer fills the back buffer in place and publishes it, the reader swaps the latest published buffer to the front.
+ * Both sides always work on different buffers, thus no frame is allocated or copied in steady state.
+ * Publishing over a frame that was never fetched by the reader is counted as an overwritten frame.
+ */
+class SampleExchange {
+    private static final int BUFFER_COUNT = 3;
+    /* Flag on the middle index, set when the middle buffer contains a frame not fetched yet */
+    private static final int FRESH = 0x4;
+    private static final int INDEX_MASK = 0x3;
+
+    private final ImageSample[] buffers;
+    /* Index of the buffer in between writer and reader, along with the FRESH flag */
+    private final AtomicInteger middle;
+    /* Number of published frames that were replaced before the reader fetched them */
+    private final AtomicLong overwrittenFrameCount;
+
+    /* Owned by the writer */
+    private int back;
+    /* Owned by the reader */
+    private int front;
+
+    SampleExchange() {
+        buffers = new ImageSample[BUFFER_COUNT];
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            buffers[i] = new ImageSample();
+        }
+        front = 0;
+        middle = new AtomicInteger(1);
+        back = 2;
+        overwrittenFrameCount = new AtomicLong();
+    }
+
+    /**
+     * Writer side; provides the buffer to be filled in place before calling {@link SampleExchange#publish()}.
+     *
+     * @return buffer owned by the writer
+     */
+    ImageSample getBackBuffer() {
+        return buffers[back];
+    }
+
+    /**
+     * Writer side; hands over the back buffer as the latest frame.
+     */
+    void publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        if ((previous & FRESH) != 0) {
+            overwrittenFrameCount.incrementAndGet();
+        }
+        back = previous & INDEX_MASK;
+    }
+
+    /**
+     * Reader side; takes the latest published frame, if there is any, as the front buffer.
+     *
+     * @return true if a new frame was taken, false if the front buffer still holds the previous frame
+     */
+    boolean fetch() {
+        // Only the writer sets FRESH, and only the reader clears it; so it cannot disappear in between
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Reader side; provides the frame fetched last.
+     *
+     * @return buffer owned by the reader
+     */
+    ImageSample getFrontBuffer() {
+        return buffers[front];
+    }
+
+    long getOverwrittenFrameCount() {
+        return overwrittenFrameCount.get();
+    }
+}
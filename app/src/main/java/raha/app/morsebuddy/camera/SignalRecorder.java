@@ -3,12 +3,16 @@ package raha.app.morsebuddy.camera;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.camera.core.ImageProxy;
 
-import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
@@ -16,8 +20,18 @@ import java.util.concurrent.TimeUnit;
 
 import raha.app.morsebuddy.app.MorseBuddy;
 import raha.app.morsebuddy.app.TaskExecutor;
+import raha.app.morsebuddy.system.AdaptiveBaseline;
+import raha.app.morsebuddy.system.BaselineIndex;
+import raha.app.morsebuddy.system.CancellationToken;
 import raha.app.morsebuddy.system.KMeansNormalizer;
+import raha.app.morsebuddy.system.OptimalClusterNormalizer;
+import raha.app.morsebuddy.system.RatioNormalizer;
+import raha.app.morsebuddy.system.RunLengthSignal;
+import raha.app.morsebuddy.system.SignalStore;
+import raha.app.morsebuddy.system.StreamingTranslator;
 import raha.app.morsebuddy.system.Translator;
+import raha.app.morsebuddy.system.ViterbiNormalizer;
+import raha.app.morsebuddy.util.Constants;
 import raha.app.morsebuddy.util.Counter;
 
 /**
@@ -25,42 +39,144 @@ import raha.app.morsebuddy.util.Counter;
  * Pass this signal array to {@link Translator} which processes and convert to Morse/Text.
  * <p>
  * Provides functionalities like changing sampling rate, adjusting baseline to optimize translation.
+ * Baseline is either set manually, or estimated from the histogram of each session, see {@link SignalRecorder#setAutoBaseline(boolean)}.
+ * By default, it adapts to changes of ambient light during the session, see {@link SignalRecorder#setAdaptiveBaselineWindow(int)}.
  * <p>
- * Max recording time is defined by {@link SignalRecorder#RECORDER_SESSION_DURATION} after which recording will automatically stopped.
- * However, user can stop recording at any time after recording is started.
+ * Recording runs until stopped; the signal is kept in a chunked {@link SignalStore}, so sessions of any length are possible.
+ * Optionally, a maximum recording duration makes the store keep only the latest frames, see {@link SignalRecorder#setMaxRecordingDuration(int)}.
+ * Alternatively, the target signal is kept run-length encoded, see {@link CaptureFormat}.
+ * Once a session ends, its signals are indexed by {@link BaselineIndex} on the first translation of it, off the main thread, and results are cached for each baseline;
+ * so that re-translation with another baseline does not walk the recorded frames again.
+ * <p>
+ * Signal is recorded according to the {@link RecordingMode}; either polled at fixed rate, or one sample per delivered camera frame.
+ * <p>
+ * Besides the target, up to {@link SignalRecorder#MAX_CHANNEL_COUNT} additional regions (channels) can be recorded from the same image-frames, e.g. when several lamps are in view.
+ * Each channel has its own signal array and is translated independently, in parallel.
+ * <p>
+ * While recording, the target signal is also translated incrementally by a {@link StreamingTranslator}; partial text is published as soon as letters are complete.
  *
  * <b>Important:</b> Instances of this class should be managed by view models, since {@link Callback} methods might be invoked from background threads.
  */
 public class SignalRecorder implements ImageProcessor {
     private static final String TAG = "SignalRecorder";
-    private static final int RECORDER_SESSION_DURATION = 18;    // Seconds
+    private static final int RENDER_WINDOW_DURATION = 18;    // Seconds
+    /* Released chunks kept for reuse; enough for a few minutes at 60 fps */
+    private static final int MAX_FREE_CHUNKS = 32;
     private static final int RENDER_GAP = 4;    // Frames
+    /* Translation results kept for revisiting baselines */
+    private static final int RESULT_CACHE_SIZE = 16;
+    /* Maximum number of additional channels, besides the target */
+    public static final int MAX_CHANNEL_COUNT = 8;
+    /* Duration kept of a recorder session unless set otherwise; unbounded, so no session loses its beginning */
+    public static final int DEFAULT_MAX_RECORDING_DURATION = 0;    // Seconds
+    /* Window of the adaptive baseline unless set otherwise; longer than twice a dash even at slow hand keying, short enough to follow passing clouds */
+    public static final int DEFAULT_ADAPTIVE_BASELINE_WINDOW = 4;    // Seconds
 
     private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
     private ScheduledFuture<?> scheduledFuture;
 
     /* True means, continuous image-frame from CameraHelper is being processed. */
-    private boolean imageProcessing;
+    private volatile boolean imageProcessing;
     /* True means, a recorder session is running */
-    private boolean recording;
+    private volatile boolean recording;
+    /* Held while a frame is recorded, and while a session is set up; so frames are never appended to a session being cleared */
+    private final Object recordLock = new Object();
     /* True means, cleanUp method was called, thus now in destroyed state. */
     private boolean cleanUpCalled;
 
     /* Current frame rate for recording */
     private int frameRate;
+    /* Highest frame rate the camera stream delivers; recordings never sample faster than this */
+    private volatile int streamFrameRate;
     /* Current baseline for signal translation */
     private int baseline;
-    /* Number of total frame in a recorder session for the current frame rate; for example 20 seconds record @30fps means total of 20x30 frames */
-    private int totalFrameCount;
+    /* True means, baseline is estimated from the signal of each session; a manual baseline overrides it */
+    private volatile boolean autoBaseline;
+    /* Estimates the baseline from the histogram of the session; only touched from the recording thread */
+    private final BaselineEstimator baselineEstimator;
+    /* Latest estimated baseline of the running session; -1 means none */
+    private volatile int estimatedBaseline;
+    /* Window of the locally adaptive baseline in seconds; zero means baseline is the same for the whole session */
+    private int adaptiveBaselineWindow;
+    /* Frame rate the last recorder session was recorded at */
+    private int sessionFrameRate;
+    /* Maximum duration kept of a recorder session in seconds, older frames are evicted; zero means unbounded */
+    private int maxRecordingDuration;
+    /* Number of frames shown by the renderer; the latest seconds of the session */
+    private int renderWindowLength;
     /* Number of recorded frame at any instant */
     private int recordedFrameCount;
-    /* Contains the recorded frames in a complete session; represents the generated signal */
-    private int[] frameArray;
+    /* Provides the chunks of all signal stores */
+    private final SignalStore.ChunkPool chunkPool;
+    /* Contains the recorded frames of a session with their camera timestamps (only used in RecordingMode.CAMERA_FRAME); represents the generated signal */
+    private SignalStore signalStore;
+    /* Target signal of a session in CaptureFormat.RUN_LENGTH; provisional threshold is the baseline at session start */
+    private RunLengthSignal runLengthSignal;
+    /* Signals of the last recorder session, handed off once it ends; indexed by its first translation, re-translations are made from the index */
+    private RecordedSession session;
+    /* Changes with each recorder session and each change of clustering; results of other generations are never taken from cache */
+    private int resultGeneration;
+    /* Latest results of the target, keyed by (generation, baseline); least recently used is evicted */
+    private final Map<Long, Translator.Result> resultCache;
+    /* Current capture format */
+    private CaptureFormat captureFormat;
+    /* Capture format of the last recorder session */
+    private CaptureFormat sessionCaptureFormat;
+    /* Current recording mode */
+    private RecordingMode recordingMode;
+    /* Recording mode of the last recorder session, decides how the recorded frames are translated */
+    private RecordingMode sessionRecordingMode;
+    /* Capture quality of the last recorder session */
+    private int duplicatedFrameCount;
+    private long droppedFrameCount;
+    /* Overwritten frame count when the last recorder session started */
+    private long overwrittenFrameCountAtStart;
     /* Helps track the submitted translation task; so that only the latest result is published */
-    private int lastSubmitCode;
+    private volatile int lastSubmitCode;
 
-    private ImageSample sample;
-    private Translator translator;
+    /* Hands over image-frame samples from the analyzer thread to the scheduled sampler thread */
+    private final SampleExchange sampleExchange;
+    /* Calculates the signal (contrast of the target) of each image-frame */
+    private final ContrastEngine contrastEngine;
+    /* Keeps the target on the blinking light source; only touched from the analysis thread */
+    private final TargetTracker targetTracker;
+    /* True means, target follows the light source, otherwise it stays at the center */
+    private volatile boolean targetTracking;
+    /* Set when tracking is switched, so that the analysis thread restarts the tracker */
+    private volatile boolean trackerResetPending;
+    /* Plane offsets of the sample-pixels for the current camera geometry; only touched from the analysis thread */
+    private PlaneOffsets planeOffsets;
+    /* Detects duplicated and dropped camera frames in RecordingMode.CAMERA_FRAME */
+    private final FrameTiming frameTiming;
+    /* Measures the rate image-frames are actually delivered at, whether recording or not */
+    private final FrameTiming streamTiming;
+    /* Additional channels for future recordings */
+    private volatile ChannelLayout channelLayout;
+    /* Channel layout of the last recorder session */
+    private ChannelLayout sessionChannelLayout;
+    /* Recorded frames of each channel in the last recorder session */
+    private SignalStore[] channelStores;
+    /* Channel regions kept inside the sample, and their contrast; rewritten on each recorded frame */
+    private final int[] channelTops;
+    private final int[] channelLefts;
+    private final int[] channelContrasts;
+    /* Number of channels to detect on the next image-frame; zero means no request */
+    private volatile int channelDetectionRequest;
+    /* Detected sources; only touched from the analysis thread */
+    private final int[] detectionTops;
+    private final int[] detectionLefts;
+    /* Translates the channels in parallel */
+    private final ExecutorService channelExecutor;
+    /* Stateless, shared by the target and channel translations */
+    private volatile Translator translator;
+    /* Cancels the translations of the latest submission */
+    private volatile CancellationToken translationToken;
+    /* Key of the target translations on the app executor; a waiting translation is replaced by a newer one */
+    private final Object translationTaskKey;
+    /* Clustering of the durations, for all translators */
+    private Normalization normalization;
+    /* Translates the target signal while recording; only touched from the recording thread, after reset */
+    private final StreamingTranslator streamingTranslator;
     private GraphRenderer renderer;
     private Callback callback;
 
@@ -68,8 +184,61 @@ public class SignalRecorder implements ImageProcessor {
     private final Counter renderGapCounter;
 
     public enum FrameRate {
-        FPS_30,
-        FPS_60
+        FPS_30(30),
+        FPS_60(60),
+        FPS_120(120),
+        FPS_240(240);
+
+        /* Frames per second */
+        private final int value;
+
+        FrameRate(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    public enum RecordingMode {
+        /* The latest image-frame is sampled at fixed rate, regardless of camera timing */
+        FIXED_RATE,
+        /* Each delivered image-frame is one sample, durations are measured by camera timestamps */
+        CAMERA_FRAME
+    }
+
+    public enum CaptureFormat {
+        /* Every frame of the target signal is kept */
+        RAW,
+        /* Target signal is kept as runs, raw frames only at the edges; translation is exact if the baseline stays unchanged, see RunLengthSignal#isExact.
+        Opt-in, not used by the app: the baseline is usually moved after recording, by the slider or the estimate, where only the raw frames are exact */
+        RUN_LENGTH
+    }
+
+    public enum Normalization {
+        /* Ratios to the estimated unit in a linear pass, seeded k-means if not confident; see RatioNormalizer */
+        RATIO,
+        /* Seeded k-means, see KMeansNormalizer */
+        K_MEANS,
+        /* Globally optimal clusters by dynamic programming, see OptimalClusterNormalizer */
+        OPTIMAL,
+        /* Unit allowed to drift within the message, decoded by Viterbi; see ViterbiNormalizer */
+        VITERBI;
+
+        @NonNull
+        Translator.ArrayNormalizer createNormalizer() {
+            switch (this) {
+                case RATIO:
+                    return new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE);
+                case OPTIMAL:
+                    return new OptimalClusterNormalizer();
+                case VITERBI:
+                    return new ViterbiNormalizer();
+                default:
+                    return new KMeansNormalizer();
+            }
+        }
     }
 
     /**
@@ -82,15 +251,60 @@ public class SignalRecorder implements ImageProcessor {
         recording = false;
         cleanUpCalled = false;
 
-        this.frameRate = frameRate == FrameRate.FPS_30 ? 30 : 60;
+        this.frameRate = frameRate.getValue();
+        this.streamFrameRate = this.frameRate;
         this.baseline = 0;
-        this.totalFrameCount = this.frameRate * SignalRecorder.RECORDER_SESSION_DURATION;
+        this.autoBaseline = false;
+        this.baselineEstimator = new BaselineEstimator();
+        this.estimatedBaseline = -1;
+        this.adaptiveBaselineWindow = DEFAULT_ADAPTIVE_BASELINE_WINDOW;
+        this.sessionFrameRate = this.frameRate;
+        this.maxRecordingDuration = DEFAULT_MAX_RECORDING_DURATION;
+        this.renderWindowLength = this.frameRate * SignalRecorder.RENDER_WINDOW_DURATION;
         this.recordedFrameCount = 0;
-        this.frameArray = new int[this.totalFrameCount];
+        this.chunkPool = new SignalStore.ChunkPool(SignalStore.DEFAULT_CHUNK_SIZE, MAX_FREE_CHUNKS);
+        this.signalStore = new SignalStore(chunkPool, 0);
+        this.runLengthSignal = new RunLengthSignal(0, RunLengthSignal.DEFAULT_EDGE_FRAMES);
+        // Nothing recorded yet
+        this.session = new RecordedSession(signalStore, null, new SignalStore[0], false, 0, -1);
+        this.resultGeneration = 0;
+        this.resultCache = new LinkedHashMap<Long, Translator.Result>(RESULT_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Translator.Result> eldest) {
+                return size() > RESULT_CACHE_SIZE;
+            }
+        };
+        this.captureFormat = CaptureFormat.RAW;
+        this.sessionCaptureFormat = CaptureFormat.RAW;
+        this.recordingMode = RecordingMode.FIXED_RATE;
+        this.sessionRecordingMode = RecordingMode.FIXED_RATE;
+        this.duplicatedFrameCount = 0;
+        this.droppedFrameCount = 0L;
+        this.overwrittenFrameCountAtStart = 0L;
         this.lastSubmitCode = 0;
 
-        this.sample = ImageSample.zeros();
-        this.translator = new Translator(new KMeansNormalizer());
+        this.sampleExchange = new SampleExchange();
+        this.contrastEngine = new ContrastEngine();
+        this.targetTracker = new TargetTracker();
+        this.targetTracking = true;
+        this.trackerResetPending = true;
+        this.frameTiming = new FrameTiming();
+        this.streamTiming = new FrameTiming();
+        this.channelLayout = ChannelLayout.EMPTY;
+        this.sessionChannelLayout = ChannelLayout.EMPTY;
+        this.channelStores = new SignalStore[0];
+        this.channelTops = new int[MAX_CHANNEL_COUNT];
+        this.channelLefts = new int[MAX_CHANNEL_COUNT];
+        this.channelContrasts = new int[MAX_CHANNEL_COUNT];
+        this.channelDetectionRequest = 0;
+        this.detectionTops = new int[MAX_CHANNEL_COUNT + 1];
+        this.detectionLefts = new int[MAX_CHANNEL_COUNT + 1];
+        this.channelExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_CHANNEL_COUNT)));
+        this.normalization = Normalization.RATIO;
+        this.translator = new Translator(normalization.createNormalizer());
+        this.translationToken = CancellationToken.NONE;
+        this.translationTaskKey = new Object();
+        this.streamingTranslator = new StreamingTranslator();
         this.renderer = null;
         this.callback = null;
 
@@ -108,9 +322,7 @@ public class SignalRecorder implements ImageProcessor {
         checkForDestroyedState();
         // Changing properties is not allowed when a recording is running
         if (!recording) {
-            this.frameRate = frameRate == FrameRate.FPS_30 ? 30 : 60;
-            this.totalFrameCount = this.frameRate * SignalRecorder.RECORDER_SESSION_DURATION;
-            this.frameArray = new int[this.totalFrameCount];
+            this.frameRate = frameRate.getValue();
             // Callback
             if (callback != null) {
                 callback.onFrameRateChange(frameRate);
@@ -128,6 +340,110 @@ public class SignalRecorder implements ImageProcessor {
         }
     }
 
+    /**
+     * Sets the recording mode for future recordings.
+     * No effect if currently recording.
+     *
+     * @param recordingMode requested recording mode
+     * @return true if recording mode was set, false otherwise
+     */
+    public boolean setRecordingMode(@NonNull RecordingMode recordingMode) {
+        checkForDestroyedState();
+        // Changing properties is not allowed when a recording is running
+        if (!recording) {
+            this.recordingMode = recordingMode;
+            Log.d(TAG, "recording mode changed, mode=" + recordingMode);
+            return true;
+        } else {
+            Log.e(TAG, "setRecordingMode called while recording is running.");
+            return false;
+        }
+    }
+
+    /**
+     * Sets the capture format of the target signal for future recordings; {@link CaptureFormat#RAW} by default.
+     * Run-length signals grow with the number of transitions instead of the number of frames, but re-translations at another baseline
+     * might differ from the raw frames; they are not limited by the maximum recording duration. Channels are always kept raw.
+     * No effect if currently recording.
+     *
+     * @param captureFormat requested capture format
+     * @return true if capture format was set, false otherwise
+     */
+    public boolean setCaptureFormat(@NonNull CaptureFormat captureFormat) {
+        checkForDestroyedState();
+        // Changing properties is not allowed when a recording is running
+        if (!recording) {
+            this.captureFormat = captureFormat;
+            Log.d(TAG, "capture format changed, format=" + captureFormat);
+            return true;
+        } else {
+            Log.e(TAG, "setCaptureFormat called while recording is running.");
+            return false;
+        }
+    }
+
+    public CaptureFormat getCaptureFormat() {
+        return captureFormat;
+    }
+
+    /**
+     * Sets how durations are clustered into morse elements; the last session is re-translated with it.
+     * No effect if currently recording.
+     *
+     * @param normalization requested clustering
+     * @return true if clustering was set, false otherwise
+     */
+    public boolean setNormalization(@NonNull Normalization normalization) {
+        checkForDestroyedState();
+        // Changing properties is not allowed when a recording is running
+        if (!recording) {
+            this.normalization = normalization;
+            translator = new Translator(normalization.createNormalizer());
+            // Cached results were clustered differently
+            resultGeneration++;
+            synchronized (resultCache) {
+                resultCache.clear();
+            }
+            Log.d(TAG, "normalization changed, normalization=" + normalization);
+            if (session.hasFrames()) {
+                submitTranslationTask(baseline);
+            }
+            return true;
+        } else {
+            Log.e(TAG, "setNormalization called while recording is running.");
+            return false;
+        }
+    }
+
+    public Normalization getNormalization() {
+        return normalization;
+    }
+
+    /**
+     * Limits how much of a recorder session is kept; when exceeded, the oldest frames are dropped and recording goes on.
+     * Memory grows in steps of {@link SignalStore#DEFAULT_CHUNK_SIZE} frames, so slightly more than the limit might be kept.
+     * No effect if currently recording.
+     *
+     * @param seconds maximum duration kept, zero for unbounded; {@link SignalRecorder#DEFAULT_MAX_RECORDING_DURATION} by default
+     * @return true if the limit was set, false otherwise
+     */
+    public boolean setMaxRecordingDuration(int seconds) {
+        checkForDestroyedState();
+        // Changing properties is not allowed when a recording is running
+        if (!recording) {
+            this.maxRecordingDuration = Math.max(seconds, 0);
+            Log.d(TAG, "max recording duration changed, seconds=" + maxRecordingDuration);
+            return true;
+        } else {
+            Log.e(TAG, "setMaxRecordingDuration called while recording is running.");
+            return false;
+        }
+    }
+
+    public int getMaxRecordingDuration() {
+        return maxRecordingDuration;
+    }
+
     /**
      * Sets the current baseline for signal translation.
      * No effect if currently recording.
@@ -139,6 +455,13 @@ public class SignalRecorder implements ImageProcessor {
         checkForDestroyedState();
         // Changing properties is not allowed when a recording is running
         if (!recording) {
+            // Manual baseline overrides the estimation
+            if (autoBaseline) {
+                autoBaseline = false;
+                if (callback != null) {
+                    callback.onAutoBaselineChange(false);
+                }
+            }
             this.baseline = baseline;
             Log.d(TAG, "baseline changed, baseline=" + baseline);
             // Callback
@@ -147,7 +470,7 @@ public class SignalRecorder implements ImageProcessor {
             }
             // No restart of image processing, since does not depend on baseline.
             // Now submit for re-translation
-            submitTranslationTask(frameArray, baseline);
+            submitTranslationTask(baseline);
             return true;
         } else {
             Log.e(TAG, "setBaseline called while translation or recording is running.");
@@ -155,6 +478,182 @@ public class SignalRecorder implements ImageProcessor {
         }
     }
 
+    /**
+     * Enables or disables automatic baseline for future recordings.
+     * If enabled, the baseline follows the histogram of the session while recording, and the session is translated with the final estimate.
+     * If enabled after a session, the session is re-translated with its estimate.
+     * Setting a baseline manually disables it.
+     * No effect if currently recording.
+     *
+     * @param autoBaseline true to estimate the baseline
+     * @return true if automatic baseline was set, false otherwise
+     */
+    public boolean setAutoBaseline(boolean autoBaseline) {
+        checkForDestroyedState();
+        // Changing properties is not allowed when a recording is running
+        if (!recording) {
+            this.autoBaseline = autoBaseline;
+            Log.d(TAG, "auto baseline changed, autoBaseline=" + autoBaseline);
+            if (callback != null) {
+                callback.onAutoBaselineChange(autoBaseline);
+            }
+            if (autoBaseline) {
+                applyEstimatedBaseline(true);
+            }
+            return true;
+        } else {
+            Log.e(TAG, "setAutoBaseline called while recording is running.");
+            return false;
+        }
+    }
+
+    public boolean isAutoBaseline() {
+        return autoBaseline;
+    }
+
+    /**
+     * Makes the baseline adapt to changes of ambient light for future recordings; the baseline is then measured from the lowest signal
+     * within the window around each frame, see {@link AdaptiveBaseline}. Window must be longer than the longest dash.
+     * Only applies to {@link CaptureFormat#RAW}; run-length signals are split against a single threshold while recording.
+     * No effect if currently recording.
+     *
+     * @param seconds window of the adaptive baseline, zero for the same baseline throughout the session;
+     *                {@link SignalRecorder#DEFAULT_ADAPTIVE_BASELINE_WINDOW} by default
+     * @return true if the window was set, false otherwise
+     */
+    public boolean setAdaptiveBaselineWindow(int seconds) {
+        checkForDestroyedState();
+        // Changing properties is not allowed when a recording is running
+        if (!recording) {
+            this.adaptiveBaselineWindow = Math.max(seconds, 0);
+            Log.d(TAG, "adaptive baseline window changed, seconds=" + adaptiveBaselineWindow);
+            return true;
+        } else {
+            Log.e(TAG, "setAdaptiveBaselineWindow called while recording is running.");
+            return false;
+        }
+    }
+
+    public int getAdaptiveBaselineWindow() {
+        return adaptiveBaselineWindow;
+    }
+
+    /**
+     * Takes the estimated baseline of the last session, if any.
+     *
+     * @param retranslate true to submit a re-translation if baseline changed
+     */
+    private void applyEstimatedBaseline(boolean retranslate) {
+        final int estimate = session.peekEstimatedBaseline();
+        if (estimate < 0 && retranslate && session.hasFrames() && !session.isIndexed()) {
+            // Estimate of a detrended session is only known once indexed; the translation takes it, see onComplete
+            submitTranslationTask(baseline);
+            return;
+        }
+        if (estimate < 0 || estimate == baseline) {
+            return;
+        }
+        baseline = estimate;
+        Log.d(TAG, "baseline estimated, baseline=" + baseline);
+        if (callback != null) {
+            callback.onBaselineChange(baseline);
+        }
+        if (retranslate) {
+            submitTranslationTask(baseline);
+        }
+    }
+
+    /**
+     * Resizes the target (the region that is watched for the signal) around its center.
+     * Takes effect from the next image-frame, also while recording.
+     *
+     * @param targetSize side of the target square, in sample-pixels; sample is {@link Constants#SAMPLE_SIZE_IN_PIXEL} wide
+     */
+    public void setTargetSize(int targetSize) {
+        contrastEngine.setTargetSize(targetSize);
+        notifyTargetMove();
+    }
+
+    /**
+     * Enables or disables automatic localisation of the light source.
+     * If enabled, the target follows the blinking light source; otherwise it stays at the center.
+     *
+     * @param targetTracking true to follow the light source
+     */
+    public void setTargetTracking(boolean targetTracking) {
+        this.targetTracking = targetTracking;
+        trackerResetPending = true;
+        if (!targetTracking) {
+            // Back to the center
+            contrastEngine.setTargetCenter(Constants.SAMPLE_SIZE_IN_PIXEL / 2, Constants.SAMPLE_SIZE_IN_PIXEL / 2);
+            notifyTargetMove();
+        }
+        Log.d(TAG, "target tracking changed, tracking=" + targetTracking);
+    }
+
+    public boolean isTargetTracking() {
+        return targetTracking;
+    }
+
+    public int getTargetSize() {
+        return contrastEngine.getTargetSize();
+    }
+
+    /**
+     * Adds a region to be recorded alongside the target, as an additional channel of the target size.
+     * Takes effect from the next recorder session.
+     *
+     * @param top  top row of the region, in sample-pixels
+     * @param left left column of the region, in sample-pixels
+     * @return number of the new channel (target itself being channel 0), or -1 if {@link SignalRecorder#MAX_CHANNEL_COUNT} is reached
+     */
+    public int addChannel(int top, int left) {
+        final ChannelLayout current = channelLayout;
+        if (current.count >= MAX_CHANNEL_COUNT) {
+            Log.e(TAG, "addChannel called with maximum channels.");
+            return -1;
+        }
+        channelLayout = current.plus(Math.max(top, 0), Math.max(left, 0));
+        Log.d(TAG, "channel added, top=" + top + " left=" + left);
+        return current.count + 1;
+    }
+
+    /**
+     * Replaces the channels by the blinking sources currently in view (other than the target), strongest first.
+     * Detection runs on an upcoming image-frame, once enough frames are seen to tell sources from noise.
+     * Takes effect from the next recorder session.
+     *
+     * @param maxCount maximum number of channels, at most {@link SignalRecorder#MAX_CHANNEL_COUNT}
+     */
+    public void detectChannels(int maxCount) {
+        channelDetectionRequest = Math.max(0, Math.min(maxCount, MAX_CHANNEL_COUNT));
+    }
+
+    /**
+     * Removes all additional channels.
+     * Takes effect from the next recorder session.
+     */
+    public void clearChannels() {
+        channelDetectionRequest = 0;
+        channelLayout = ChannelLayout.EMPTY;
+    }
+
+    /**
+     * @return number of additional channels, besides the target
+     */
+    public int getChannelCount() {
+        return channelLayout.count;
+    }
+
+    /**
+     * Sets the background the target is compared against.
+     *
+     * @param ringWidth width of a ring around the target in sample-pixels, or zero to compare against the whole sample
+     */
+    public void setBackgroundRingWidth(int ringWidth) {
+        contrastEngine.setRingWidth(ringWidth);
+    }
+
     public void setRenderer(GraphRenderer renderer) {
         this.renderer = renderer;
     }
@@ -164,13 +663,61 @@ public class SignalRecorder implements ImageProcessor {
     }
 
     public FrameRate getFrameRate() {
-        return this.frameRate == 30 ? FrameRate.FPS_30 : FrameRate.FPS_60;
+        for (FrameRate value : FrameRate.values()) {
+            if (value.getValue() == this.frameRate) {
+                return value;
+            }
+        }
+        return FrameRate.FPS_30;
+    }
+
+    @Override
+    public void setStreamFrameRate(int framesPerSecond) {
+        this.streamFrameRate = framesPerSecond > 0 ? framesPerSecond : frameRate;
+        // Stream is reconfigured, the rate is measured anew
+        streamTiming.reset(1_000_000_000L / streamFrameRate);
+        Log.d(TAG, "stream frame rate changed, fps=" + streamFrameRate);
+    }
+
+    /**
+     * Frame rate the camera stream is configured to deliver; might be lower than the requested {@link SignalRecorder#getFrameRate()}.
+     *
+     * @return frames per second
+     */
+    public int getStreamFrameRate() {
+        return streamFrameRate;
+    }
+
+    /**
+     * Frame rate measured from the delivered image-frames; the configured rate is only an upper bound, e.g. in low light.
+     *
+     * @return frames per second; zero if not measured yet
+     */
+    public int getMeasuredFrameRate() {
+        return streamTiming.getMeasuredFrameRate();
+    }
+
+    /**
+     * Rate at which a recorder session in the given mode records frames.
+     * Polling faster than the stream would only repeat frames, and each camera frame is recorded at the rate the stream delivers them;
+     * measured once available, since the stream might deliver fewer frames than configured.
+     */
+    private int getSessionFrameRate(RecordingMode mode) {
+        if (mode == RecordingMode.CAMERA_FRAME) {
+            final int measuredFrameRate = streamTiming.getMeasuredFrameRate();
+            return measuredFrameRate > 0 ? Math.min(measuredFrameRate, streamFrameRate) : streamFrameRate;
+        }
+        return Math.min(frameRate, streamFrameRate);
     }
 
     public int getBaseline() {
         return baseline;
     }
 
+    public RecordingMode getRecordingMode() {
+        return recordingMode;
+    }
+
     /**
      * Starts a recording session.
      * Also, cancels any pending/running translation task.
@@ -181,13 +728,43 @@ public class SignalRecorder implements ImageProcessor {
         if (recording) {
             return;
         }
-        recording = true;
         // Start additional task
         if (renderer != null) {
             renderer.clear();
         }
-        recordedFrameCount = 0;
-        Arrays.fill(frameArray, 0);
+        synchronized (recordLock) {
+            recordedFrameCount = 0;
+            resultGeneration++;
+            synchronized (resultCache) {
+                resultCache.clear();
+            }
+            sessionRecordingMode = recordingMode;
+            // Durations are converted to frames at the rate the frames are actually recorded
+            sessionFrameRate = getSessionFrameRate(sessionRecordingMode);
+            renderWindowLength = sessionFrameRate * SignalRecorder.RENDER_WINDOW_DURATION;
+            final int maxChunks = maxRecordingDuration > 0 ? (maxRecordingDuration * sessionFrameRate + chunkPool.getChunkSize() - 1) / chunkPool.getChunkSize() : 0;
+            // Stores of the last session belong to it, until its first translation indexes them
+            signalStore = new SignalStore(chunkPool, maxChunks);
+            sessionCaptureFormat = captureFormat;
+            if (sessionCaptureFormat == CaptureFormat.RUN_LENGTH) {
+                // Runs are split against the baseline of the session
+                runLengthSignal = new RunLengthSignal(baseline, RunLengthSignal.DEFAULT_EDGE_FRAMES);
+            }
+            sessionChannelLayout = channelLayout;
+            channelStores = new SignalStore[sessionChannelLayout.count];
+            for (int i = 0; i < channelStores.length; i++) {
+                channelStores[i] = new SignalStore(chunkPool, maxChunks);
+            }
+            duplicatedFrameCount = 0;
+            droppedFrameCount = 0L;
+            overwrittenFrameCountAtStart = sampleExchange.getOverwrittenFrameCount();
+            frameTiming.reset(1_000_000_000L / sessionFrameRate);
+            streamingTranslator.reset(baseline);
+            baselineEstimator.reset();
+            estimatedBaseline = -1;
+            // Samplers only append once the session is set up
+            recording = true;
+        }
         // Stop any ongoing translation
         cancelAllTranslations(true);
 
@@ -195,7 +772,7 @@ public class SignalRecorder implements ImageProcessor {
         if (callback != null) {
             callback.onRecordStart();
         }
-        Log.d(TAG, "recording started.");
+        Log.d(TAG, "recording started, fps=" + sessionFrameRate);
     }
 
     /**
@@ -206,18 +783,33 @@ public class SignalRecorder implements ImageProcessor {
     public void stopRecording() {
         checkForDestroyedState();
         if (recording) {
-            recording = false;
+            // Waits for a frame being recorded; no sampler appends once this is released, so the stores are handed off to the session as they are
+            synchronized (recordLock) {
+                recording = false;
+            }
+            // Camera timestamps are only meaningful if the session recorded one sample per camera frame
+            final boolean useTimestamps = sessionRecordingMode == RecordingMode.CAMERA_FRAME;
+            final boolean runLength = sessionCaptureFormat == CaptureFormat.RUN_LENGTH;
+            // Indexing, detrending and estimation are left to the first translation, on the executor
+            session = new RecordedSession(signalStore, runLength ? runLengthSignal : null, channelStores, useTimestamps,
+                    !runLength && adaptiveBaselineWindow > 0 ? adaptiveBaselineWindow * sessionFrameRate : 0, estimatedBaseline);
             // Callback
             if (callback != null) {
                 callback.onRecordStop();
             }
+            if (sessionRecordingMode == RecordingMode.FIXED_RATE) {
+                droppedFrameCount = sampleExchange.getOverwrittenFrameCount() - overwrittenFrameCountAtStart;
+            }
+            if (autoBaseline) {
+                applyEstimatedBaseline(false);
+            }
             // End additional task
-            submitTranslationTask(frameArray, baseline);
-            Log.d(TAG, "recording stopped.");
+            submitTranslationTask(baseline);
+            Log.d(TAG, "recording stopped. frames=" + recordedFrameCount + " duplicated=" + duplicatedFrameCount + " dropped=" + droppedFrameCount);
         }
     }
 
-    private void submitTranslationTask(int[] frameArray, int baseline) {
+    private void submitTranslationTask(int baseline) {
         // Cancel all previously posted tasks
         cancelAllTranslations(false);
         // Guarantees that onTranslationComplete/onTranslationCancel always called after onTranslationBegin
@@ -226,19 +818,59 @@ public class SignalRecorder implements ImageProcessor {
             callback.onTranslationBegin();
         }
         // Post a new translation task
-        Log.d(TAG, "translation submitted with submitCode=" + lastSubmitCode);
-        MorseBuddy.getExecutor().execute(new OneShotTranslationTask(lastSubmitCode, frameArray, baseline, translator), new TaskExecutor.Callback<Translator.Result>() {
-            @Override
-            public void onStart() {
-                // No task
+        final int submitCode = lastSubmitCode;
+        final CancellationToken token = new CancellationToken();
+        translationToken = token;
+        Log.d(TAG, "translation submitted with submitCode=" + submitCode);
+        final RecordedSession session = this.session;
+        // Estimate of a detrended session is only known once indexed, so the task resolves the baseline
+        final boolean useEstimate = autoBaseline;
+        // Channels are translated on the worker pool, in parallel with the target and each other
+        for (int i = 0; i < session.getChannelCount(); i++) {
+            final int channel = i + 1;
+            final OneShotTranslationTask task = new OneShotTranslationTask(submitCode, session, channel, baseline, useEstimate, translator, token, null);
+            channelExecutor.execute(() -> {
+                Translator.Result result = task.call();
+                // Same as the target, only the latest result is published
+                if (callback != null && result != null && result.getSubmitCode() == lastSubmitCode) {
+                    callback.onChannelTranslationComplete(channel, result);
+                }
+            });
+        }
+        // Revisited baseline costs nothing
+        final int generation = resultGeneration;
+        final Translator.Result cached;
+        synchronized (resultCache) {
+            cached = resultCache.get(cacheKey(generation, baseline));
+        }
+        if (cached != null) {
+            Log.d(TAG, "translation taken from cache, baseline=" + baseline);
+            if (callback != null) {
+                callback.onTranslationComplete(cached.withSubmitCode(submitCode));
             }
-
+            return;
+        }
+        MorseBuddy.getExecutor().execute(translationTaskKey, new OneShotTranslationTask(submitCode, session, 0, baseline, useEstimate, translator, token,
+                // Long sessions are split in chunks on the shared pool; nothing to create or shut down here
+                ForkJoinPool.commonPool()), new TaskExecutor.Callback<Translator.Result>() {
             @Override
             public void onComplete(Translator.Result result) {
+                Log.d(TAG, "translation done, baseline=" + (result != null ? result.getBaseline() : baseline) + " stats=" + getTranslationStats());
+                if (result != null) {
+                    synchronized (resultCache) {
+                        // Keyed by the baseline actually translated at, which is the estimate if the task resolved it
+                        resultCache.put(cacheKey(generation, result.getBaseline()), result);
+                    }
+                }
                 // If submitCode does not match, do not publish result.
                 // Thus, we will always publish latest result.
-                if (callback != null) {
+                if (callback != null && result != null) {
                     if (result.getSubmitCode() == lastSubmitCode) {
+                        if (useEstimate && autoBaseline && result.getBaseline() != SignalRecorder.this.baseline) {
+                            SignalRecorder.this.baseline = result.getBaseline();
+                            Log.d(TAG, "baseline estimated, baseline=" + result.getBaseline());
+                            callback.onBaselineChange(result.getBaseline());
+                        }
                         callback.onTranslationComplete(result);
                     }
                 }
@@ -247,26 +879,167 @@ public class SignalRecorder implements ImageProcessor {
         });
     }
 
+    private static long cacheKey(int generation, int baseline) {
+        return ((long) generation << 32) | (baseline & 0xffffffffL);
+    }
+
     private static class OneShotTranslationTask implements Callable<Translator.Result> {
         private final int submitCode;
-        private final int[] givenArray;
+        private final RecordedSession session;
+        private final int channel;
         private final int baseline;
+        private final boolean useEstimate;
         private final Translator translator;
+        private final CancellationToken token;
+        private final ForkJoinPool pool;
 
-        public OneShotTranslationTask(int submitCode, int[] givenArray, int baseline, @NonNull Translator translator) {
+        /**
+         * @param channel     zero for the target, otherwise the 1-based channel
+         * @param useEstimate true to translate at the estimated baseline of the session, if any
+         */
+        public OneShotTranslationTask(int submitCode, @NonNull RecordedSession session, int channel, int baseline, boolean useEstimate,
+                                      @NonNull Translator translator, @NonNull CancellationToken token, @Nullable ForkJoinPool pool) {
             this.submitCode = submitCode;
-            this.givenArray = Arrays.copyOf(givenArray, givenArray.length);
+            this.session = session;
+            this.channel = channel;
             this.baseline = baseline;
+            this.useEstimate = useEstimate;
             this.translator = translator;
+            this.token = token;
+            this.pool = pool;
         }
 
         @Override
         public Translator.Result call() {
-            // Perform blocking translation
-            return translator.resolve(submitCode, givenArray, baseline);
+            // First task of the session builds the index, later ones wait for it and share it
+            final BaselineIndex index = channel == 0 ? session.getIndex() : session.getChannelIndex(channel - 1);
+            final int estimate = useEstimate ? session.getEstimatedBaseline() : -1;
+            // Perform blocking translation; null if superseded meanwhile
+            final Translator.Result result = translator.resolve(submitCode, index, estimate >= 0 ? estimate : baseline, token, pool);
+            // Text is rendered here, off the main thread which shows it
+            return result != null && !token.isCancelled() ? result.render() : result;
         }
     }
 
+    /**
+     * Signals of a recorder session that ended, handed off by {@link SignalRecorder#stopRecording()}.
+     * Nothing is indexed on hand-off; the first translation of the session indexes it, later ones wait for it and share the index.
+     * Target and each channel are indexed independently, so channels do not wait for the target unless they need its estimate.
+     * Stores are cleared once indexed, returning their chunks to the pool.
+     */
+    private static class RecordedSession {
+        private final SignalStore signalStore;
+        @Nullable
+        private final RunLengthSignal runLengthSignal;
+        private final SignalStore[] channelStores;
+        private final boolean useTimestamps;
+        /* Window of the adaptive baseline in frames; zero means the signals are indexed as recorded */
+        private final int detrendWindow;
+        private final boolean frames;
+        private BaselineIndex index;
+        private final BaselineIndex[] channelIndexes;
+        /* Estimated baseline of the target; -1 means none, or not known until indexed */
+        private volatile int estimatedBaseline;
+
+        /**
+         * @param runLengthSignal   target signal in {@link CaptureFormat#RUN_LENGTH}, null if the target was recorded in signalStore
+         * @param detrendWindow     window of the adaptive baseline in frames, zero for none
+         * @param recordedEstimate  baseline estimated while recording, from the raw signal; replaced once a detrended signal is indexed
+         */
+        RecordedSession(@NonNull SignalStore signalStore, @Nullable RunLengthSignal runLengthSignal, @NonNull SignalStore[] channelStores,
+                        boolean useTimestamps, int detrendWindow, int recordedEstimate) {
+            this.signalStore = signalStore;
+            this.runLengthSignal = runLengthSignal;
+            this.channelStores = channelStores;
+            this.useTimestamps = useTimestamps;
+            this.detrendWindow = detrendWindow;
+            this.frames = runLengthSignal != null ? runLengthSignal.getFrameCount() > 0 : signalStore.size() > 0;
+            this.channelIndexes = new BaselineIndex[channelStores.length];
+            this.estimatedBaseline = detrendWindow > 0 ? -1 : recordedEstimate;
+        }
+
+        boolean hasFrames() {
+            return frames;
+        }
+
+        int getChannelCount() {
+            return channelStores.length;
+        }
+
+        synchronized boolean isIndexed() {
+            return index != null;
+        }
+
+        /**
+         * @return estimated baseline if already known, without indexing; -1 otherwise
+         */
+        int peekEstimatedBaseline() {
+            return estimatedBaseline;
+        }
+
+        /**
+         * Indexes the target if not yet, blocking.
+         *
+         * @return estimated baseline of the target; -1 means none
+         */
+        int getEstimatedBaseline() {
+            getIndex();
+            return estimatedBaseline;
+        }
+
+        /**
+         * Indexes the target on the first call, blocking; later calls wait for it.
+         */
+        @NonNull
+        synchronized BaselineIndex getIndex() {
+            if (index == null) {
+                if (runLengthSignal != null) {
+                    // Latest frames of the session become raw segments of the copy
+                    index = BaselineIndex.of(runLengthSignal.copy(), useTimestamps);
+                } else if (detrendWindow > 0) {
+                    final SignalStore detrended = AdaptiveBaseline.detrend(signalStore, detrendWindow);
+                    index = BaselineIndex.of(detrended, useTimestamps);
+                    // Histogram of the recording thread was of the raw signal
+                    BaselineEstimator estimator = new BaselineEstimator();
+                    for (int i = 0; i < detrended.size(); i++) {
+                        estimator.add(detrended.get(i));
+                    }
+                    estimatedBaseline = estimator.getThreshold();
+                } else {
+                    index = BaselineIndex.of(signalStore, useTimestamps);
+                }
+                signalStore.clear();
+                Log.d(TAG, "session indexed. levels=" + index.getLevelCount() + " distinct=" + index.getDistinctValueCount());
+            }
+            return index;
+        }
+
+        /**
+         * Indexes the channel on the first call, blocking; later calls wait for it.
+         *
+         * @param channel 0-based channel
+         */
+        @NonNull
+        BaselineIndex getChannelIndex(int channel) {
+            final SignalStore store = channelStores[channel];
+            synchronized (store) {
+                if (channelIndexes[channel] == null) {
+                    channelIndexes[channel] = BaselineIndex.of(detrendWindow > 0 ? AdaptiveBaseline.detrend(store, detrendWindow) : store, useTimestamps);
+                    store.clear();
+                }
+                return channelIndexes[channel];
+            }
+        }
+    }
+
+    /**
+     * @return queue depth, queue wait and run time of the target translations
+     */
+    @NonNull
+    public TaskExecutor.Stats getTranslationStats() {
+        return MorseBuddy.getExecutor().getStats(translationTaskKey);
+    }
+
     /**
      * Cancels all pending translations.
      * Also, result of any pending translation will not be published.
@@ -276,7 +1049,8 @@ public class SignalRecorder implements ImageProcessor {
     }
 
     private void cancelAllTranslations(boolean notify) {
-        // Just update the last submitCode, so last posted task's result will not publish.
+        // Stop the running translations at their next stage, and update the last submitCode, so their results will not publish.
+        translationToken.cancel();
         this.lastSubmitCode = ThreadLocalRandom.current().nextInt();
         if (notify && callback != null) {
             callback.onTranslationCancel();
@@ -291,69 +1065,167 @@ public class SignalRecorder implements ImageProcessor {
         }
         imageProcessing = true;
         scheduledFuture = scheduledExecutor.scheduleAtFixedRate(() -> {
-                    // Calculation of contrast
-                    final byte[] samplePixels = sample.getSamplePixels();
-                    final byte[] targetPixels = sample.getTargetPixels();
-                    int total = 0;
-                    for (int i = 0, samplePixelsLength = samplePixels.length; i < samplePixelsLength; i++) {
-                        byte samplePixel = samplePixels[i];
-                        total += samplePixel & 0xff; // Range 0 to 255, not -128 to 127
-                    }
-                    int sampleMean = total / samplePixels.length;
-                    total = 0;
-                    for (int i = 0, targetPixelsLength = targetPixels.length; i < targetPixelsLength; i++) {
-                        byte targetPixel = targetPixels[i];
-                        total += targetPixel & 0xff; // Range 0 to 255, not -128 to 127
-                    }
-                    int targetMean = total / targetPixels.length;
-
-                    final int contrast = Math.max(targetMean - sampleMean, 0);
+                    final boolean newFrame = sampleExchange.fetch();
 
                     if (recording) {
-                        // Recording
-                        if (recordedFrameCount >= totalFrameCount) {
-                            recordedFrameCount = 0;
-                            // Recording ended
-                            stopRecording();
-                            return;
-                        }
-                        // Save
-                        frameArray[recordedFrameCount] = contrast;
-
-                        // Render
-                        if (renderer != null) {
-                            if (renderGapCounter.count() >= SignalRecorder.RENDER_GAP) {
-                                renderer.render(Arrays.copyOf(frameArray, frameArray.length));
-                                renderGapCounter.reset();
+                        synchronized (recordLock) {
+                            // Checked again under the lock, the session might have ended meanwhile
+                            if (recording && sessionRecordingMode == RecordingMode.FIXED_RATE) {
+                                if (!newFrame) {
+                                    // Same image-frame sampled again
+                                    duplicatedFrameCount++;
+                                }
+                                // Calculation of contrast on the latest image-frame; only needed while recording
+                                recordFrame(sampleExchange.getFrontBuffer(), 0L);
                             }
                         }
-                        recordedFrameCount++;
                     }
 
                     //Log.d(TAG, "frame running, key=" + (contrastDetected ? '*' : '|') + " value=" + contrast);
                 }, 0L
-                // Delay between two consecutive image-frame = 1 / sampleRate * 1000 milliseconds
-                , (1000 / frameRate)
-                , TimeUnit.MILLISECONDS);
+                // Delay between two consecutive image-frame = 1 / sampleRate * 1000000 microseconds; milliseconds are too coarse above 60 fps
+                , (1_000_000L / getSessionFrameRate(RecordingMode.FIXED_RATE))
+                , TimeUnit.MICROSECONDS);
 
         Log.d(TAG, "processing started.");
     }
 
+    /**
+     * Appends a frame to the current recorder session; contrast of the target and of each channel.
+     * Called with {@link SignalRecorder#recordLock} held, while recording.
+     *
+     * @param sample    the image-frame
+     * @param timestamp camera timestamp of the frame; ignored in {@link RecordingMode#FIXED_RATE}
+     */
+    private void recordFrame(ImageSample sample, long timestamp) {
+        // Save
+        final int contrast = contrastEngine.calculate(sample);
+        if (sessionCaptureFormat == CaptureFormat.RUN_LENGTH) {
+            runLengthSignal.append(contrast, timestamp);
+        } else {
+            signalStore.append(contrast, timestamp);
+        }
+        // Histogram is updated in constant time, the threshold search is bounded by the number of bins
+        baselineEstimator.add(contrast);
+        final int estimate = baselineEstimator.getThreshold();
+        if (estimate != estimatedBaseline) {
+            estimatedBaseline = estimate;
+            if (autoBaseline && estimate >= 0) {
+                // Partial text follows the estimate, as the final translation will
+                streamingTranslator.setBaseline(estimate);
+                if (callback != null) {
+                    callback.onBaselineChange(estimate);
+                }
+            }
+        }
+        // Translate on the fly; time is the frame number unless frames carry camera timestamps
+        final long time = sessionRecordingMode == RecordingMode.CAMERA_FRAME ? timestamp : recordedFrameCount;
+        if (streamingTranslator.push(contrast, time) && callback != null) {
+            callback.onPartialTranslation(streamingTranslator.getResult(lastSubmitCode));
+        }
+        final ChannelLayout channels = sessionChannelLayout;
+        if (channels.count > 0) {
+            // Target size might have changed since the channels were placed
+            final int size = contrastEngine.getTargetSize();
+            final int maxStart = Constants.SAMPLE_SIZE_IN_PIXEL - size;
+            for (int i = 0; i < channels.count; i++) {
+                channelTops[i] = Math.min(channels.tops[i], maxStart);
+                channelLefts[i] = Math.min(channels.lefts[i], maxStart);
+            }
+            // All channels share one integral image of the sample, so each channel costs the same regardless of count
+            contrastEngine.calculate(sample, channelTops, channelLefts, size, channels.count, channelContrasts);
+            for (int i = 0; i < channels.count; i++) {
+                channelStores[i].append(channelContrasts[i], timestamp);
+            }
+        }
+
+        // Render
+        if (renderer != null) {
+            if (renderGapCounter.count() >= SignalRecorder.RENDER_GAP) {
+                // Only the latest window is copied, however long the session is
+                int[] window = new int[renderWindowLength];
+                if (sessionCaptureFormat == CaptureFormat.RUN_LENGTH) {
+                    runLengthSignal.copyLatest(window);
+                } else {
+                    signalStore.copyLatest(window);
+                }
+                renderer.render(window);
+                renderGapCounter.reset();
+            }
+        }
+        recordedFrameCount++;
+    }
+
+    private void trackTarget(ImageSample sample) {
+        if (trackerResetPending) {
+            trackerResetPending = false;
+            targetTracker.reset(contrastEngine.getTargetTop(), contrastEngine.getTargetLeft());
+        }
+        final int size = contrastEngine.getTargetSize();
+        // Statistics are also kept for channel detection, but the target only moves if tracking
+        if (targetTracker.update(sample, size) && targetTracking) {
+            contrastEngine.setTargetCenter(targetTracker.getTop() + size / 2, targetTracker.getLeft() + size / 2);
+            notifyTargetMove();
+        }
+        final int detection = channelDetectionRequest;
+        if (detection > 0 && targetTracker.isWarmedUp()) {
+            channelDetectionRequest = 0;
+            // Target is the first source, so channels never overlap it
+            detectionTops[0] = contrastEngine.getTargetTop();
+            detectionLefts[0] = contrastEngine.getTargetLeft();
+            final int count = targetTracker.findSources(size, 1, detection + 1, detectionTops, detectionLefts);
+            channelLayout = new ChannelLayout(Arrays.copyOfRange(detectionTops, 1, count), Arrays.copyOfRange(detectionLefts, 1, count));
+            Log.d(TAG, "channels detected, count=" + (count - 1));
+        }
+    }
+
+    private void notifyTargetMove() {
+        if (callback != null) {
+            callback.onTargetMove(contrastEngine.getTargetTop(), contrastEngine.getTargetLeft(), contrastEngine.getTargetSize());
+        }
+    }
+
     @Override
     public void processImage(ImageProxy image) {
-        checkForDestroyedState();
-        // Only process image if imageProcessing is true
-        if (imageProcessing) {
-            // ImageFormat.YUV_420_888
-            // Obtaining the Y-plane raw bytes
-            ImageProxy.PlaneProxy y = image.getPlanes()[0];
-            ByteBuffer buffer = y.getBuffer();
-            byte[] yBytes = new byte[buffer.remaining()];
-            buffer.get(yBytes);
-            synchronized (this) {
-                // Update image-frame sample at this instant
-                sample = new ImageSample(y.getRowStride(), y.getPixelStride(), image.getHeight(), image.getWidth(), yBytes);
+        try {
+            checkForDestroyedState();
+            // Only process image if imageProcessing is true
+            if (imageProcessing) {
+                // ImageFormat.YUV_420_888
+                // Sampling straight from the Y-plane, the plane itself is never copied
+                ImageProxy.PlaneProxy y = image.getPlanes()[0];
+                // Offsets only change with the negotiated resolution, so the table is rebuilt only then
+                if (planeOffsets == null || !planeOffsets.matches(y.getRowStride(), y.getPixelStride(), image.getHeight(), image.getWidth())) {
+                    planeOffsets = new PlaneOffsets(y.getRowStride(), y.getPixelStride(), image.getHeight(), image.getWidth());
+                    Log.d(TAG, "plane offsets built, rowStride=" + y.getRowStride() + " size=" + image.getWidth() + "x" + image.getHeight());
+                }
+                // Update image-frame sample at this instant; filled in place and handed over without locking
+                ImageSample sample = sampleExchange.getBackBuffer();
+                sample.fill(planeOffsets, y.getBuffer());
+                streamTiming.onFrame(image.getImageInfo().getTimestamp());
+                if (targetTracking || channelDetectionRequest > 0) {
+                    trackTarget(sample);
+                }
+                if (recording) {
+                    synchronized (recordLock) {
+                        // Checked again under the lock, the session might have ended meanwhile
+                        if (recording && sessionRecordingMode == RecordingMode.CAMERA_FRAME) {
+                            // Each delivered image-frame is recorded right away, tagged with its camera timestamp
+                            long timestamp = image.getImageInfo().getTimestamp();
+                            int missing = frameTiming.onFrame(timestamp);
+                            if (missing == FrameTiming.DUPLICATE) {
+                                duplicatedFrameCount++;
+                            } else {
+                                droppedFrameCount += missing;
+                                recordFrame(sample, timestamp);
+                            }
+                        }
+                    }
+                }
+                sampleExchange.publish();
             }
+        } finally {
+            // Closing is required to receive the next image-frame, also if this one failed
             image.close();
         }
     }
@@ -384,6 +1256,7 @@ public class SignalRecorder implements ImageProcessor {
         }
         stopProcessing();
         scheduledExecutor.shutdownNow();
+        channelExecutor.shutdownNow();
 
         // Cancel any pending or running tasks
         cancelAllTranslations(true);
@@ -405,6 +1278,35 @@ public class SignalRecorder implements ImageProcessor {
         return recording;
     }
 
+    /**
+     * Number of image-frames that were replaced by a newer one before being sampled; i.e. frames never seen by the recorder.
+     *
+     * @return total count since this instance was created
+     */
+    public long getOverwrittenFrameCount() {
+        return sampleExchange.getOverwrittenFrameCount();
+    }
+
+    /**
+     * Number of samples of the last recorder session that repeated the previous image-frame.
+     * In {@link RecordingMode#FIXED_RATE} these are ticks without a new frame, in {@link RecordingMode#CAMERA_FRAME} these are frames with a repeated timestamp (not recorded).
+     *
+     * @return count for the last (or running) session
+     */
+    public int getDuplicatedFrameCount() {
+        return duplicatedFrameCount;
+    }
+
+    /**
+     * Number of image-frames missed during the last recorder session.
+     * In {@link RecordingMode#FIXED_RATE} these are frames overwritten before sampled, in {@link RecordingMode#CAMERA_FRAME} these are gaps in camera timestamps.
+     *
+     * @return count for the last (or running) session
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
     public interface GraphRenderer {
         void render(@NonNull int[] valueArray);
 
@@ -416,6 +1318,14 @@ public class SignalRecorder implements ImageProcessor {
 
         void onBaselineChange(int newBaseline);
 
+        void onAutoBaselineChange(boolean autoBaseline);
+
+        /**
+         * Target region has moved or resized; coordinates are in sample-pixels of the {@link Constants#SAMPLE_SIZE_IN_PIXEL} wide sample.
+         * Might be invoked from the analysis thread.
+         */
+        void onTargetMove(int top, int left, int size);
+
         void onRecordStart();
 
         void onRecordStop();
@@ -425,5 +1335,17 @@ public class SignalRecorder implements ImageProcessor {
         void onTranslationCancel();
 
         void onTranslationComplete(@NonNull Translator.Result result);
+
+        /**
+         * Text translated so far while recording; published each time a letter or word is complete.
+         * Invoked from the recording thread.
+         */
+        void onPartialTranslation(@NonNull Translator.Result result);
+
+        /**
+         * Translation of an additional channel is complete; channel 0 (the target) is reported by {@link Callback#onTranslationComplete(Translator.Result)}.
+         * Invoked from a worker thread.
+         */
+        void onChannelTranslationComplete(int channel, @NonNull Translator.Result result);
     }
 }
@@ -0,0 +1,235 @@
+package raha.app.morsebuddy.camera;
+
+/**
+ * Locates a blinking light source in the stream of {@link ImageSample}s and keeps the target on it.
+ * <p>
+ * Keeps a running (exponentially weighted) luminance variance for each sample-pixel; a blinking source stands out as a high-variance area.
+ * Each frame, windows of the target size around the current target are compared (cheap local search), so the target follows a drifting source.
+ * Now and then the whole sample is searched, so the target can jump to a source that appears elsewhere.
+ * Window sums come from an integral image of the variance map, thus each window costs O(1).
+ * <p>
+ * All buffers are preallocated, so a frame update never allocates.
+ * Not thread-safe; meant to be used only from the thread that fills the samples.
+ */
+class TargetTracker {
+    private static final int SAMPLE_SIZE = ImageSample.SAMPLE_SIZE;
+    private static final int INTEGRAL_SIZE = SAMPLE_SIZE + 1;
+    /* Weight of the newest frame in the running statistics of each sample-pixel */
+    private static final float ALPHA = 0.05f;
+    /* Running statistics are not reliable before this many frames */
+    private static final int WARM_UP_FRAMES = 20;
+    /* Local search covers this many sample-pixels in each direction around the current target */
+    private static final int SEARCH_RADIUS = 3;
+    /* A neighboring window must be this much more active to move the target; keeps it still on a source smaller than the target */
+    private static final double MOVE_RATIO = 1.1;
+    /* Frames between two searches over the whole sample */
+    private static final int GLOBAL_SEARCH_INTERVAL = 15;
+    /* A window found by the global search must be this much more active to take over the target */
+    private static final double TAKEOVER_RATIO = 1.5;
+    /* Mean variance per sample-pixel below this is considered noise, not a blinking source; i.e. deviation of 8 levels */
+    private static final double MIN_VARIANCE = 64.0;
+
+    private final float[] mean;
+    private final float[] variance;
+    /* integral[r * INTEGRAL_SIZE + c] is the sum of variance above row r and left of column c */
+    private final double[] integral;
+
+    /* Top-left corner of the tracked target, in sample-pixels */
+    private int top;
+    private int left;
+    private int frameCount;
+
+    TargetTracker() {
+        mean = new float[SAMPLE_SIZE * SAMPLE_SIZE];
+        variance = new float[SAMPLE_SIZE * SAMPLE_SIZE];
+        integral = new double[INTEGRAL_SIZE * INTEGRAL_SIZE];
+    }
+
+    /**
+     * Forgets the statistics and restarts tracking from the given position.
+     *
+     * @param top  top row of the target
+     * @param left left column of the target
+     */
+    void reset(int top, int left) {
+        this.top = top;
+        this.left = left;
+        this.frameCount = 0;
+    }
+
+    int getTop() {
+        return top;
+    }
+
+    int getLeft() {
+        return left;
+    }
+
+    /**
+     * @return true if enough frames were seen for the statistics to be reliable
+     */
+    boolean isWarmedUp() {
+        return frameCount >= WARM_UP_FRAMES;
+    }
+
+    /**
+     * Updates the statistics with a new frame, and moves the target if a more active window is found.
+     *
+     * @param sample the new frame
+     * @param size   side of the target
+     * @return true if the target moved
+     */
+    boolean update(ImageSample sample, int size) {
+        final byte[] pixels = sample.getSamplePixels();
+        final boolean first = frameCount == 0;
+        // Running statistics and integral of the variance, in one pass
+        for (int row = 0; row < SAMPLE_SIZE; row++) {
+            final int src = row * SAMPLE_SIZE;
+            final int above = row * INTEGRAL_SIZE + 1;
+            final int dst = above + INTEGRAL_SIZE;
+            double rowSum = 0.0;
+            for (int col = 0; col < SAMPLE_SIZE; col++) {
+                final int i = src + col;
+                final float value = pixels[i] & 0xff;
+                if (first) {
+                    mean[i] = value;
+                    variance[i] = 0f;
+                } else {
+                    final float delta = value - mean[i];
+                    mean[i] += ALPHA * delta;
+                    variance[i] = (1f - ALPHA) * (variance[i] + ALPHA * delta * delta);
+                }
+                rowSum += variance[i];
+                integral[dst + col] = integral[above + col] + rowSum;
+            }
+        }
+        frameCount++;
+        if (frameCount < WARM_UP_FRAMES) {
+            return false;
+        }
+
+        // Target size may have changed in the meantime
+        final int maxStart = SAMPLE_SIZE - size;
+        final int currentTop = Math.min(top, maxStart);
+        final int currentLeft = Math.min(left, maxStart);
+
+        // Local search around the current target
+        int bestTop = currentTop;
+        int bestLeft = currentLeft;
+        final double current = windowSum(currentTop, currentLeft, size);
+        double best = current;
+        final int fromTop = Math.max(currentTop - SEARCH_RADIUS, 0);
+        final int toTop = Math.min(currentTop + SEARCH_RADIUS, maxStart);
+        final int fromLeft = Math.max(currentLeft - SEARCH_RADIUS, 0);
+        final int toLeft = Math.min(currentLeft + SEARCH_RADIUS, maxStart);
+        for (int t = fromTop; t <= toTop; t++) {
+            for (int l = fromLeft; l <= toLeft; l++) {
+                final double activity = windowSum(t, l, size);
+                if (activity > best) {
+                    best = activity;
+                    bestTop = t;
+                    bestLeft = l;
+                }
+            }
+        }
+        if (best <= current * MOVE_RATIO) {
+            best = current;
+            bestTop = currentTop;
+            bestLeft = currentLeft;
+        }
+
+        // Global search, now and then
+        if (frameCount % GLOBAL_SEARCH_INTERVAL == 0) {
+            int globalTop = bestTop;
+            int globalLeft = bestLeft;
+            double globalBest = best;
+            for (int t = 0; t <= maxStart; t++) {
+                for (int l = 0; l <= maxStart; l++) {
+                    final double activity = windowSum(t, l, size);
+                    if (activity > globalBest) {
+                        globalBest = activity;
+                        globalTop = t;
+                        globalLeft = l;
+                    }
+                }
+            }
+            if (globalBest > best * TAKEOVER_RATIO) {
+                best = globalBest;
+                bestTop = globalTop;
+                bestLeft = globalLeft;
+            }
+        }
+
+        // Only follow a real blinking source, otherwise stay where the user aimed
+        if (best < MIN_VARIANCE * size * size) {
+            bestTop = currentTop;
+            bestLeft = currentLeft;
+        }
+        final boolean moved = bestTop != top || bestLeft != left;
+        top = bestTop;
+        left = bestLeft;
+        return moved;
+    }
+
+    /**
+     * Finds the most active, non-overlapping windows of the given size; i.e. the blinking sources currently in view, strongest first.
+     * Windows already in the arrays are kept, and new windows never overlap them.
+     * Nothing is found before the statistics are warmed up.
+     *
+     * @param size     side of the windows
+     * @param taken    number of windows already in the arrays
+     * @param maxCount maximum number of windows in the arrays
+     * @param tops     top row of each window
+     * @param lefts    left column of each window
+     * @return number of windows in the arrays
+     */
+    int findSources(int size, int taken, int maxCount, int[] tops, int[] lefts) {
+        if (!isWarmedUp()) {
+            return taken;
+        }
+        final int maxStart = SAMPLE_SIZE - size;
+        int found = taken;
+        while (found < maxCount) {
+            int bestTop = -1;
+            int bestLeft = -1;
+            double best = MIN_VARIANCE * size * size;
+            for (int t = 0; t <= maxStart; t++) {
+                for (int l = 0; l <= maxStart; l++) {
+                    if (overlaps(t, l, size, found, tops, lefts)) {
+                        continue;
+                    }
+                    final double activity = windowSum(t, l, size);
+                    if (activity > best) {
+                        best = activity;
+                        bestTop = t;
+                        bestLeft = l;
+                    }
+                }
+            }
+            if (bestTop < 0) {
+                // Only noise left
+                break;
+            }
+            tops[found] = bestTop;
+            lefts[found] = bestLeft;
+            found++;
+        }
+        return found;
+    }
+
+    private static boolean overlaps(int top, int left, int size, int count, int[] tops, int[] lefts) {
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(top - tops[i]) < size && Math.abs(left - lefts[i]) < size) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double windowSum(int top, int left, int size) {
+        final int bottom = top + size;
+        final int right = left + size;
+        return integral[bottom * INTEGRAL_SIZE + right] - integral[top * INTEGRAL_SIZE + right]
+                - integral[bottom * INTEGRAL_SIZE + left] + integral[top * INTEGRAL_SIZE + left];
+    }
+}
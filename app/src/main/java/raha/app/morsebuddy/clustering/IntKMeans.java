@@ -0,0 +1,206 @@
+package raha.app.morsebuddy.clustering;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * One-dimensional k-means over plain int arrays; same assignments, centroids and centers as {@link KMeans#fit(KMeans.Centroid[], KMeans.Element[], int)}.
+ * <p>
+ * Elements are sorted once, with prefix sums of their values. Then in each iteration, the elements of a centroid form a contiguous range
+ * of the sorted elements, found by binary search; and its mean comes from the prefix sums. Thus an iteration costs O(k^2 log n) instead of O(k n).
+ * Iterations stop as soon as the assignments stop changing, since further iterations would reproduce the same centroids.
+ * Nothing is allocated per iteration.
+ * <p>
+ * As in {@link KMeans}, an element only joins a centroid of the same sign, the first of equally near centroids is taken,
+ * and an element nearer to the placeholder {@link Integer#MAX_VALUE} than to any centroid (e.g. -1, whose distance overflows) joins none.
+ */
+public class IntKMeans {
+    private static final String TAG = "IntKMeans";
+    /* Below this magnitude, the placeholder is farther than any centroid for all elements except -1 and unmatched signs; ranges are then exact */
+    private static final int RANGE_LIMIT = 1 << 29;
+    /* Center of the elements which join no centroid */
+    public static final int NO_CENTER = Integer.MAX_VALUE;
+
+    private IntKMeans() {
+    }
+
+    /**
+     * Clusters the values.
+     *
+     * @param centroids    initial centroids; updated in place to the final ones
+     * @param values       elements; not modified
+     * @param maxIteration maximum number of iterations
+     * @param centers      receives, for each element, the centroid it joined in the last iteration; {@link IntKMeans#NO_CENTER} if none
+     * @return number of iterations run
+     */
+    public static int fit(@NonNull int[] centroids, @NonNull int[] values, int maxIteration, @NonNull int[] centers) {
+        final int k = centroids.length;
+        final int n = values.length;
+        final int[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        final long[] prefix = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + sorted[i];
+        }
+        boolean ranged = n == 0 || (sorted[0] > -RANGE_LIMIT && sorted[n - 1] < RANGE_LIMIT);
+        for (int centroid : centroids) {
+            ranged &= centroid > -RANGE_LIMIT && centroid < RANGE_LIMIT;
+        }
+
+        // Centroids the elements were assigned to, in the latest iteration
+        final int[] assigned = new int[k];
+        // Ranges of sorted elements for each centroid, or a centroid for each sorted element
+        final int[] starts = new int[k];
+        final int[] ends = new int[k];
+        final int[] previousStarts = new int[k];
+        final int[] previousEnds = new int[k];
+        final int[] labels = ranged ? null : new int[n];
+        final int[] order = new int[k];
+        final int[] positions = new int[k];
+        final long[] sums = new long[k];
+
+        int iteration = 0;
+        while (iteration++ < maxIteration) {
+            System.arraycopy(centroids, 0, assigned, 0, k);
+            boolean changed;
+            if (ranged) {
+                assignRanges(sorted, assigned, order, positions, starts, ends);
+                changed = iteration == 1 || !Arrays.equals(starts, previousStarts) || !Arrays.equals(ends, previousEnds);
+                System.arraycopy(starts, 0, previousStarts, 0, k);
+                System.arraycopy(ends, 0, previousEnds, 0, k);
+                for (int c = 0; c < k; c++) {
+                    final int count = ends[c] - starts[c];
+                    if (count > 0) {
+                        // Mean in long; a long session in microseconds sums past an int
+                        centroids[c] = (int) ((prefix[ends[c]] - prefix[starts[c]]) / count);
+                    }
+                }
+            } else {
+                Arrays.fill(sums, 0L);
+                Arrays.fill(starts, 0);
+                changed = iteration == 1;
+                for (int i = 0; i < n; i++) {
+                    final int label = nearest(sorted[i], assigned);
+                    changed |= label != labels[i];
+                    labels[i] = label;
+                    if (label >= 0) {
+                        sums[label] += sorted[i];
+                        // Counts of the elements
+                        starts[label]++;
+                    }
+                }
+                for (int c = 0; c < k; c++) {
+                    if (starts[c] > 0) {
+                        centroids[c] = (int) (sums[c] / starts[c]);
+                    }
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        Log.d(TAG, "converged after " + Math.min(iteration, maxIteration) + " iterations, centroids=" + Arrays.toString(centroids));
+
+        for (int i = 0; i < n; i++) {
+            final int label = nearest(values[i], assigned);
+            centers[i] = label < 0 ? NO_CENTER : assigned[label];
+        }
+        return Math.min(iteration, maxIteration);
+    }
+
+    /**
+     * Nearest centroid of the same sign, exactly as compared by {@link KMeans}; first of equally near ones.
+     *
+     * @return index of the centroid, or -1 if the placeholder is nearer
+     */
+    static int nearest(int value, int[] centroids) {
+        int nearest = -1;
+        int nearestValue = Integer.MAX_VALUE;
+        final int sign = Integer.signum(value);
+        for (int c = 0; c < centroids.length; c++) {
+            if (Integer.signum(centroids[c]) == sign && Math.abs(value - centroids[c]) < Math.abs(value - nearestValue)) {
+                nearest = c;
+                nearestValue = centroids[c];
+            }
+        }
+        return nearest;
+    }
+
+    /*
+     * Within a block of elements of the same sign, the nearest centroid only moves to higher centroids as the element grows.
+     * So the range of each centroid ends at the first element whose nearest centroid is higher; found by binary search.
+     */
+    private static void assignRanges(int[] sorted, int[] centroids, int[] order, int[] positions, int[] starts, int[] ends) {
+        final int k = centroids.length;
+        // Centroids by value, then by index; the same order as equally near ones are taken
+        for (int i = 0; i < k; i++) {
+            int j = i;
+            while (j > 0 && centroids[order[j - 1]] > centroids[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        for (int p = 0; p < k; p++) {
+            positions[order[p]] = p;
+        }
+        Arrays.fill(starts, 0);
+        Arrays.fill(ends, 0);
+
+        // Blocks of sorted elements: below -1, -1 (joins none), 0, and positive
+        final int minusOne = lowerBound(sorted, -1);
+        final int zero = lowerBound(sorted, 0);
+        final int positive = lowerBound(sorted, 1);
+        assignBlock(sorted, 0, minusOne, centroids, order, positions, starts, ends);
+        assignBlock(sorted, zero, positive, centroids, order, positions, starts, ends);
+        assignBlock(sorted, positive, sorted.length, centroids, order, positions, starts, ends);
+    }
+
+    private static void assignBlock(int[] sorted, int low, int high, int[] centroids, int[] order, int[] positions, int[] starts, int[] ends) {
+        if (low == high || nearest(sorted[low], centroids) < 0) {
+            // No centroid of this sign
+            return;
+        }
+        int start = low;
+        for (int p = 0; p < order.length && start < high; p++) {
+            final int c = order[p];
+            if (Integer.signum(centroids[c]) != Integer.signum(sorted[low])) {
+                continue;
+            }
+            // First element whose nearest centroid comes after this one
+            int left = start;
+            int right = high;
+            while (left < right) {
+                final int middle = (left + right) >>> 1;
+                if (positions[nearest(sorted[middle], centroids)] > p) {
+                    right = middle;
+                } else {
+                    left = middle + 1;
+                }
+            }
+            if (left > start) {
+                starts[c] = start;
+                ends[c] = left;
+            }
+            start = left;
+        }
+    }
+
+    /* First index whose value is not less than the key */
+    private static int lowerBound(int[] sorted, int key) {
+        int left = 0;
+        int right = sorted.length;
+        while (left < right) {
+            final int middle = (left + right) >>> 1;
+            if (sorted[middle] < key) {
+                left = middle + 1;
+            } else {
+                right = middle;
+            }
+        }
+        return left;
+    }
+}
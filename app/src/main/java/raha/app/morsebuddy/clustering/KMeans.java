@@ -1,7 +1,6 @@
 package raha.app.morsebuddy.clustering;
 
 import android.util.Log;
-import android.util.Pair;
 
 import androidx.annotation.NonNull;
 
@@ -13,7 +12,7 @@ public class KMeans {
     private static final String TAG = "KMeans";
 
     @NonNull
-    public static Pair<Centroid[], Element[]> fit(@NonNull Centroid[] centroids, @NonNull Element[] elements, int maxIteration) {
+    public static Clusters fit(@NonNull Centroid[] centroids, @NonNull Element[] elements, int maxIteration) {
         final List<Centroid> centroidList = new ArrayList<>(Arrays.asList(centroids));
         final List<Element> elementList = new ArrayList<>(Arrays.asList(elements));
 
@@ -49,7 +48,7 @@ public class KMeans {
             Log.d(TAG, KMeans.printCentroids(centroids));
         }
 
-        return new Pair<>(centroids, elements);
+        return new Clusters(centroids, elements);
     }
 
     private static String printCentroids(Centroid[] centroids) {
@@ -60,6 +59,27 @@ public class KMeans {
         return builder.toString();
     }
 
+    /**
+     * Centroids and elements after fitting; the same arrays as given, updated in place.
+     */
+    public static class Clusters {
+        private final Centroid[] centroids;
+        private final Element[] elements;
+
+        Clusters(Centroid[] centroids, Element[] elements) {
+            this.centroids = centroids;
+            this.elements = elements;
+        }
+
+        public Centroid[] getCentroids() {
+            return centroids;
+        }
+
+        public Element[] getElements() {
+            return elements;
+        }
+    }
+
     public static class Element {
         private final int value;
         private int center;
@@ -96,12 +116,13 @@ public class KMeans {
             if (elementList.size() == 0) {
                 return value;
             }
-            int sum = 0;
+            // Summed in long; a long session in microseconds sums past an int
+            long sum = 0L;
             for (Element element :
                     elementList) {
                 sum += element.value;
             }
-            return sum / elementList.size();
+            return (int) (sum / elementList.size());
         }
 
         public int getValue() {
@@ -0,0 +1,59 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Locally adaptive baseline; follows changes of ambient light during a session (e.g. clouds, someone walking past).
+ * <p>
+ * Each frame is measured from the lowest value around it, the floor of a sliding window centered on the frame.
+ * Thus the fixed baseline is applied to the detrended signal; it works as if each frame had its own baseline, raised by the local floor.
+ * Window must be longer than the longest signal element (a dash), otherwise the floor of a window inside a dash is the dash itself.
+ * <p>
+ * The floor is kept by a monotonic deque of frame indices, whose values increase from front to back;
+ * each frame is pushed and popped at most once, so a session of n frames costs O(n) regardless of the window.
+ */
+public class AdaptiveBaseline {
+    private AdaptiveBaseline() {
+    }
+
+    /**
+     * Subtracts the local floor from each frame.
+     *
+     * @param signal the recorded signal
+     * @param window frames in the sliding window, centered on each frame; clipped at both ends of the signal
+     * @return a new store of the detrended values, with the same timestamps
+     */
+    @NonNull
+    public static SignalStore detrend(@NonNull SignalStore signal, int window) {
+        final int size = signal.size();
+        final int half = Math.max(window, 1) / 2;
+        SignalStore detrended = new SignalStore(new SignalStore.ChunkPool(SignalStore.DEFAULT_CHUNK_SIZE, 0), 0);
+        // A window never holds more than 2 * half + 1 frames
+        final int capacity = 2 * half + 2;
+        final int[] deque = new int[capacity];
+        int front = 0;
+        int count = 0;
+        for (int next = 0; next < size + half; next++) {
+            if (next < size) {
+                // Frames that are not lower than the new one can never be the floor again
+                final int value = signal.get(next);
+                while (count > 0 && signal.get(deque[(front + count - 1) % capacity]) >= value) {
+                    count--;
+                }
+                deque[(front + count) % capacity] = next;
+                count++;
+            }
+            final int frame = next - half;
+            if (frame < 0) {
+                continue;
+            }
+            // Frames left of the window are dropped from the front
+            while (deque[front] < frame - half) {
+                front = (front + 1) % capacity;
+                count--;
+            }
+            detrended.append(signal.get(frame) - signal.get(deque[front]), signal.getTimestamp(frame));
+        }
+        return detrended;
+    }
+}
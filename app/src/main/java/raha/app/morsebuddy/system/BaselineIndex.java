@@ -0,0 +1,313 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Index of a recorded session, built once, to get the runs of the signal for any baseline without walking the frames again.
+ * <p>
+ * Consecutive frames of the same value are merged into levels; a baseline only splits the signal between two levels.
+ * The sorted distinct values tell which baselines produce the same runs, so the runs are built once for each such range and kept.
+ * Prefix and suffix maxima of the values locate the first and the last signal frame of any baseline by binary search.
+ * <p>
+ * Runs are exactly the same as {@link Translator#toRuns(SignalStore, boolean, int)} and {@link Translator#toRuns(RunLengthSignal, boolean, int)}
+ * give for the signal the index was built from. Runs of many levels are built in chunks on a pool, if given, see {@link ChunkedTranslation}.
+ * Thread-safe.
+ */
+public class BaselineIndex {
+    /* Merged levels; value, number of frames and timestamps of the first and the last frame (only if timestamps are used) */
+    private final int[] values;
+    private final int[] frames;
+    private final long[] firstTimestamps;
+    private final long[] lastTimestamps;
+    private final int levelCount;
+    /* prefixMax[i] is the highest value of levels 0..i, suffixMax[i] of levels i..end */
+    private final int[] prefixMax;
+    private final int[] suffixMax;
+    /* Sorted distinct values */
+    private final int[] distinctValues;
+    /* Runs for baselines from distinctValues[i - 1] (inclusive) to distinctValues[i] (exclusive); built on demand */
+    private final int[][] runsByRange;
+    private final boolean[] rangeBuilt;
+
+    private BaselineIndex(int[] values, int[] frames, long[] firstTimestamps, long[] lastTimestamps, int levelCount) {
+        this.values = values;
+        this.frames = frames;
+        this.firstTimestamps = firstTimestamps;
+        this.lastTimestamps = lastTimestamps;
+        this.levelCount = levelCount;
+
+        this.prefixMax = new int[levelCount];
+        this.suffixMax = new int[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            prefixMax[i] = i == 0 ? values[i] : Math.max(prefixMax[i - 1], values[i]);
+        }
+        for (int i = levelCount - 1; i >= 0; i--) {
+            suffixMax[i] = i == levelCount - 1 ? values[i] : Math.max(suffixMax[i + 1], values[i]);
+        }
+
+        int[] sorted = Arrays.copyOf(values, levelCount);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < levelCount; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        this.distinctValues = Arrays.copyOf(sorted, distinct);
+        this.runsByRange = new int[distinct + 1][];
+        this.rangeBuilt = new boolean[distinct + 1];
+    }
+
+    /**
+     * Builds the index of a raw signal.
+     *
+     * @param signal        the recorded signal
+     * @param useTimestamps true if timestamps of the signal are camera timestamps (nanoseconds), false to count frames
+     */
+    @NonNull
+    public static BaselineIndex of(@NonNull SignalStore signal, boolean useTimestamps) {
+        final int size = signal.size();
+        Builder builder = new Builder(useTimestamps);
+        for (int i = 0; i < size; i++) {
+            builder.add(signal.get(i), 1, useTimestamps ? signal.getTimestamp(i) : 0L, useTimestamps ? signal.getTimestamp(i) : 0L);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds the index of a complete run-length signal, i.e. a {@link RunLengthSignal#copy()}.
+     * A run interior counts as a single level, the middle of its range; exactly how {@link Translator} takes it.
+     *
+     * @param signal        the recorded signal
+     * @param useTimestamps true if timestamps of the signal are camera timestamps (nanoseconds), false to count frames
+     */
+    @NonNull
+    public static BaselineIndex of(@NonNull RunLengthSignal signal, boolean useTimestamps) {
+        final int segments = signal.segmentCount();
+        Builder builder = new Builder(useTimestamps);
+        for (int i = 0; i < segments; i++) {
+            final int value = (int) (((long) signal.minValue(i) + signal.maxValue(i)) / 2);
+            builder.add(value, signal.count(i), signal.timestamp(i), signal.lastTimestamp(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return number of merged levels
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @return number of distinct values, one less than the number of distinct results
+     */
+    public int getDistinctValueCount() {
+        return distinctValues.length;
+    }
+
+    /**
+     * Provides the runs of signal (positive) and space (negative) for the given baseline; built once for each range of equivalent baselines.
+     * The returned array is shared, must not be modified.
+     *
+     * @param baseline the baseline
+     * @return the runs, or null if no frame is above the baseline
+     */
+    @Nullable
+    public int[] getRuns(int baseline) {
+        return getRuns(baseline, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link BaselineIndex#getRuns(int)}, abandoned once the token is cancelled; runs left unbuilt are built by a later call.
+     *
+     * @throws java.util.concurrent.CancellationException if cancelled
+     */
+    @Nullable
+    public int[] getRuns(int baseline, @NonNull CancellationToken token) {
+        return getRuns(baseline, token, null);
+    }
+
+    /**
+     * Same as {@link BaselineIndex#getRuns(int, CancellationToken)}; runs of many levels are built in chunks, in parallel on the pool.
+     *
+     * @param pool builds the chunks; null to build on the calling thread only
+     * @throws java.util.concurrent.CancellationException if cancelled
+     */
+    @Nullable
+    public synchronized int[] getRuns(int baseline, @NonNull CancellationToken token, @Nullable ForkJoinPool pool) {
+        final int range = getRange(baseline);
+        if (!rangeBuilt[range]) {
+            runsByRange[range] = buildRuns(baseline, token, pool);
+            rangeBuilt[range] = true;
+        }
+        return runsByRange[range];
+    }
+
+    /* Index of the first distinct value above the baseline; baselines of the same range split the signal identically */
+    private int getRange(int baseline) {
+        int low = 0;
+        int high = distinctValues.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (distinctValues[middle] <= baseline) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int[] buildRuns(final int baseline, final CancellationToken token, @Nullable ForkJoinPool pool) {
+        if (levelCount == 0 || prefixMax[levelCount - 1] <= baseline) {
+            return null;
+        }
+        // First level with prefix maximum above the baseline is the first signal level; likewise the last from the suffix maxima
+        int low = 0;
+        int high = levelCount - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (prefixMax[middle] > baseline) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        final int first = low;
+        low = first;
+        high = levelCount - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (suffixMax[middle] > baseline) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        final int last = low;
+        final int end = last + 1;
+        final int chunkCount = pool == null ? 1 : ChunkedTranslation.chunkCount(end - first, ChunkedTranslation.MIN_CHUNK_FRAMES, pool);
+        if (chunkCount < 2) {
+            return buildRuns(baseline, first, end, last, token);
+        }
+
+        // Chunk boundaries: first mark level after each even split point, as for the frames
+        final int[] boundaries = new int[chunkCount + 1];
+        int boundaryCount = 0;
+        boundaries[boundaryCount++] = first;
+        for (int c = 1; c < chunkCount; c++) {
+            int boundary = Math.max(first + (int) ((long) (end - first) * c / chunkCount), boundaries[boundaryCount - 1] + 1);
+            while (boundary < end && !(values[boundary] > baseline && values[boundary - 1] <= baseline)) {
+                token.poll(boundary);
+                boundary++;
+            }
+            if (boundary >= end) {
+                break;
+            }
+            boundaries[boundaryCount++] = boundary;
+        }
+        boundaries[boundaryCount] = end;
+        return ChunkedTranslation.concat(ChunkedTranslation.computeRanges(boundaries, boundaryCount, token, pool, new ChunkedTranslation.RangeTask<int[]>() {
+            @Override
+            public int[] compute(int from, int to) {
+                return buildRuns(baseline, from, to, last, token);
+            }
+        }));
+    }
+
+    /* Runs of levels from (a signal level) to to (exclusive); runs of consecutive such ranges concatenate to the runs of the whole */
+    private int[] buildRuns(int baseline, int from, int to, int last, CancellationToken token) {
+        final boolean useTimestamps = firstTimestamps != null;
+        int[] newArray = new int[Math.min(to - from, 64)];
+        int index = 0;
+        boolean lastWasZero = false;
+        long count = 0;
+        long frameSum = 0;
+        for (int i = from; i < to; i++) {
+            token.poll(i);
+            final boolean zero = values[i] <= baseline;
+            int levelFrames = frames[i];
+            long duration;
+            if (i < last) {
+                duration = useTimestamps ? firstTimestamps[i + 1] - firstTimestamps[i] : levelFrames;
+            } else {
+                // Last signal frame is left out
+                levelFrames--;
+                if (levelFrames == 0) {
+                    break;
+                }
+                duration = useTimestamps ? lastTimestamps[i] - firstTimestamps[i] : levelFrames;
+            }
+            frameSum += levelFrames;
+            if (zero == lastWasZero) {
+                count += zero ? -duration : duration;
+            } else {
+                newArray = Translator.ensureCapacity(newArray, index);
+                newArray[index++] = Translator.toRunLength(count, useTimestamps);
+                lastWasZero = zero;
+                count = zero ? -duration : duration;
+            }
+        }
+        // Last element
+        if (frameSum > 0) {
+            newArray = Translator.ensureCapacity(newArray, index);
+            newArray[index++] = Translator.toRunLength(count, useTimestamps);
+        }
+        return Arrays.copyOf(newArray, index);
+    }
+
+    /* Merges consecutive frames of the same value */
+    private static class Builder {
+        private final boolean useTimestamps;
+        private int[] values = new int[64];
+        private int[] frames = new int[64];
+        private long[] firstTimestamps;
+        private long[] lastTimestamps;
+        private int count = 0;
+
+        Builder(boolean useTimestamps) {
+            this.useTimestamps = useTimestamps;
+            if (useTimestamps) {
+                this.firstTimestamps = new long[64];
+                this.lastTimestamps = new long[64];
+            }
+        }
+
+        void add(int value, int frameCount, long firstTimestamp, long lastTimestamp) {
+            if (count > 0 && values[count - 1] == value) {
+                frames[count - 1] += frameCount;
+                if (useTimestamps) {
+                    lastTimestamps[count - 1] = lastTimestamp;
+                }
+                return;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                frames = Arrays.copyOf(frames, count * 2);
+                if (useTimestamps) {
+                    firstTimestamps = Arrays.copyOf(firstTimestamps, count * 2);
+                    lastTimestamps = Arrays.copyOf(lastTimestamps, count * 2);
+                }
+            }
+            values[count] = value;
+            frames[count] = frameCount;
+            if (useTimestamps) {
+                firstTimestamps[count] = firstTimestamp;
+                lastTimestamps[count] = lastTimestamp;
+            }
+            count++;
+        }
+
+        BaselineIndex build() {
+            return new BaselineIndex(Arrays.copyOf(values, count), Arrays.copyOf(frames, count),
+                    useTimestamps ? Arrays.copyOf(firstTimestamps, count) : null,
+                    useTimestamps ? Arrays.copyOf(lastTimestamps, count) : null,
+                    count);
+        }
+    }
+}
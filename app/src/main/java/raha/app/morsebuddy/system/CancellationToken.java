@@ -0,0 +1,60 @@
+package raha.app.morsebuddy.system;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation of a translation; the translator checks it between its stages, and gives up as soon as it is cancelled.
+ * Long loops within a stage (runs, normalization) check it every {@link CancellationToken#CHECK_INTERVAL} iterations too,
+ * see {@link CancellationToken#poll(int)}, and leave by {@link CancellationException}.
+ * Thread-safe; cancelled from any thread, checked from the translating one.
+ */
+public class CancellationToken {
+    /* Never cancelled; for translations nobody supersedes */
+    public static final CancellationToken NONE = new CancellationToken() {
+        @Override
+        public void cancel() {
+            // Shared, so it cannot be cancelled
+        }
+    };
+
+    /* Iterations of a loop between two checks; a power of two */
+    static final int CHECK_INTERVAL = 1 << 12;
+
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this.cancelled = false;
+    }
+
+    /**
+     * Cancels the translations holding this token; has no effect on a finished translation.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Checks the token on every {@link CancellationToken#CHECK_INTERVAL}-th iteration of a loop only, so that tight loops do not read it each time.
+     *
+     * @param iteration index of the iteration
+     * @throws CancellationException if cancelled
+     */
+    public void poll(int iteration) {
+        if ((iteration & (CHECK_INTERVAL - 1)) == 0) {
+            throwIfCancelled();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Stages of a translation split in chunks, run in parallel on a {@link ForkJoinPool}; results are identical to the sequential ones.
+ * <p>
+ * Runs: frames (or levels of a {@link BaselineIndex}) are split where a mark starts after a space; the runs of such chunks concatenate
+ * to the runs of the whole signal.
+ * Normalization: clusters and unit stay global, over the concatenated runs; only the passes over the runs are chunked,
+ * their statistics merged, see {@link ChunkedTranslation#computeChunks(int, int, CancellationToken, ForkJoinPool, RangeTask)}.
+ * Packing: chunks are whole longs of the packed array, which never share a long.
+ * Text: normalized symbols are split right after word spaces, which are unambiguous once labelled; the texts of such chunks
+ * concatenate to the text of the whole array.
+ * <p>
+ * Signals shorter than a few chunks are handled sequentially, where splitting costs more than it saves.
+ * Every chunk checks the {@link CancellationToken} as it starts; chunks not started yet are dropped once one fails.
+ */
+final class ChunkedTranslation {
+    /* Fewest frames in a chunk of runs */
+    static final int MIN_CHUNK_FRAMES = 1 << 15;
+    /* Fewest symbols (or runs) in a chunk of packing, text or normalization */
+    static final int MIN_CHUNK_SYMBOLS = 1 << 11;
+    /* Chunks for each worker, so that uneven chunks still keep all of them busy */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ChunkedTranslation() {
+    }
+
+    /**
+     * Same as {@link Translator#toRuns(SignalStore, boolean, int, CancellationToken)}, chunks in parallel; each chunk checks the token.
+     *
+     * @return the runs, or null if no frame is above the baseline
+     * @throws java.util.concurrent.CancellationException if cancelled
+     */
+    @Nullable
+    static int[] toRuns(@NonNull final SignalStore signal, final boolean useTimestamps, final int baseline,
+                        @NonNull final CancellationToken token, @NonNull ForkJoinPool pool) {
+        final int size = signal.size();
+        int startIndex = 0;
+        while (startIndex < size && signal.get(startIndex) <= baseline) {
+            token.poll(startIndex);
+            startIndex++;
+        }
+        if (startIndex == size) {
+            return null;
+        }
+        int endIndex = size - 1;
+        while (signal.get(endIndex) <= baseline) {
+            token.poll(endIndex);
+            endIndex--;
+        }
+        final int chunkCount = chunkCount(endIndex - startIndex, MIN_CHUNK_FRAMES, pool);
+        if (chunkCount < 2) {
+            return Translator.toRuns(signal, useTimestamps, baseline, startIndex, endIndex, token);
+        }
+
+        // Chunk boundaries: first mark frame after each even split point
+        final int[] boundaries = new int[chunkCount + 1];
+        int boundaryCount = 0;
+        boundaries[boundaryCount++] = startIndex;
+        for (int c = 1; c < chunkCount; c++) {
+            int boundary = Math.max(startIndex + (int) ((long) (endIndex - startIndex) * c / chunkCount), boundaries[boundaryCount - 1] + 1);
+            while (boundary < endIndex && !(signal.get(boundary) > baseline && signal.get(boundary - 1) <= baseline)) {
+                token.poll(boundary);
+                boundary++;
+            }
+            if (boundary >= endIndex) {
+                break;
+            }
+            boundaries[boundaryCount++] = boundary;
+        }
+        boundaries[boundaryCount] = endIndex;
+
+        return concat(computeRanges(boundaries, boundaryCount, token, pool, new RangeTask<int[]>() {
+            @Override
+            public int[] compute(int from, int to) {
+                return Translator.toRuns(signal, useTimestamps, baseline, from, to, token);
+            }
+        }));
+    }
+
+    /**
+     * Concatenates the runs of consecutive chunks.
+     */
+    @NonNull
+    static int[] concat(@NonNull List<int[]> parts) {
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        final int[] runs = new int[length];
+        int offset = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, runs, offset, part.length);
+            offset += part.length;
+        }
+        return runs;
+    }
+
+    /**
+     * Same as {@link PackedSymbols#pack(int[])}, chunks in parallel.
+     *
+     * @throws CancellationException if cancelled
+     */
+    @NonNull
+    static long[] pack(@NonNull final int[] normalized, @NonNull CancellationToken token, @NonNull ForkJoinPool pool) {
+        final long[] packed = new long[PackedSymbols.wordCount(normalized.length)];
+        final int chunkCount = chunkCount(normalized.length, MIN_CHUNK_SYMBOLS, pool);
+        if (chunkCount < 2) {
+            PackedSymbols.pack(normalized, packed, 0, packed.length);
+            return packed;
+        }
+        // Chunks of whole longs
+        final int[] boundaries = new int[chunkCount + 1];
+        for (int c = 0; c <= chunkCount; c++) {
+            boundaries[c] = (int) ((long) packed.length * c / chunkCount);
+        }
+        computeRanges(boundaries, chunkCount, token, pool, new RangeTask<Void>() {
+            @Override
+            public Void compute(int fromWord, int toWord) {
+                PackedSymbols.pack(normalized, packed, fromWord, toWord);
+                return null;
+            }
+        });
+        return packed;
+    }
+
+    /**
+     * Same as {@link MorseDecoder#decode(int[])}, chunks in parallel.
+     *
+     * @throws CancellationException if cancelled
+     */
+    @NonNull
+    static String decode(@NonNull final int[] normalized, @NonNull CancellationToken token, @NonNull ForkJoinPool pool) {
+        final int chunkCount = chunkCount(normalized.length, MIN_CHUNK_SYMBOLS, pool);
+        if (chunkCount < 2) {
+            return MorseDecoder.get().decode(normalized);
+        }
+
+        // Chunk boundaries: right after the first word space from each even split point
+        final int[] boundaries = new int[chunkCount + 1];
+        int boundaryCount = 0;
+        boundaries[boundaryCount++] = 0;
+        for (int c = 1; c < chunkCount; c++) {
+            int boundary = Math.max((int) ((long) normalized.length * c / chunkCount), boundaries[boundaryCount - 1] + 1);
+            while (boundary < normalized.length && normalized[boundary - 1] != Translator.IntegerRepresentation.MINUS_7) {
+                boundary++;
+            }
+            if (boundary >= normalized.length) {
+                break;
+            }
+            boundaries[boundaryCount++] = boundary;
+        }
+        boundaries[boundaryCount] = normalized.length;
+
+        final List<String> parts = computeRanges(boundaries, boundaryCount, token, pool, new RangeTask<String>() {
+            @Override
+            public String compute(int from, int to) {
+                return MorseDecoder.get().decodePart(normalized, from, to, to == normalized.length);
+            }
+        });
+        final StringBuilder outputBuilder = new StringBuilder(normalized.length / 4);
+        for (String part : parts) {
+            outputBuilder.append(part);
+        }
+        // Only spaces to trim, same as the decoder
+        return outputBuilder.toString().trim();
+    }
+
+    /**
+     * Computes a range of indexes; ranges computed concurrently must not write to the same place.
+     */
+    interface RangeTask<T> {
+        T compute(int from, int to);
+    }
+
+    /**
+     * Splits [0, length) evenly in chunks of at least minChunk, and computes them in parallel on the pool.
+     * Without a pool, or if too short to split, the whole range is a single chunk, computed on the calling thread.
+     *
+     * @return results of the chunks, in order
+     * @throws CancellationException if cancelled
+     */
+    @NonNull
+    static <T> List<T> computeChunks(int length, int minChunk, @NonNull CancellationToken token, @Nullable ForkJoinPool pool, @NonNull RangeTask<T> task) {
+        final int chunkCount = pool == null ? 1 : chunkCount(length, minChunk, pool);
+        if (chunkCount < 2) {
+            token.throwIfCancelled();
+            return Collections.singletonList(task.compute(0, length));
+        }
+        final int[] boundaries = new int[chunkCount + 1];
+        for (int c = 0; c <= chunkCount; c++) {
+            boundaries[c] = (int) ((long) length * c / chunkCount);
+        }
+        return computeRanges(boundaries, chunkCount, token, pool, task);
+    }
+
+    /**
+     * Computes the ranges between consecutive boundaries in parallel on the pool. Each range checks the token as it starts;
+     * once a range fails, the ranges not started yet are dropped.
+     *
+     * @param boundaries start of each range, then the end of the last one
+     * @param count      number of ranges
+     * @return results of the ranges, in order
+     * @throws CancellationException if cancelled
+     */
+    @NonNull
+    static <T> List<T> computeRanges(@NonNull int[] boundaries, int count, @NonNull final CancellationToken token, @NonNull ForkJoinPool pool,
+                                     @NonNull final RangeTask<T> task) {
+        final List<ForkJoinTask<T>> tasks = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            final int from = boundaries[c];
+            final int to = boundaries[c + 1];
+            tasks.add(pool.submit(new RecursiveTask<T>() {
+                @Override
+                protected T compute() {
+                    token.throwIfCancelled();
+                    return task.compute(from, to);
+                }
+            }));
+        }
+        final List<T> results = new ArrayList<>(count);
+        try {
+            for (ForkJoinTask<T> forkJoinTask : tasks) {
+                results.add(forkJoinTask.join());
+            }
+        } catch (RuntimeException e) {
+            for (ForkJoinTask<T> forkJoinTask : tasks) {
+                forkJoinTask.cancel(false);
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /* Number of chunks for the length; one if too short to split */
+    static int chunkCount(int length, int minChunk, @NonNull ForkJoinPool pool) {
+        return (int) Math.max(1L, Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD, length / minChunk));
+    }
+}
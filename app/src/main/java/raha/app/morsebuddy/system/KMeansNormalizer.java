@@ -1,18 +1,15 @@
 package raha.app.morsebuddy.system;
 
 import android.util.Log;
-import android.util.Pair;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
-import raha.app.morsebuddy.clustering.KMeans;
+import raha.app.morsebuddy.clustering.IntKMeans;
 
 /**
  * Takes an integer array as input.
@@ -24,11 +21,20 @@ import raha.app.morsebuddy.clustering.KMeans;
  * 1: Dot
  * 3: Dash
  * Hence, the output array can be mapped to morse symbols directly.
- * Uses {@link KMeans} algorithm for clustering integers.
+ * Uses {@link IntKMeans} algorithm for clustering integers; the same clusters as {@link raha.app.morsebuddy.clustering.KMeans}, without boxing.
+ * Given a pool, the passes over long arrays (initial centroids, labels) are split in chunks and merged; clustering stays sequential.
  */
 public class KMeansNormalizer implements Translator.ArrayNormalizer {
     private static final String TAG = "ClusterBasedNormalizer";
     private static final int KMEANS_MAX_ITERATION = 100;
+    /* Representation of each centroid, by rank */
+    private static final int[] REPRESENTATIONS = new int[]{
+            Translator.IntegerRepresentation.MINUS_7,
+            Translator.IntegerRepresentation.MINUS_3,
+            Translator.IntegerRepresentation.MINUS_1,
+            Translator.IntegerRepresentation.PLUS_1,
+            Translator.IntegerRepresentation.PLUS_3
+    };
 
     /**
      * The user must ensure that the sourceArray contains <b>both positive and negative integer (except zero)</b>, where positive represents a dash or dot, and negative represents a space.
@@ -40,59 +46,100 @@ public class KMeansNormalizer implements Translator.ArrayNormalizer {
     @NonNull
     @Override
     public int[] normalize(@NonNull int[] sourceArray) {
+        return normalize(sourceArray, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link KMeansNormalizer#normalize(int[])}; the token is checked in the passes over the array, and before and after clustering.
+     */
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray, @NonNull CancellationToken token) {
+        return normalize(sourceArray, token, null);
+    }
+
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull final int[] sourceArray, @NonNull final CancellationToken token, @Nullable ForkJoinPool pool) {
         Log.d(TAG, "before normalization=" + Arrays.toString(sourceArray));
 
-        // Calculate centroids and apply kMeans
-        final List<Integer> negativeList = new ArrayList<>();
-        final List<Integer> positiveList = new ArrayList<>();
-        for (Integer integer : sourceArray) {
-            if (integer < 0) {
-                negativeList.add(integer);
-            } else if (integer > 0) {
-                positiveList.add(integer);
-            }
+        // Calculate centroids and apply kMeans; counts and extremes of each chunk, merged
+        final List<int[]> chunkStats = ChunkedTranslation.computeChunks(sourceArray.length, ChunkedTranslation.MIN_CHUNK_SYMBOLS, token, pool,
+                new ChunkedTranslation.RangeTask<int[]>() {
+                    @Override
+                    public int[] compute(int from, int to) {
+                        final int[] stats = new int[]{0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+                        for (int i = from; i < to; i++) {
+                            token.poll(i);
+                            mergeStats(stats, sourceArray[i]);
+                        }
+                        return stats;
+                    }
+                });
+        int negativeCount = 0;
+        int positiveCount = 0;
+        int _oneUnit = Integer.MIN_VALUE;   // -1 unit
+        int _sevenUnit = Integer.MAX_VALUE; // -7 unit
+        int oneUnit = Integer.MAX_VALUE;    // 1 unit
+        int threeUnit = Integer.MIN_VALUE;  // 3 unit
+        for (int[] stats : chunkStats) {
+            negativeCount += stats[0];
+            positiveCount += stats[1];
+            _oneUnit = Math.max(_oneUnit, stats[2]);
+            _sevenUnit = Math.min(_sevenUnit, stats[3]);
+            oneUnit = Math.min(oneUnit, stats[4]);
+            threeUnit = Math.max(threeUnit, stats[5]);
         }
         // Raise exception if both negative or positive values not found
-        if (negativeList.size() == 0 || positiveList.size() == 0 || (positiveList.size() + negativeList.size() != sourceArray.length)) {
+        if (negativeCount == 0 || positiveCount == 0 || (positiveCount + negativeCount != sourceArray.length)) {
             throw new IllegalArgumentException("Source array must contain both negative and positive integers (except zero).");
         }
-        int _oneUnit = Collections.max(negativeList);   // -1 unit
-        int _sevenUnit = Collections.min(negativeList); // -7 unit
         int _threeUnit = (_oneUnit + _sevenUnit) / 2;   // -3 unit
-        int oneUnit = Collections.min(positiveList);    // 1 unit
-        int threeUnit = Collections.max(positiveList);  // 3 unit
-        KMeans.Centroid[] centroids = new KMeans.Centroid[]{new KMeans.Centroid(oneUnit), new KMeans.Centroid(threeUnit), new KMeans.Centroid(_oneUnit), new KMeans.Centroid(_threeUnit), new KMeans.Centroid(_sevenUnit)};
-        KMeans.Element[] elements = new KMeans.Element[sourceArray.length];
-        for (int i = 0, sourceSize = sourceArray.length; i < sourceSize; i++) {
-            int integer = sourceArray[i];
-            elements[i] = new KMeans.Element(integer);
-        }
-        Pair<KMeans.Centroid[], KMeans.Element[]> clustered = KMeans.fit(centroids, elements, KMEANS_MAX_ITERATION);
-
-        // Mapping clustered centers to our integers
-        KMeans.Centroid[] clusteredCentroids = clustered.first;
-        KMeans.Element[] clusteredElements = clustered.second;
-        Arrays.sort(clusteredCentroids);
-        Map<Integer, Integer> map = new HashMap<>();
-        map.put(clusteredCentroids[0].getValue(), Translator.IntegerRepresentation.MINUS_7);
-        map.put(clusteredCentroids[1].getValue(), Translator.IntegerRepresentation.MINUS_3);
-        map.put(clusteredCentroids[2].getValue(), Translator.IntegerRepresentation.MINUS_1);
-        map.put(clusteredCentroids[3].getValue(), Translator.IntegerRepresentation.PLUS_1);
-        map.put(clusteredCentroids[4].getValue(), Translator.IntegerRepresentation.PLUS_3);
+        final int[] centroids = new int[]{oneUnit, threeUnit, _oneUnit, _threeUnit, _sevenUnit};
+        final int[] centers = new int[sourceArray.length];
+        token.throwIfCancelled();
+        IntKMeans.fit(centroids, sourceArray, KMEANS_MAX_ITERATION, centers);
+        token.throwIfCancelled();
 
-        int[] normalized = new int[clusteredElements.length];
-        for (int i = 0, secondLength = clusteredElements.length; i < secondLength; i++) {
-            Integer normal = map.get(clusteredElements[i].getCenter());
-            normalized[i] = (normal == null ? (clusteredElements[i].getCenter() < 0 ? Translator.IntegerRepresentation.MINUS_1 : Translator.IntegerRepresentation.PLUS_1) : normal);
-        }
+        // Mapping clustered centers to our integers; by rank of the centroid, the higher rank wins for equal centroids.
+        // Ascending order; the same as the difference-based compareTo of KMeans.Centroid as long as no two centroids are 2^31 apart,
+        // i.e. for any run shorter than about 17 minutes in microseconds. Beyond that, the difference overflows and misorders the ranks.
+        Arrays.sort(centroids);
+        final int[] normalized = new int[sourceArray.length];
+        ChunkedTranslation.computeChunks(centers.length, ChunkedTranslation.MIN_CHUNK_SYMBOLS, token, pool, new ChunkedTranslation.RangeTask<Void>() {
+            @Override
+            public Void compute(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    token.poll(i);
+                    final int center = centers[i];
+                    int normal = center < 0 ? Translator.IntegerRepresentation.MINUS_1 : Translator.IntegerRepresentation.PLUS_1;
+                    for (int rank = REPRESENTATIONS.length - 1; rank >= 0; rank--) {
+                        if (centroids[rank] == center) {
+                            normal = REPRESENTATIONS[rank];
+                            break;
+                        }
+                    }
+                    normalized[i] = normal;
+                }
+                return null;
+            }
+        });
 
         Log.d(TAG, "normalized=" + Arrays.toString(normalized));
 
         return normalized;
     }
 
-    @Override
-    public void reset() {
-        // Nothing to do for now.
+    /* Counts the element into the statistics: negatives, positives, -1 unit, -7 unit, 1 unit and 3 unit */
+    private static void mergeStats(int[] stats, int integer) {
+        if (integer < 0) {
+            stats[0]++;
+            stats[2] = Math.max(stats[2], integer);
+            stats[3] = Math.min(stats[3], integer);
+        } else if (integer > 0) {
+            stats[1]++;
+            stats[4] = Math.min(stats[4], integer);
+            stats[5] = Math.max(stats[5], integer);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,205 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+
+import raha.app.morsebuddy.util.MorseMap;
+
+/**
+ * Decodes normalized arrays, see {@link Translator.IntegerRepresentation}, to text in a single pass.
+ * <p>
+ * The elements of a letter are packed into an int as they come, see {@link MorseMap#EMPTY_CODE}, and the letter is looked up by
+ * {@link MorseMap#codeToLetter(int)} at the space ending it. No morse string is built, split or hashed;
+ * text goes to a buffer reused between decodings, and the morse display string is rendered only on request, see {@link MorseDecoder#render(int[])}.
+ * <p>
+ * Same text as splitting the morse string into words and letters: unknown letters are dropped, every word is followed by a space,
+ * and the text is trimmed. Not thread-safe; one decoder per thread, see {@link MorseDecoder#get()}.
+ */
+public class MorseDecoder {
+    /* Codes from this on are longer than any letter */
+    private static final int OVERLONG_CODE = MorseMap.EMPTY_CODE << (MorseMap.MAX_CODE_LENGTH + 1);
+
+    /* Decoder of each thread, so results are decoded without allocating a decoder each time */
+    private static final ThreadLocal<MorseDecoder> DECODERS = new ThreadLocal<MorseDecoder>() {
+        @Override
+        protected MorseDecoder initialValue() {
+            return new MorseDecoder();
+        }
+    };
+
+    /* Text of the latest decoding; grows as needed */
+    private char[] buffer;
+    private int length;
+    /* Elements of the letter being decoded, see MorseMap#EMPTY_CODE */
+    private int code;
+
+    public MorseDecoder() {
+        this.buffer = new char[64];
+        this.length = 0;
+        this.code = MorseMap.EMPTY_CODE;
+    }
+
+    /**
+     * @return decoder confined to the calling thread
+     */
+    @NonNull
+    static MorseDecoder get() {
+        return DECODERS.get();
+    }
+
+    /**
+     * @param normalized normalized array
+     * @return text of the array, trimmed
+     */
+    @NonNull
+    public String decode(@NonNull int[] normalized) {
+        length = 0;
+        decodeRange(normalized, 0, normalized.length, true);
+        return trimmed();
+    }
+
+    /**
+     * Same as {@link MorseDecoder#decode(int[])}, read straight from packed symbols; nothing is unpacked.
+     *
+     * @param packed symbols, see {@link PackedSymbols}
+     * @param count  number of symbols packed
+     * @return text of the symbols, trimmed
+     */
+    @NonNull
+    String decode(@NonNull long[] packed, int count) {
+        length = 0;
+        code = MorseMap.EMPTY_CODE;
+        for (int i = 0; i < count; i++) {
+            step(PackedSymbols.get(packed, i));
+        }
+        finish();
+        return trimmed();
+    }
+
+    private String trimmed() {
+        int start = 0;
+        int end = length;
+        while (start < end && buffer[start] == ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] == ' ') {
+            end--;
+        }
+        return new String(buffer, start, end - start);
+    }
+
+    /**
+     * Decodes a part of the array, untrimmed. Parts split right after word spaces concatenate to the text of the whole array, before trimming.
+     *
+     * @param from first index of the part
+     * @param to   index after the part
+     * @param last true if the part ends the array; its last letter and word are completed
+     * @return untrimmed text of the part
+     */
+    @NonNull
+    String decodePart(@NonNull int[] normalized, int from, int to, boolean last) {
+        length = 0;
+        decodeRange(normalized, from, to, last);
+        return new String(buffer, 0, length);
+    }
+
+    private void decodeRange(int[] normalized, int from, int to, boolean last) {
+        code = MorseMap.EMPTY_CODE;
+        for (int i = from; i < to; i++) {
+            step(normalized[i]);
+        }
+        if (last) {
+            finish();
+        }
+    }
+
+    /* Decodes the next symbol */
+    private void step(int integer) {
+        switch (integer) {
+            case Translator.IntegerRepresentation.PLUS_1:
+            case Translator.IntegerRepresentation.PLUS_3:
+                // Saturates once longer than any letter
+                code = code < OVERLONG_CODE ? code << 1 | (integer == Translator.IntegerRepresentation.PLUS_3 ? 1 : 0) : OVERLONG_CODE;
+                break;
+            case Translator.IntegerRepresentation.MINUS_3:
+                appendLetter(code);
+                code = MorseMap.EMPTY_CODE;
+                break;
+            case Translator.IntegerRepresentation.MINUS_7:
+                appendLetter(code);
+                code = MorseMap.EMPTY_CODE;
+                append(' ');
+                break;
+            default:
+                // Space between elements
+                break;
+        }
+    }
+
+    /* Completes the last letter and word */
+    private void finish() {
+        appendLetter(code);
+        code = MorseMap.EMPTY_CODE;
+        append(' ');
+    }
+
+    private void appendLetter(int code) {
+        final char letter = MorseMap.codeToLetter(code);
+        if (letter != MorseMap.NO_LETTER) {
+            append(letter);
+        }
+    }
+
+    private void append(char c) {
+        if (length == buffer.length) {
+            final char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        buffer[length++] = c;
+    }
+
+    /**
+     * Renders the morse display string of a normalized array, with the signs of {@link MorseMap}.
+     *
+     * @param normalized normalized array
+     * @return morse string
+     */
+    @NonNull
+    public static String render(@NonNull int[] normalized) {
+        final StringBuilder morseBuilder = new StringBuilder(normalized.length * 2);
+        for (int integer : normalized) {
+            appendSign(morseBuilder, integer);
+        }
+        return morseBuilder.toString();
+    }
+
+    /**
+     * Same as {@link MorseDecoder#render(int[])}, read straight from packed symbols.
+     *
+     * @param packed symbols, see {@link PackedSymbols}
+     * @param count  number of symbols packed
+     * @return morse string
+     */
+    @NonNull
+    static String render(@NonNull long[] packed, int count) {
+        final StringBuilder morseBuilder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            appendSign(morseBuilder, PackedSymbols.get(packed, i));
+        }
+        return morseBuilder.toString();
+    }
+
+    private static void appendSign(StringBuilder morseBuilder, int integer) {
+        if (integer == Translator.IntegerRepresentation.MINUS_1) {
+            morseBuilder.append(MorseMap.SIGN_SPACE_1U);
+        } else if (integer == Translator.IntegerRepresentation.MINUS_3) {
+            morseBuilder.append(MorseMap.SIGN_SPACE_3U);
+        } else if (integer == Translator.IntegerRepresentation.MINUS_7) {
+            morseBuilder.append(MorseMap.SIGN_SPACE_7U);
+        } else if (integer == Translator.IntegerRepresentation.PLUS_1) {
+            morseBuilder.append(MorseMap.SIGN_DOT);
+        } else if (integer == Translator.IntegerRepresentation.PLUS_3) {
+            morseBuilder.append(MorseMap.SIGN_DASH);
+        }
+    }
+}
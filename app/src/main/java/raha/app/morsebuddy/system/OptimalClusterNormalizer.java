@@ -0,0 +1,245 @@
+package raha.app.morsebuddy.system;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Takes an integer array as input, same as {@link KMeansNormalizer}, and outputs an array which contains only integers defined in {@link Translator.IntegerRepresentation}.
+ * <p>
+ * Clusters are globally optimal instead of seeded: since durations are one-dimensional, the clusters with least sum of squared deviations
+ * are contiguous ranges of the sorted durations, found by dynamic programming (as Ckmeans.1d.dp does).
+ * Marks are split in two clusters (dot, dash) and spaces in three (between elements, letters and words), separately.
+ * The optimal split point of a cluster only moves forward as its range grows, so each row of the table is filled by divide and conquer,
+ * in O(k n log n) for n distinct durations. Deterministic; no seeds, no iterations.
+ * <p>
+ * Clusters are labelled by rank. If there are fewer distinct durations than clusters, or clusters are too close to be different elements
+ * (e.g. all marks are dashes), each cluster is labelled by the nearest multiple of the shortest cluster instead.
+ */
+public class OptimalClusterNormalizer implements Translator.ArrayNormalizer {
+    private static final String TAG = "OptimalClusterNormalizer";
+    private static final int[] MARK_UNITS = new int[]{Translator.IntegerRepresentation.PLUS_1, Translator.IntegerRepresentation.PLUS_3};
+    private static final int[] SPACE_UNITS = new int[]{-Translator.IntegerRepresentation.MINUS_1, -Translator.IntegerRepresentation.MINUS_3, -Translator.IntegerRepresentation.MINUS_7};
+    /* Neighboring elements differ at least by 7/3; clusters closer than this are not different elements */
+    private static final double MIN_CLUSTER_RATIO = 1.5;
+
+    /**
+     * The user must ensure that the sourceArray contains <b>both positive and negative integer (except zero)</b>, where positive represents a dash or dot, and negative represents a space.
+     * If positive or negative number is absent, then it will raise exception.
+     *
+     * @param sourceArray given array containing only positive and negative integers.
+     * @return normalized array.
+     */
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray) {
+        return normalize(sourceArray, CancellationToken.NONE);
+    }
+
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray, @NonNull CancellationToken token) {
+        Log.d(TAG, "before normalization=" + Arrays.toString(sourceArray));
+
+        int markCount = 0;
+        int spaceCount = 0;
+        for (int i = 0; i < sourceArray.length; i++) {
+            token.poll(i);
+            final int integer = sourceArray[i];
+            if (integer > 0) {
+                markCount++;
+            } else if (integer < 0) {
+                spaceCount++;
+            }
+        }
+        // Raise exception if both negative or positive values not found
+        if (markCount == 0 || spaceCount == 0 || markCount + spaceCount != sourceArray.length) {
+            throw new IllegalArgumentException("Source array must contain both negative and positive integers (except zero).");
+        }
+
+        // Durations of each kind, sorted and distinct, with their counts
+        Durations marks = new Durations(sourceArray, markCount, 1, token);
+        Durations spaces = new Durations(sourceArray, spaceCount, -1, token);
+        marks.cluster(MARK_UNITS.length, token);
+        spaces.cluster(SPACE_UNITS.length, token);
+
+        // Distinct clusters are labelled by rank; otherwise by multiples of the shortest cluster of either kind
+        final double unit = Math.min(marks.centers[0], spaces.centers[0]);
+        int[] markLabels = marks.label(MARK_UNITS, unit);
+        int[] spaceLabels = spaces.label(SPACE_UNITS, unit);
+
+        int[] normalized = new int[sourceArray.length];
+        for (int i = 0; i < sourceArray.length; i++) {
+            token.poll(i);
+            final int integer = sourceArray[i];
+            final long magnitude = Math.abs((long) integer);
+            normalized[i] = integer > 0 ? markLabels[marks.clusterOf(magnitude)] : -spaceLabels[spaces.clusterOf(magnitude)];
+        }
+
+        Log.d(TAG, "normalized=" + Arrays.toString(normalized));
+
+        return normalized;
+    }
+
+    /**
+     * Optimal clustering of weighted, sorted values into contiguous ranges; least total sum of squared deviations.
+     *
+     * @param values  distinct values, ascending
+     * @param weights number of occurrences of each value
+     * @param k       number of clusters; at most the number of values
+     * @return first index of each cluster; the last cluster ends at the end of values
+     */
+    static int[] cluster(long[] values, int[] weights, int k) {
+        return cluster(values, weights, k, CancellationToken.NONE);
+    }
+
+    /* Same, abandoned once the token is cancelled */
+    static int[] cluster(long[] values, int[] weights, int k, CancellationToken token) {
+        final int n = values.length;
+        // Prefix sums of weights, weighted values and weighted squares; a range's cost is then O(1)
+        // Values are taken from the median, costs do not change but the sums lose less precision
+        final long shift = values[n / 2];
+        final double[] w = new double[n + 1];
+        final double[] s1 = new double[n + 1];
+        final double[] s2 = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            token.poll(i);
+            final double value = values[i] - shift;
+            w[i + 1] = w[i] + weights[i];
+            s1[i + 1] = s1[i] + weights[i] * value;
+            s2[i + 1] = s2[i] + weights[i] * value * value;
+        }
+        // cost[m][i]: least cost of values 0..i in m + 1 clusters; split[m][i]: first index of the last of those clusters
+        final double[][] cost = new double[k][n];
+        final int[][] split = new int[k][n];
+        for (int i = 0; i < n; i++) {
+            token.poll(i);
+            cost[0][i] = rangeCost(w, s1, s2, 0, i);
+        }
+        for (int m = 1; m < k; m++) {
+            fillRow(cost[m - 1], cost[m], split[m], w, s1, s2, m, m, n - 1, m, n - 1, token);
+        }
+        // Backtrack
+        final int[] starts = new int[k];
+        int end = n - 1;
+        for (int m = k - 1; m > 0; m--) {
+            starts[m] = split[m][end];
+            end = starts[m] - 1;
+        }
+        starts[0] = 0;
+        return starts;
+    }
+
+    /* Fills row[low..high], knowing that their best split points are within [splitLow, splitHigh] */
+    private static void fillRow(double[] previous, double[] row, int[] splits, double[] w, double[] s1, double[] s2,
+                                int m, int low, int high, int splitLow, int splitHigh, CancellationToken token) {
+        if (low > high) {
+            return;
+        }
+        final int middle = (low + high) >>> 1;
+        // Each middle is filled once per row
+        token.poll(middle);
+        double best = Double.POSITIVE_INFINITY;
+        int bestSplit = Math.max(splitLow, m);
+        // Last cluster is [j, middle]; earlier ones hold at least m values
+        for (int j = Math.max(splitLow, m); j <= Math.min(splitHigh, middle); j++) {
+            final double candidate = previous[j - 1] + rangeCost(w, s1, s2, j, middle);
+            if (candidate < best) {
+                best = candidate;
+                bestSplit = j;
+            }
+        }
+        row[middle] = best;
+        splits[middle] = bestSplit;
+        fillRow(previous, row, splits, w, s1, s2, m, low, middle - 1, splitLow, bestSplit, token);
+        fillRow(previous, row, splits, w, s1, s2, m, middle + 1, high, bestSplit, splitHigh, token);
+    }
+
+    /* Sum of squared deviations of values from..to (inclusive) from their mean */
+    private static double rangeCost(double[] w, double[] s1, double[] s2, int from, int to) {
+        final double weight = w[to + 1] - w[from];
+        final double sum = s1[to + 1] - s1[from];
+        return Math.max(s2[to + 1] - s2[from] - sum * sum / weight, 0.0);
+    }
+
+    /* Durations of one kind; magnitudes of marks or of spaces */
+    private static class Durations {
+        private final long[] values;
+        private final int[] weights;
+        private int[] clusters;
+        private double[] centers;
+
+        Durations(int[] sourceArray, int count, int sign, CancellationToken token) {
+            long[] all = new long[count];
+            int index = 0;
+            for (int i = 0; i < sourceArray.length; i++) {
+                token.poll(i);
+                if (Integer.signum(sourceArray[i]) == sign) {
+                    all[index++] = Math.abs((long) sourceArray[i]);
+                }
+            }
+            Arrays.sort(all);
+            token.throwIfCancelled();
+            int distinct = 0;
+            int[] counts = new int[count];
+            for (int i = 0; i < count; i++) {
+                token.poll(i);
+                if (distinct > 0 && all[distinct - 1] == all[i]) {
+                    counts[distinct - 1]++;
+                } else {
+                    all[distinct] = all[i];
+                    counts[distinct++] = 1;
+                }
+            }
+            this.values = Arrays.copyOf(all, distinct);
+            this.weights = Arrays.copyOf(counts, distinct);
+        }
+
+        void cluster(int k, CancellationToken token) {
+            final int clusterCount = Math.min(k, values.length);
+            final int[] starts = OptimalClusterNormalizer.cluster(values, weights, clusterCount, token);
+            clusters = new int[values.length];
+            centers = new double[clusterCount];
+            for (int c = 0; c < clusterCount; c++) {
+                final int end = c + 1 < clusterCount ? starts[c + 1] : values.length;
+                double sum = 0.0;
+                long weight = 0L;
+                for (int i = starts[c]; i < end; i++) {
+                    clusters[i] = c;
+                    sum += (double) values[i] * weights[i];
+                    weight += weights[i];
+                }
+                centers[c] = sum / weight;
+            }
+        }
+
+        /* Units of each cluster; by rank if there are as many distinct clusters as units, otherwise the nearest multiple of the unit */
+        int[] label(int[] units, double unit) {
+            boolean ranked = centers.length == units.length;
+            for (int c = 1; c < centers.length && ranked; c++) {
+                ranked = centers[c] >= centers[c - 1] * MIN_CLUSTER_RATIO;
+            }
+            final int[] labels = new int[centers.length];
+            for (int c = 0; c < centers.length; c++) {
+                if (ranked) {
+                    labels[c] = units[c];
+                    continue;
+                }
+                int nearest = units[0];
+                for (int candidate : units) {
+                    if (Math.abs(centers[c] - candidate * unit) < Math.abs(centers[c] - nearest * unit)) {
+                        nearest = candidate;
+                    }
+                }
+                labels[c] = nearest;
+            }
+            return labels;
+        }
+
+        int clusterOf(long magnitude) {
+            return clusters[Arrays.binarySearch(values, magnitude)];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Normalized arrays packed three bits per symbol, 21 symbols per long; an eleventh of the int array.
+ * Symbols are indexes into {@link PackedSymbols#SYMBOLS}; other values cannot be packed.
+ */
+final class PackedSymbols {
+    private static final int BITS = 3;
+    private static final int PER_LONG = Long.SIZE / BITS;
+    private static final long MASK = (1L << BITS) - 1L;
+    /* Symbol of each code */
+    private static final int[] SYMBOLS = new int[]{
+            Translator.IntegerRepresentation.MINUS_7,
+            Translator.IntegerRepresentation.MINUS_3,
+            Translator.IntegerRepresentation.MINUS_1,
+            Translator.IntegerRepresentation.PLUS_1,
+            Translator.IntegerRepresentation.PLUS_3
+    };
+
+    private PackedSymbols() {
+    }
+
+    /**
+     * @param normalized normalized array
+     * @return symbols packed in order
+     */
+    @NonNull
+    static long[] pack(@NonNull int[] normalized) {
+        final long[] packed = new long[wordCount(normalized.length)];
+        pack(normalized, packed, 0, packed.length);
+        return packed;
+    }
+
+    /**
+     * @return number of longs holding the symbols
+     */
+    static int wordCount(int count) {
+        return (count + PER_LONG - 1) / PER_LONG;
+    }
+
+    /**
+     * Packs the symbols of the given longs only; packing disjoint ranges of longs from several threads is safe.
+     *
+     * @param packed   receives the symbols; the given range must be zero
+     * @param fromWord first long to fill
+     * @param toWord   long after the last one to fill
+     */
+    static void pack(@NonNull int[] normalized, @NonNull long[] packed, int fromWord, int toWord) {
+        final int end = Math.min(toWord * PER_LONG, normalized.length);
+        for (int i = fromWord * PER_LONG; i < end; i++) {
+            packed[i / PER_LONG] |= (long) codeOf(normalized[i]) << (i % PER_LONG * BITS);
+        }
+    }
+
+    /**
+     * @return symbol at the index, as {@link Translator.IntegerRepresentation}
+     */
+    static int get(@NonNull long[] packed, int index) {
+        return SYMBOLS[(int) (packed[index / PER_LONG] >>> (index % PER_LONG * BITS) & MASK)];
+    }
+
+    /**
+     * @param count number of symbols packed
+     * @return normalized array
+     */
+    @NonNull
+    static int[] unpack(@NonNull long[] packed, int count) {
+        final int[] normalized = new int[count];
+        for (int i = 0; i < count; i++) {
+            normalized[i] = get(packed, i);
+        }
+        return normalized;
+    }
+
+    private static int codeOf(int symbol) {
+        switch (symbol) {
+            case Translator.IntegerRepresentation.MINUS_7:
+                return 0;
+            case Translator.IntegerRepresentation.MINUS_3:
+                return 1;
+            case Translator.IntegerRepresentation.MINUS_1:
+                return 2;
+            case Translator.IntegerRepresentation.PLUS_1:
+                return 3;
+            case Translator.IntegerRepresentation.PLUS_3:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Not a normalized symbol: " + symbol);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package raha.app.morsebuddy.system;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Takes an integer array as input, same as {@link KMeansNormalizer}, and outputs an array which contains only integers defined in {@link Translator.IntegerRepresentation}.
+ * <p>
+ * Fast first pass for clean signals: the unit (a dot) is estimated from the marks, then each element is classified by its ratio to the unit,
+ * marks at 2 units and spaces at 2 and 5 units, in a single linear pass.
+ * The unit is the median of the shorter mode of the marks: the median of all marks is either a dot or a dash; marks shorter than half of it
+ * are dots if there are any, otherwise the marks shorter than twice of it are. Medians are found by quickselect, so the pass is O(n) on average.
+ * <p>
+ * Confidence is the share of elements within {@link RatioNormalizer#TOLERANCE} of their ideal duration.
+ * If it is below the minimum, the array is normalized by the fallback normalizer instead.
+ * Given a pool, the passes over long arrays (marks, classification) are split in chunks and their counts merged; the medians stay sequential.
+ * Stateless, see {@link RatioNormalizer#estimate(int[])}; thread-safe if the fallback is.
+ */
+public class RatioNormalizer implements Translator.ArrayNormalizer {
+    private static final String TAG = "RatioNormalizer";
+    /* Share of elements that must be near their ideal duration */
+    public static final float DEFAULT_MIN_CONFIDENCE = 0.9f;
+    /* Relative deviation from the ideal duration still counted as confident */
+    private static final double TOLERANCE = 0.35;
+
+    private final Translator.ArrayNormalizer fallback;
+    private final float minConfidence;
+
+    /**
+     * @param fallback      normalizer for arrays without confident ratios
+     * @param minConfidence share of elements that must be near their ideal duration, from 0 to 1
+     */
+    public RatioNormalizer(@NonNull Translator.ArrayNormalizer fallback, float minConfidence) {
+        this.fallback = fallback;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * The user must ensure that the sourceArray contains <b>both positive and negative integer (except zero)</b>, where positive represents a dash or dot, and negative represents a space.
+     * If positive or negative number is absent, then it will raise exception.
+     *
+     * @param sourceArray given array containing only positive and negative integers.
+     * @return normalized array.
+     */
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray) {
+        return normalize(sourceArray, CancellationToken.NONE);
+    }
+
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray, @NonNull CancellationToken token) {
+        return normalize(sourceArray, token, null);
+    }
+
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray, @NonNull CancellationToken token, @Nullable ForkJoinPool pool) {
+        final Estimate estimate = estimate(sourceArray, token, pool);
+        if (!isConfident(estimate)) {
+            return fallback.normalize(sourceArray, token, pool);
+        }
+
+        Log.d(TAG, "normalized=" + Arrays.toString(estimate.normalized));
+
+        return estimate.normalized;
+    }
+
+    /**
+     * @return true if the estimate is confident enough to be used without the fallback
+     */
+    public boolean isConfident(@NonNull Estimate estimate) {
+        return estimate.confidence >= minConfidence;
+    }
+
+    /**
+     * Normalizes by ratios only, without the fallback.
+     *
+     * @param sourceArray same as for {@link RatioNormalizer#normalize(int[])}
+     * @return normalized array, with its unit and confidence
+     */
+    @NonNull
+    public Estimate estimate(@NonNull int[] sourceArray) {
+        return estimate(sourceArray, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link RatioNormalizer#estimate(int[])}, abandoned once the token is cancelled.
+     *
+     * @throws java.util.concurrent.CancellationException if cancelled
+     */
+    @NonNull
+    public Estimate estimate(@NonNull int[] sourceArray, @NonNull CancellationToken token) {
+        return estimate(sourceArray, token, null);
+    }
+
+    /**
+     * Same as {@link RatioNormalizer#estimate(int[], CancellationToken)}; the passes over a long array are split in chunks, in parallel on the pool.
+     *
+     * @param pool runs the chunks; null to estimate on the calling thread only
+     * @throws java.util.concurrent.CancellationException if cancelled
+     */
+    @NonNull
+    public Estimate estimate(@NonNull final int[] sourceArray, @NonNull final CancellationToken token, @Nullable ForkJoinPool pool) {
+        // Marks into the scratch; each chunk at its own start, then moved together in order
+        final int[] scratch = new int[sourceArray.length];
+        final List<int[]> chunkCounts = ChunkedTranslation.computeChunks(sourceArray.length, ChunkedTranslation.MIN_CHUNK_SYMBOLS, token, pool,
+                new ChunkedTranslation.RangeTask<int[]>() {
+                    @Override
+                    public int[] compute(int from, int to) {
+                        int marks = 0;
+                        int spaces = 0;
+                        for (int i = from; i < to; i++) {
+                            token.poll(i);
+                            final int integer = sourceArray[i];
+                            if (integer > 0) {
+                                scratch[from + marks++] = integer;
+                            } else if (integer < 0) {
+                                spaces++;
+                            }
+                        }
+                        return new int[]{from, marks, spaces};
+                    }
+                });
+        int markCount = 0;
+        int spaceCount = 0;
+        for (int[] counts : chunkCounts) {
+            System.arraycopy(scratch, counts[0], scratch, markCount, counts[1]);
+            markCount += counts[1];
+            spaceCount += counts[2];
+        }
+        // Raise exception if both negative or positive values not found
+        if (markCount == 0 || spaceCount == 0 || markCount + spaceCount != sourceArray.length) {
+            throw new IllegalArgumentException("Source array must contain both negative and positive integers (except zero).");
+        }
+
+        // Median of all marks, then of its shorter mode
+        final int median = select(scratch, 0, markCount, markCount / 2);
+        int shortCount = 0;
+        for (int i = 0; i < markCount; i++) {
+            token.poll(i);
+            if (scratch[i] < median / 2) {
+                scratch[shortCount++] = scratch[i];
+            }
+        }
+        if (shortCount == 0) {
+            // Median is a dot; dashes are longer than twice of it
+            for (int i = 0; i < markCount; i++) {
+                token.poll(i);
+                if (scratch[i] < 2L * median) {
+                    scratch[shortCount++] = scratch[i];
+                }
+            }
+        }
+        final double unit = select(scratch, 0, shortCount, shortCount / 2);
+
+        // Classify by ratio; count elements near their ideal duration
+        final int[] normalized = new int[sourceArray.length];
+        final List<Integer> chunkConfident = ChunkedTranslation.computeChunks(sourceArray.length, ChunkedTranslation.MIN_CHUNK_SYMBOLS, token, pool,
+                new ChunkedTranslation.RangeTask<Integer>() {
+                    @Override
+                    public Integer compute(int from, int to) {
+                        int confident = 0;
+                        for (int i = from; i < to; i++) {
+                            token.poll(i);
+                            final int integer = sourceArray[i];
+                            final double ratio = Math.abs((double) integer) / unit;
+                            final int units;
+                            if (integer > 0) {
+                                units = ratio < 2.0 ? Translator.IntegerRepresentation.PLUS_1 : Translator.IntegerRepresentation.PLUS_3;
+                            } else {
+                                units = ratio < 2.0 ? -Translator.IntegerRepresentation.MINUS_1 : ratio < 5.0 ? -Translator.IntegerRepresentation.MINUS_3 : -Translator.IntegerRepresentation.MINUS_7;
+                            }
+                            if (Math.abs(ratio / units - 1.0) <= TOLERANCE) {
+                                confident++;
+                            }
+                            normalized[i] = integer > 0 ? units : -units;
+                        }
+                        return confident;
+                    }
+                });
+        int confident = 0;
+        for (int chunk : chunkConfident) {
+            confident += chunk;
+        }
+        final float confidence = (float) confident / sourceArray.length;
+        Log.d(TAG, "unit=" + unit + " confidence=" + confidence);
+        return new Estimate(normalized, unit, confidence);
+    }
+
+    /**
+     * Normalization by ratios, and how well the durations fit it.
+     */
+    public static class Estimate {
+        @NonNull
+        private final int[] normalized;
+        private final double unit;
+        private final float confidence;
+
+        Estimate(@NonNull int[] normalized, double unit, float confidence) {
+            this.normalized = normalized;
+            this.unit = unit;
+            this.confidence = confidence;
+        }
+
+        @NonNull
+        public int[] getNormalized() {
+            return normalized;
+        }
+
+        public double getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return share of elements near their ideal duration, from 0 to 1
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+    }
+
+    /**
+     * Finds the k-th smallest of array[from..to) by quickselect; reorders that part of the array.
+     */
+    static int select(int[] array, int from, int to, int k) {
+        int low = from;
+        int high = to - 1;
+        final int target = from + k;
+        while (low < high) {
+            // Median of three as pivot
+            final int middle = (low + high) >>> 1;
+            final int pivot = Math.max(Math.min(array[low], array[middle]), Math.min(Math.max(array[low], array[middle]), array[high]));
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (array[i] < pivot) {
+                    i++;
+                }
+                while (array[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int value = array[i];
+                    array[i] = array[j];
+                    array[j] = value;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                high = j;
+            } else if (target >= i) {
+                low = i;
+            } else {
+                break;
+            }
+        }
+        return array[target];
+    }
+}
@@ -0,0 +1,261 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Recorded signal in run-length form, built while recording against a provisional threshold.
+ * <p>
+ * Frames are kept as segments; a segment is either a single raw frame, or the interior of a run, summarized by its frame count and value range.
+ * Raw frames are kept only at the edges of each provisional transition, where the value is usually in between (e.g. a partially exposed frame).
+ * Thus the signal can still be translated with any baseline; the result is exactly the same as for the raw frames,
+ * as long as the baseline does not fall within the value range of a run interior, see {@link RunLengthSignal#isExact(int)}.
+ * Otherwise, such an interior is taken as a whole, as signal if the middle of its range is above the baseline.
+ * <p>
+ * Not thread-safe; written by one thread, and handed over to others as a {@link RunLengthSignal#copy()}.
+ */
+public class RunLengthSignal {
+    /* Raw frames kept on each side of a transition */
+    public static final int DEFAULT_EDGE_FRAMES = 1;
+
+    private final int threshold;
+    private final int edgeFrames;
+
+    /* Segments; frame count, value range and timestamps of the first and the last frame */
+    private int[] counts;
+    private int[] minValues;
+    private int[] maxValues;
+    private long[] timestamps;
+    private long[] lastTimestamps;
+    private int segmentCount;
+    /* Total frames in all segments */
+    private int frameCount;
+
+    /* Class of the current run, against the provisional threshold */
+    private boolean mark;
+    private boolean started;
+    /* Raw frames still to keep after the last transition */
+    private int trailingEdgeFrames;
+    /* Latest frames; raw if a transition follows, otherwise they join the run interior */
+    private final int[] pendingValues;
+    private final long[] pendingTimestamps;
+    private int pendingStart;
+    private int pendingCount;
+    /* True if the last segment is a run interior which can still grow */
+    private boolean interiorOpen;
+
+    /**
+     * @param threshold  provisional threshold; frames above it are signal while recording
+     * @param edgeFrames raw frames kept on each side of a transition, at least one
+     */
+    public RunLengthSignal(int threshold, int edgeFrames) {
+        this.threshold = threshold;
+        this.edgeFrames = Math.max(edgeFrames, 1);
+        this.counts = new int[64];
+        this.minValues = new int[64];
+        this.maxValues = new int[64];
+        this.timestamps = new long[64];
+        this.lastTimestamps = new long[64];
+        this.pendingValues = new int[this.edgeFrames];
+        this.pendingTimestamps = new long[this.edgeFrames];
+        clear();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Appends a frame.
+     */
+    public void append(int value, long timestamp) {
+        final boolean isMark = value > threshold;
+        if (started && isMark != mark) {
+            // Transition; latest frames are its leading edge, and the next few its trailing edge
+            flushPending();
+            mark = isMark;
+            interiorOpen = false;
+            trailingEdgeFrames = edgeFrames - 1;
+            addSegment(1, value, value, timestamp);
+            return;
+        }
+        started = true;
+        mark = isMark;
+        if (trailingEdgeFrames > 0) {
+            trailingEdgeFrames--;
+            addSegment(1, value, value, timestamp);
+            return;
+        }
+        if (pendingCount == edgeFrames) {
+            // Oldest pending frame is not at an edge
+            joinInterior(pendingValues[pendingStart], pendingTimestamps[pendingStart]);
+            pendingStart = (pendingStart + 1) % edgeFrames;
+            pendingCount--;
+        }
+        final int position = (pendingStart + pendingCount) % edgeFrames;
+        pendingValues[position] = value;
+        pendingTimestamps[position] = timestamp;
+        pendingCount++;
+    }
+
+    private void joinInterior(int value, long timestamp) {
+        if (interiorOpen) {
+            final int last = segmentCount - 1;
+            counts[last]++;
+            minValues[last] = Math.min(minValues[last], value);
+            maxValues[last] = Math.max(maxValues[last], value);
+            lastTimestamps[last] = timestamp;
+            frameCount++;
+        } else {
+            addSegment(1, value, value, timestamp);
+            interiorOpen = true;
+        }
+    }
+
+    private void flushPending() {
+        for (int i = 0; i < pendingCount; i++) {
+            final int position = (pendingStart + i) % edgeFrames;
+            addSegment(1, pendingValues[position], pendingValues[position], pendingTimestamps[position]);
+        }
+        pendingStart = 0;
+        pendingCount = 0;
+    }
+
+    private void addSegment(int count, int minValue, int maxValue, long timestamp) {
+        if (segmentCount == counts.length) {
+            final int capacity = counts.length * 2;
+            counts = Arrays.copyOf(counts, capacity);
+            minValues = Arrays.copyOf(minValues, capacity);
+            maxValues = Arrays.copyOf(maxValues, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            lastTimestamps = Arrays.copyOf(lastTimestamps, capacity);
+        }
+        counts[segmentCount] = count;
+        minValues[segmentCount] = minValue;
+        maxValues[segmentCount] = maxValue;
+        timestamps[segmentCount] = timestamp;
+        lastTimestamps[segmentCount] = timestamp;
+        segmentCount++;
+        frameCount += count;
+    }
+
+    /**
+     * @return number of segments, including the latest frames still pending
+     */
+    public int getSegmentCount() {
+        return segmentCount + pendingCount;
+    }
+
+    /**
+     * @return number of recorded frames
+     */
+    public int getFrameCount() {
+        return frameCount + pendingCount;
+    }
+
+    /**
+     * Tells whether translation with the given baseline sees exactly the same frames as the raw signal.
+     *
+     * @param baseline the baseline
+     * @return false if the baseline falls within the value range of a run interior
+     */
+    public boolean isExact(int baseline) {
+        for (int i = 0; i < segmentCount; i++) {
+            if (counts[i] > 1 && minValues[i] <= baseline && maxValues[i] > baseline) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the recorded segments; latest pending frames become raw segments of the copy.
+     *
+     * @return an independent, complete signal
+     */
+    @NonNull
+    public RunLengthSignal copy() {
+        RunLengthSignal copy = new RunLengthSignal(threshold, edgeFrames);
+        final int capacity = Math.max(getSegmentCount(), 1);
+        copy.counts = Arrays.copyOf(counts, capacity);
+        copy.minValues = Arrays.copyOf(minValues, capacity);
+        copy.maxValues = Arrays.copyOf(maxValues, capacity);
+        copy.timestamps = Arrays.copyOf(timestamps, capacity);
+        copy.lastTimestamps = Arrays.copyOf(lastTimestamps, capacity);
+        copy.segmentCount = segmentCount;
+        copy.frameCount = frameCount;
+        for (int i = 0; i < pendingCount; i++) {
+            final int position = (pendingStart + i) % edgeFrames;
+            copy.addSegment(1, pendingValues[position], pendingValues[position], pendingTimestamps[position]);
+        }
+        copy.started = started;
+        copy.mark = mark;
+        return copy;
+    }
+
+    /**
+     * Copies values of the latest frames, oldest first; run interiors are expanded with the middle of their range.
+     * If fewer frames are recorded than the destination holds, the rest of the destination is left untouched.
+     *
+     * @param destination receives the values
+     * @return number of values copied
+     */
+    public int copyLatest(@NonNull int[] destination) {
+        final int count = Math.min(getFrameCount(), destination.length);
+        // Pending frames are the newest
+        int position = count;
+        for (int i = pendingCount - 1; i >= 0 && position > 0; i--) {
+            destination[--position] = pendingValues[(pendingStart + i) % edgeFrames];
+        }
+        for (int segment = segmentCount - 1; segment >= 0 && position > 0; segment--) {
+            final int value = (int) (((long) minValues[segment] + maxValues[segment]) / 2);
+            for (int i = 0; i < counts[segment] && position > 0; i++) {
+                destination[--position] = value;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes all frames.
+     */
+    public void clear() {
+        segmentCount = 0;
+        frameCount = 0;
+        started = false;
+        mark = false;
+        trailingEdgeFrames = 0;
+        pendingStart = 0;
+        pendingCount = 0;
+        interiorOpen = false;
+    }
+
+    /*
+     * Segment access for translation; only complete (copied) signals are read, which have no pending frames.
+     */
+
+    int segmentCount() {
+        return segmentCount;
+    }
+
+    int count(int segment) {
+        return counts[segment];
+    }
+
+    int minValue(int segment) {
+        return minValues[segment];
+    }
+
+    int maxValue(int segment) {
+        return maxValues[segment];
+    }
+
+    long timestamp(int segment) {
+        return timestamps[segment];
+    }
+
+    long lastTimestamp(int segment) {
+        return lastTimestamps[segment];
+    }
+}
@@ -0,0 +1,244 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * Recorded signal of any length; values and timestamps of the frames, kept in fixed-size primitive chunks.
+ * <p>
+ * Memory grows one chunk at a time, and chunks come from (and return to) a shared {@link ChunkPool}, so long recordings never reallocate or copy what is already recorded.
+ * Optionally, the number of chunks is capped; then the oldest chunk is evicted ring-style to make room, and the store keeps the latest frames only.
+ * <p>
+ * Frames are addressed from the oldest retained one, starting at zero.
+ * Not thread-safe; a store is written by one thread, and handed over to others as a {@link SignalStore#copy()}.
+ */
+public class SignalStore {
+    /* Frames in a chunk; power of two, about 17 seconds at 60 fps */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final ChunkPool pool;
+    private final int shift;
+    private final int mask;
+    /* Maximum number of chunks; zero means unbounded */
+    private int maxChunks;
+
+    /* Chunks in ring order, the oldest at head */
+    private Chunk[] chunks;
+    private int head;
+    private int chunkCount;
+    /* Number of retained frames */
+    private int size;
+    /* Number of frames evicted since cleared */
+    private long evictedCount;
+
+    /**
+     * @param pool      provides the chunks
+     * @param maxChunks maximum number of chunks kept, zero for unbounded
+     */
+    public SignalStore(@NonNull ChunkPool pool, int maxChunks) {
+        this.pool = pool;
+        this.shift = Integer.numberOfTrailingZeros(pool.chunkSize);
+        this.mask = pool.chunkSize - 1;
+        this.maxChunks = Math.max(maxChunks, 0);
+        this.chunks = new Chunk[8];
+        this.head = 0;
+        this.chunkCount = 0;
+        this.size = 0;
+        this.evictedCount = 0L;
+    }
+
+    /**
+     * Creates a store containing a copy of the given arrays.
+     *
+     * @param values     values of the frames
+     * @param timestamps timestamps of the frames, or null to leave them zero
+     * @return a new, unbounded store with its own pool
+     */
+    @NonNull
+    public static SignalStore of(@NonNull int[] values, long[] timestamps) {
+        SignalStore store = new SignalStore(new ChunkPool(DEFAULT_CHUNK_SIZE, 0), 0);
+        for (int i = 0; i < values.length; i++) {
+            store.append(values[i], timestamps != null ? timestamps[i] : 0L);
+        }
+        return store;
+    }
+
+    /**
+     * Sets the maximum number of chunks; takes effect from the next append.
+     *
+     * @param maxChunks maximum number of chunks kept, zero for unbounded
+     */
+    public void setMaxChunks(int maxChunks) {
+        this.maxChunks = Math.max(maxChunks, 0);
+    }
+
+    /**
+     * Appends a frame; a new chunk is taken when the last one is full, evicting the oldest one if the cap is reached.
+     */
+    public void append(int value, long timestamp) {
+        if (size == chunkCount << shift) {
+            if (maxChunks > 0 && chunkCount >= maxChunks) {
+                evictOldest();
+            }
+            addChunk(pool.acquire());
+        }
+        final Chunk chunk = chunks[(head + (size >>> shift)) % chunks.length];
+        chunk.values[size & mask] = value;
+        chunk.timestamps[size & mask] = timestamp;
+        size++;
+    }
+
+    private void evictOldest() {
+        pool.release(chunks[head]);
+        chunks[head] = null;
+        head = (head + 1) % chunks.length;
+        chunkCount--;
+        size -= pool.chunkSize;
+        evictedCount += pool.chunkSize;
+    }
+
+    private void addChunk(Chunk chunk) {
+        if (chunkCount == chunks.length) {
+            // Grow the ring, oldest first
+            Chunk[] grown = new Chunk[chunks.length * 2];
+            for (int i = 0; i < chunkCount; i++) {
+                grown[i] = chunks[(head + i) % chunks.length];
+            }
+            chunks = grown;
+            head = 0;
+        }
+        chunks[(head + chunkCount) % chunks.length] = chunk;
+        chunkCount++;
+    }
+
+    /**
+     * @return number of retained frames
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of frames evicted since the store was cleared
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * @param index index of the frame, zero being the oldest retained one
+     * @return value of the frame
+     */
+    public int get(int index) {
+        return chunks[(head + (index >>> shift)) % chunks.length].values[index & mask];
+    }
+
+    /**
+     * @param index index of the frame, zero being the oldest retained one
+     * @return timestamp of the frame
+     */
+    public long getTimestamp(int index) {
+        return chunks[(head + (index >>> shift)) % chunks.length].timestamps[index & mask];
+    }
+
+    /**
+     * Copies the values of the latest frames, oldest first.
+     * If fewer frames are retained than the destination holds, the rest of the destination is left untouched.
+     *
+     * @param destination receives the values
+     * @return number of values copied
+     */
+    public int copyLatest(@NonNull int[] destination) {
+        final int count = Math.min(size, destination.length);
+        int index = size - count;
+        int copied = 0;
+        while (copied < count) {
+            final int offset = index & mask;
+            final int length = Math.min(pool.chunkSize - offset, count - copied);
+            System.arraycopy(chunks[(head + (index >>> shift)) % chunks.length].values, offset, destination, copied, length);
+            index += length;
+            copied += length;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the retained frames chunk by chunk, into chunks from the same pool.
+     *
+     * @return an independent store with the same frames and cap
+     */
+    @NonNull
+    public SignalStore copy() {
+        SignalStore copy = new SignalStore(pool, maxChunks);
+        for (int i = 0; i < chunkCount; i++) {
+            Chunk source = chunks[(head + i) % chunks.length];
+            Chunk chunk = pool.acquire();
+            System.arraycopy(source.values, 0, chunk.values, 0, pool.chunkSize);
+            System.arraycopy(source.timestamps, 0, chunk.timestamps, 0, pool.chunkSize);
+            copy.addChunk(chunk);
+        }
+        copy.size = size;
+        copy.evictedCount = evictedCount;
+        return copy;
+    }
+
+    /**
+     * Removes all frames, returning the chunks to the pool.
+     */
+    public void clear() {
+        for (int i = 0; i < chunkCount; i++) {
+            final int position = (head + i) % chunks.length;
+            pool.release(chunks[position]);
+            chunks[position] = null;
+        }
+        head = 0;
+        chunkCount = 0;
+        size = 0;
+        evictedCount = 0L;
+    }
+
+    static final class Chunk {
+        final int[] values;
+        final long[] timestamps;
+
+        Chunk(int chunkSize) {
+            this.values = new int[chunkSize];
+            this.timestamps = new long[chunkSize];
+        }
+    }
+
+    /**
+     * Recycles chunks between stores; thread-safe, so stores on different threads can share it.
+     */
+    public static class ChunkPool {
+        private final int chunkSize;
+        private final int maxFreeChunks;
+        private final ArrayDeque<Chunk> freeChunks;
+
+        /**
+         * @param chunkSize     frames in a chunk; rounded up to a power of two
+         * @param maxFreeChunks number of released chunks kept for reuse, others are left to the garbage collector
+         */
+        public ChunkPool(int chunkSize, int maxFreeChunks) {
+            this.chunkSize = Integer.highestOneBit(Math.max(chunkSize, 1) * 2 - 1);
+            this.maxFreeChunks = Math.max(maxFreeChunks, 0);
+            this.freeChunks = new ArrayDeque<>();
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        synchronized Chunk acquire() {
+            Chunk chunk = freeChunks.pollLast();
+            return chunk != null ? chunk : new Chunk(chunkSize);
+        }
+
+        synchronized void release(Chunk chunk) {
+            if (freeChunks.size() < maxFreeChunks) {
+                freeChunks.addLast(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package raha.app.morsebuddy.system;
+
+import androidx.annotation.NonNull;
+
+import raha.app.morsebuddy.util.MorseMap;
+
+/**
+ * Incremental morse translator that consumes the signal one sample at a time, while it is being recorded.
+ * <p>
+ * Keeps the length of the current mark (signal on) or space (signal off) run, and an estimate of the morse unit learned from the finished runs.
+ * A letter is committed as soon as the running space is longer than a letter gap, and a word as soon as it is longer than a word gap;
+ * there is no need to wait for the next mark, so a letter appears a couple of units after it ends.
+ * <p>
+ * Committed text is never revised, so early letters might be wrong while the unit is still being learned;
+ * the batch {@link Translator} result of the whole session remains the final one.
+ * Not thread-safe; meant to be fed from a single thread.
+ */
+public class StreamingTranslator {
+    /* Marks kept uncommitted at most; far more than any letter has */
+    private static final int MAX_PENDING_MARKS = 32;
+    /* Marks longer than this many units are dashes */
+    private static final double DASH_THRESHOLD = 2.0;
+    /* Spaces longer than this many units end a letter */
+    private static final double LETTER_GAP = 2.0;
+    /* Spaces longer than this many units end a word */
+    private static final double WORD_GAP = 5.0;
+    /* Weight of a new run in the unit estimate */
+    private static final double UNIT_WEIGHT = 0.25;
+
+    private int baseline;
+    /* True after the first mark, leading space is ignored */
+    private boolean started;
+    /* True if the current run is a mark */
+    private boolean mark;
+    /* Time the current run started at */
+    private long runStart;
+    /* Estimated duration of one morse unit; zero means unknown */
+    private double unit;
+
+    /* Durations of the marks not yet committed, and of the space before each of them */
+    private final long[] marks;
+    private final long[] spaces;
+    private int markCount;
+    /* Number of letters committed to the current word */
+    private int wordLength;
+    private boolean changed;
+
+    private final StringBuilder morseBuilder;
+    private final StringBuilder outputBuilder;
+
+    public StreamingTranslator() {
+        this.marks = new long[MAX_PENDING_MARKS];
+        this.spaces = new long[MAX_PENDING_MARKS];
+        this.morseBuilder = new StringBuilder();
+        this.outputBuilder = new StringBuilder();
+        reset(0);
+    }
+
+    /**
+     * Forgets everything, ready for a new recorder session.
+     *
+     * @param baseline samples above this are marks, others are spaces
+     */
+    public void reset(int baseline) {
+        this.baseline = baseline;
+        this.started = false;
+        this.mark = false;
+        this.runStart = 0L;
+        this.unit = 0.0;
+        this.markCount = 0;
+        this.wordLength = 0;
+        this.changed = false;
+        morseBuilder.setLength(0);
+        outputBuilder.setLength(0);
+    }
+
+    /**
+     * Changes the baseline for the following samples, e.g. as its estimate improves while recording; committed text and the unit are kept.
+     * The running run goes on, and ends at the first sample of the other kind under the new baseline.
+     * Before the first mark has ended, nothing was learned from the old baseline, so the signal starts again at the next mark.
+     *
+     * @param baseline samples above this are marks, others are spaces
+     */
+    public void setBaseline(int baseline) {
+        this.baseline = baseline;
+        if (unit <= 0.0) {
+            started = false;
+        }
+    }
+
+    public int getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Consumes the next sample of the signal.
+     *
+     * @param value sample value, e.g. contrast of a frame
+     * @param time  time of the sample in any increasing unit; frame number, or camera timestamp
+     * @return true if text was committed by this sample
+     */
+    public boolean push(int value, long time) {
+        final boolean isMark = value > baseline;
+        if (!started) {
+            if (isMark) {
+                started = true;
+                mark = true;
+                runStart = time;
+            }
+            return false;
+        }
+        changed = false;
+        if (isMark == mark) {
+            if (!mark) {
+                // Space is running; gaps become unambiguous once they are long enough
+                checkSpace(time - runStart);
+            }
+            return changed;
+        }
+        final long duration = time - runStart;
+        if (mark) {
+            endMark(duration);
+        } else {
+            // Letter and word gaps were already committed while the space was running
+            checkSpace(duration);
+            learn(duration, false);
+            if (markCount == MAX_PENDING_MARKS) {
+                // No room for the space before the next mark; not a morse signal anyway
+                commitMarks();
+            }
+            if (markCount > 0) {
+                spaces[markCount] = duration;
+            }
+        }
+        mark = isMark;
+        runStart = time;
+        return changed;
+    }
+
+    private void endMark(long duration) {
+        learn(duration, true);
+        if (markCount == MAX_PENDING_MARKS) {
+            // Not a morse signal anyway
+            commitMarks();
+        }
+        marks[markCount++] = duration;
+    }
+
+    private void checkSpace(long duration) {
+        if (unit <= 0.0) {
+            return;
+        }
+        if (markCount > 0 && duration > LETTER_GAP * unit) {
+            commitMarks();
+        }
+        if (wordLength > 0 && duration > WORD_GAP * unit) {
+            morseBuilder.append(MorseMap.SIGN_SPACE_7U);
+            outputBuilder.append(' ');
+            wordLength = 0;
+            changed = true;
+        }
+    }
+
+    /**
+     * Moves the unit estimate towards a finished run.
+     * A run much shorter than the estimate means the estimate came from a longer element (e.g. the first mark was a dash), so it restarts from the run;
+     * a very short one is taken as noise.
+     */
+    private void learn(long duration, boolean isMark) {
+        if (unit <= 0.0) {
+            if (isMark) {
+                // First mark is taken as a dot, until a shorter run shows otherwise
+                unit = duration;
+            }
+            return;
+        }
+        if (duration < unit / 4.0) {
+            return;
+        }
+        if (duration < unit / 2.0) {
+            unit = duration;
+            return;
+        }
+        final double units = duration / unit;
+        final double target;
+        if (units < 2.0) {
+            target = duration;
+        } else if (isMark || units < WORD_GAP) {
+            target = duration / 3.0;
+        } else {
+            // Word gaps are too irregular to learn from
+            return;
+        }
+        unit += UNIT_WEIGHT * (target - unit);
+    }
+
+    /**
+     * Commits the pending marks with the current unit estimate.
+     * Usually they form a single letter; but spaces between them are judged again, since the estimate might have shrunk since they were seen.
+     */
+    private void commitMarks() {
+        int start = -1;
+        for (int i = 0; i < markCount; i++) {
+            if (i > 0 && spaces[i] > LETTER_GAP * unit) {
+                commitLetter(start);
+                if (spaces[i] > WORD_GAP * unit) {
+                    morseBuilder.append(MorseMap.SIGN_SPACE_7U);
+                    outputBuilder.append(' ');
+                    wordLength = 0;
+                }
+                start = -1;
+            }
+            if (start < 0) {
+                if (wordLength > 0) {
+                    morseBuilder.append(MorseMap.SIGN_SPACE_3U);
+                }
+                start = morseBuilder.length();
+            }
+            morseBuilder.append(marks[i] > DASH_THRESHOLD * unit ? MorseMap.SIGN_DASH : MorseMap.SIGN_DOT);
+        }
+        commitLetter(start);
+        markCount = 0;
+        changed = true;
+    }
+
+    private void commitLetter(int start) {
+        Character letter = MorseMap.morseToLetter(morseBuilder.substring(start));
+        if (letter != null) {
+            outputBuilder.append(letter);
+        }
+        wordLength++;
+    }
+
+    /**
+     * @return estimated duration of one morse unit, in the time unit of the samples; zero if not known yet
+     */
+    public double getUnit() {
+        return unit;
+    }
+
+    @NonNull
+    public String getMorse() {
+        return morseBuilder.toString();
+    }
+
+    @NonNull
+    public String getOutput() {
+        return outputBuilder.toString().trim();
+    }
+
+    /**
+     * @param submitCode submit code of the session
+     * @return committed text so far, as a successful result
+     */
+    @NonNull
+    public Translator.Result getResult(int submitCode) {
+        return new Translator.Result(submitCode, baseline, true, null, getMorse(), getOutput());
+    }
+}
@@ -6,13 +6,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.Arrays;
-
-import raha.app.morsebuddy.util.MorseMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The morse translator that takes a byte-array representing recorded signal of a session, processes it and translates to produce Morse and equivalent text.
  *
  * Uses a {@link ArrayNormalizer} to transform signal array to contain only the integers defined by {@link IntegerRepresentation}.
+ * <p>
+ * Stateless; a translator may be shared by any number of concurrent translations.
+ * A translation given a {@link CancellationToken} is abandoned at the next stage (runs, normalization, result) after the token is cancelled,
+ * or within a stage by its loops, see {@link CancellationToken#poll(int)}.
+ * A translation given a {@link ForkJoinPool} splits long signals in chunks, see {@link ChunkedTranslation}; same result as without.
  */
 public class Translator {
     private static final String TAG = "Translator";
@@ -40,78 +45,378 @@ public class Translator {
      * @return result for the translation
      */
     @Nullable
-    public synchronized Result resolve(int submitCode, @NonNull int[] givenArray, int baseline) {
+    public Result resolve(int submitCode, @NonNull int[] givenArray, int baseline) {
+        return resolve(submitCode, givenArray, null, baseline);
+    }
+
+    /**
+     * Translates the given signal array and produce morse/equivalent text result.
+     * If timestamps are given, durations of the elements are measured in nanoseconds from the timestamps instead of number of frames.
+     * These durations are handed to the {@link ArrayNormalizer} in microseconds.
+     * <b>Important:</b> This is a blocking method, so invocation must be done from background threads.
+     * @param submitCode submit code for the one time task
+     * @param givenArray given signal array
+     * @param timestamps camera timestamps (nanoseconds) of each element in the signal array, or null to count frames
+     * @param baseline given baseline for translation
+     * @return result for the translation
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull int[] givenArray, @Nullable long[] timestamps, int baseline) {
+        return resolve(submitCode, SignalStore.of(givenArray, timestamps), timestamps != null, baseline);
+    }
+
+    /**
+     * Translates the given recorded signal and produce morse/equivalent text result.
+     * The signal is read in place, chunk by chunk; it is never flattened nor modified.
+     * If timestamps are used, durations of the elements are measured in nanoseconds from the timestamps instead of number of frames.
+     * These durations are handed to the {@link ArrayNormalizer} in microseconds.
+     * <b>Important:</b> This is a blocking method, so invocation must be done from background threads.
+     * @param submitCode submit code for the one time task
+     * @param signal given recorded signal
+     * @param useTimestamps true if timestamps of the signal are camera timestamps (nanoseconds), false to count frames
+     * @param baseline given baseline for translation
+     * @return result for the translation
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull SignalStore signal, boolean useTimestamps, int baseline) {
+        return resolve(submitCode, signal, useTimestamps, baseline, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link Translator#resolve(int, SignalStore, boolean, int)}, abandoned once the token is cancelled.
+     *
+     * @param token cancels the translation
+     * @return result for the translation, or null if cancelled
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull SignalStore signal, boolean useTimestamps, int baseline, @NonNull CancellationToken token) {
+        return resolve(submitCode, signal, useTimestamps, baseline, token, null);
+    }
+
+    /**
+     * Same as {@link Translator#resolve(int, SignalStore, boolean, int, CancellationToken)}; runs, normalization passes and decoding of long signals are split in chunks,
+     * translated in parallel on the pool.
+     *
+     * @param pool runs the chunks; null to translate on the calling thread only
+     * @return result for the translation, or null if cancelled
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull SignalStore signal, boolean useTimestamps, int baseline, @NonNull CancellationToken token, @Nullable ForkJoinPool pool) {
+        if (token.isCancelled()) {
+            return null;
+        }
         Result result = new Result(submitCode, baseline, false, null, null, null);
-        // Subtracting baseline from each element
-        // Also leave if given array is all zero
-        boolean nonZeroFound = false;
-        for (int i = 0; i < givenArray.length; ++i) {
-            givenArray[i] = Math.max(givenArray[i] - baseline, 0);
-            if (givenArray[i] != 0) {
-                nonZeroFound = true;
+        try {
+            // Leave if there is no signal at all
+            int[] normalizableArray = pool == null
+                    ? toRuns(signal, useTimestamps, baseline, token)
+                    : ChunkedTranslation.toRuns(signal, useTimestamps, baseline, token, pool);
+            if (normalizableArray == null) {
+                return result;
             }
+            return translateRuns(result, normalizableArray, token, pool);
+        } catch (CancellationException e) {
+            Log.d(TAG, "translation cancelled.");
+            return null;
         }
-        if (!nonZeroFound) {
-            return result;
+    }
+
+    /**
+     * Translates the given run-length signal and produce morse/equivalent text result.
+     * Works on the segments of the signal, never on single frames; the signal must be complete, i.e. a {@link RunLengthSignal#copy()}.
+     * If timestamps are used, durations of the elements are measured in nanoseconds from the timestamps instead of number of frames.
+     * <b>Important:</b> This is a blocking method, so invocation must be done from background threads.
+     * @param submitCode submit code for the one time task
+     * @param signal given recorded signal
+     * @param useTimestamps true if timestamps of the signal are camera timestamps (nanoseconds), false to count frames
+     * @param baseline given baseline for translation
+     * @return result for the translation
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull RunLengthSignal signal, boolean useTimestamps, int baseline) {
+        return resolve(submitCode, signal, useTimestamps, baseline, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link Translator#resolve(int, RunLengthSignal, boolean, int)}, abandoned once the token is cancelled.
+     *
+     * @param token cancels the translation
+     * @return result for the translation, or null if cancelled
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull RunLengthSignal signal, boolean useTimestamps, int baseline, @NonNull CancellationToken token) {
+        if (token.isCancelled()) {
+            return null;
         }
+        Result result = new Result(submitCode, baseline, false, null, null, null);
+        try {
+            // Leave if there is no signal at all
+            int[] normalizableArray = toRuns(signal, useTimestamps, baseline, token);
+            if (normalizableArray == null) {
+                return result;
+            }
+            return translateRuns(result, normalizableArray, token, null);
+        } catch (CancellationException e) {
+            Log.d(TAG, "translation cancelled.");
+            return null;
+        }
+    }
+
+    /**
+     * Translates the indexed session and produce morse/equivalent text result.
+     * Runs are taken from the index, so re-translating a session with another baseline does not walk its frames again.
+     * <b>Important:</b> This is a blocking method, so invocation must be done from background threads.
+     * @param submitCode submit code for the one time task
+     * @param index index of the recorded session
+     * @param baseline given baseline for translation
+     * @return result for the translation
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull BaselineIndex index, int baseline) {
+        return resolve(submitCode, index, baseline, CancellationToken.NONE);
+    }
 
-        // Intentional delay
+    /**
+     * Same as {@link Translator#resolve(int, BaselineIndex, int)}, abandoned once the token is cancelled.
+     *
+     * @param token cancels the translation
+     * @return result for the translation, or null if cancelled
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull BaselineIndex index, int baseline, @NonNull CancellationToken token) {
+        return resolve(submitCode, index, baseline, token, null);
+    }
+
+    /**
+     * Same as {@link Translator#resolve(int, BaselineIndex, int, CancellationToken)}; runs, normalization passes and decoding of long signals are split in chunks,
+     * translated in parallel on the pool.
+     *
+     * @param pool runs the chunks; null to translate on the calling thread only
+     * @return result for the translation, or null if cancelled
+     */
+    @Nullable
+    public Result resolve(int submitCode, @NonNull BaselineIndex index, int baseline, @NonNull CancellationToken token, @Nullable ForkJoinPool pool) {
+        if (token.isCancelled()) {
+            return null;
+        }
+        Result result = new Result(submitCode, baseline, false, null, null, null);
         try {
-            Thread.sleep(4000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            // Leave if there is no signal at all
+            int[] runs = index.getRuns(baseline, token, pool);
+            if (runs == null) {
+                return result;
+            }
+            // Runs of the index are shared
+            return translateRuns(result, runs.clone(), token, pool);
+        } catch (CancellationException e) {
+            Log.d(TAG, "translation cancelled.");
+            return null;
         }
+    }
 
-        // Remove leading and trailing space
+    /**
+     * Converts the recorded frames into runs of signal (positive) and space (negative), between the first and the last signal frame.
+     *
+     * @return the runs, or null if no frame is above the baseline
+     */
+    @Nullable
+    static int[] toRuns(@NonNull SignalStore signal, boolean useTimestamps, int baseline) {
+        return toRuns(signal, useTimestamps, baseline, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link Translator#toRuns(SignalStore, boolean, int)}, abandoned once the token is cancelled.
+     *
+     * @throws CancellationException if cancelled
+     */
+    @Nullable
+    static int[] toRuns(@NonNull SignalStore signal, boolean useTimestamps, int baseline, @NonNull CancellationToken token) {
+        // Elements above the baseline are signal, others are space
+        final int size = signal.size();
         int startIndex = 0;
-        while (startIndex < givenArray.length) {
-            if (givenArray[startIndex] > 0) {
+        while (startIndex < size) {
+            token.poll(startIndex);
+            if (signal.get(startIndex) > baseline) {
                 break;
             }
             startIndex++;
         }
-        int endIndex = givenArray.length - 1;
+        if (startIndex == size) {
+            return null;
+        }
+
+        // Remove leading and trailing space
+        int endIndex = size - 1;
         while (endIndex >= 0) {
-            if (givenArray[endIndex] > 0) {
+            token.poll(endIndex);
+            if (signal.get(endIndex) > baseline) {
                 break;
             }
             endIndex--;
         }
-        int[] trimmedArray = Arrays.copyOfRange(givenArray, startIndex, endIndex);
 
-        Log.d(TAG, "trimmed array=" + Arrays.toString(trimmedArray));
+        Log.d(TAG, "trimmed signal=[" + startIndex + ", " + endIndex + ")");
 
+        return toRuns(signal, useTimestamps, baseline, startIndex, endIndex, token);
+    }
+
+    /**
+     * Runs of the frames from startIndex (a signal frame) to endIndex (exclusive); the duration of each frame is until the next one.
+     * Runs of consecutive ranges, each starting with a signal frame, concatenate to the runs of the whole range.
+     *
+     * @return the runs; empty if the range is
+     * @throws CancellationException if cancelled
+     */
+    @NonNull
+    static int[] toRuns(@NonNull SignalStore signal, boolean useTimestamps, int baseline, int startIndex, int endIndex, @NonNull CancellationToken token) {
         // Preparing required array for handing to normalizer
-        int[] newArray = new int[trimmedArray.length];
+        int[] newArray = new int[Math.min(endIndex - startIndex, 64)];
         int index = 0;
         boolean lastWasZero = false;
-        int count = 0;
-        for (int value : trimmedArray) {
-            if (value == 0) {
+        long count = 0;
+        for (int i = startIndex; i < endIndex; i++) {
+            token.poll(i);
+            final boolean zero = signal.get(i) <= baseline;
+            // Duration of this frame; a single frame, or nanoseconds until the next frame
+            final long duration = useTimestamps ? signal.getTimestamp(i + 1) - signal.getTimestamp(i) : 1;
+            if (zero) {
                 // Means space
                 if (lastWasZero) {
-                    --count;
+                    count -= duration;
                 } else {
-                    newArray[index++] = count;
+                    newArray = ensureCapacity(newArray, index);
+                    newArray[index++] = toRunLength(count, useTimestamps);
                     lastWasZero = true;
-                    count = -1;
+                    count = -duration;
                 }
             } else {
                 // Means elements
                 if (lastWasZero) {
-                    newArray[index++] = count;
+                    newArray = ensureCapacity(newArray, index);
+                    newArray[index++] = toRunLength(count, useTimestamps);
                     lastWasZero = false;
-                    count = 1;
+                    count = duration;
                 } else {
-                    ++count;
+                    count += duration;
                 }
             }
         }
         // Last element
-        if (index < newArray.length) {
-            newArray[index++] = count;
+        if (index < endIndex - startIndex) {
+            newArray = ensureCapacity(newArray, index);
+            newArray[index++] = toRunLength(count, useTimestamps);
+        }
+        return Arrays.copyOf(newArray, index);
+    }
+
+    /**
+     * Converts the run-length signal into runs of signal (positive) and space (negative), between the first and the last signal frame.
+     * Same as {@link Translator#toRuns(SignalStore, boolean, int)} for the raw frames, when {@link RunLengthSignal#isExact(int)}.
+     *
+     * @return the runs, or null if no frame is above the baseline
+     */
+    @Nullable
+    static int[] toRuns(@NonNull RunLengthSignal signal, boolean useTimestamps, int baseline) {
+        return toRuns(signal, useTimestamps, baseline, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link Translator#toRuns(RunLengthSignal, boolean, int)}, abandoned once the token is cancelled.
+     *
+     * @throws CancellationException if cancelled
+     */
+    @Nullable
+    static int[] toRuns(@NonNull RunLengthSignal signal, boolean useTimestamps, int baseline, @NonNull CancellationToken token) {
+        final int segments = signal.segmentCount();
+        int first = 0;
+        while (first < segments) {
+            token.poll(first);
+            if (isSignal(signal, first, baseline)) {
+                break;
+            }
+            first++;
+        }
+        if (first == segments) {
+            return null;
+        }
+        int last = segments - 1;
+        while (!isSignal(signal, last, baseline)) {
+            token.poll(last);
+            last--;
+        }
+
+        int[] newArray = new int[Math.min(last - first + 1, 64)];
+        int index = 0;
+        boolean lastWasZero = false;
+        long count = 0;
+        long frames = 0;
+        for (int i = first; i <= last; i++) {
+            token.poll(i);
+            final boolean zero = !isSignal(signal, i, baseline);
+            int segmentFrames = signal.count(i);
+            long duration;
+            if (i < last) {
+                // A number of frames, or nanoseconds until the next segment
+                duration = useTimestamps ? signal.timestamp(i + 1) - signal.timestamp(i) : segmentFrames;
+            } else {
+                // Last signal frame is left out, as it is for raw frames
+                segmentFrames--;
+                if (segmentFrames == 0) {
+                    break;
+                }
+                duration = useTimestamps ? signal.lastTimestamp(i) - signal.timestamp(i) : segmentFrames;
+            }
+            frames += segmentFrames;
+            if (zero) {
+                // Means space
+                if (lastWasZero) {
+                    count -= duration;
+                } else {
+                    newArray = ensureCapacity(newArray, index);
+                    newArray[index++] = toRunLength(count, useTimestamps);
+                    lastWasZero = true;
+                    count = -duration;
+                }
+            } else {
+                // Means elements
+                if (lastWasZero) {
+                    newArray = ensureCapacity(newArray, index);
+                    newArray[index++] = toRunLength(count, useTimestamps);
+                    lastWasZero = false;
+                    count = duration;
+                } else {
+                    count += duration;
+                }
+            }
+        }
+        // Last element
+        if (frames > 0) {
+            newArray = ensureCapacity(newArray, index);
+            newArray[index++] = toRunLength(count, useTimestamps);
+        }
+        return Arrays.copyOf(newArray, index);
+    }
+
+    /* Raw frames are compared as they are; a run interior as a whole, by the middle of its range if the baseline falls within */
+    private static boolean isSignal(RunLengthSignal signal, int segment, int baseline) {
+        final int min = signal.minValue(segment);
+        if (min > baseline) {
+            return true;
+        }
+        final int max = signal.maxValue(segment);
+        if (max <= baseline) {
+            return false;
         }
-        int[] normalizableArray = Arrays.copyOf(newArray, index);
+        return ((long) min + max) / 2 > baseline;
+    }
+
+    @Nullable
+    private Result translateRuns(Result result, int[] normalizableArray, CancellationToken token, @Nullable ForkJoinPool pool) {
+        if (token.isCancelled()) {
+            Log.d(TAG, "translation cancelled after runs.");
+            return null;
+        }
+
         // Ensuring array contains both negative and positive integers.
         // Then size must be >= 2.
         if (normalizableArray.length < 2) {
@@ -121,52 +426,65 @@ public class Translator {
         Log.d(TAG, "normalizable" + Arrays.toString(normalizableArray));
 
         // Normalize
-        normalizer.reset();
-        int[] normalizedArray = normalizer.normalize(normalizableArray);
-
-        // Building morse
-        StringBuilder morseBuilder = new StringBuilder();
-        for ( Integer integer : normalizedArray) {
-            if (integer == Translator.IntegerRepresentation.MINUS_1) {
-                morseBuilder.append(MorseMap.SIGN_SPACE_1U);
-            } else if (integer == Translator.IntegerRepresentation.MINUS_3) {
-                morseBuilder.append(MorseMap.SIGN_SPACE_3U);
-            } else if (integer == Translator.IntegerRepresentation.MINUS_7) {
-                morseBuilder.append(MorseMap.SIGN_SPACE_7U);
-            } else if (integer == Translator.IntegerRepresentation.PLUS_1) {
-                morseBuilder.append(MorseMap.SIGN_DOT);
-            } else if (integer == Translator.IntegerRepresentation.PLUS_3) {
-                morseBuilder.append(MorseMap.SIGN_DASH);
-            }
+        int[] normalizedArray = normalizer.normalize(normalizableArray, token, pool);
+        if (token.isCancelled()) {
+            Log.d(TAG, "translation cancelled after normalization.");
+            return null;
         }
 
-        // Converting into text
-        StringBuilder outputBuilder = new StringBuilder();
-        String[] morseWords = morseBuilder.toString().split(MorseMap.SIGN_SPACE_7U);
-        for (String morseWord : morseWords) {
-            String[] morseChars = morseWord.split(MorseMap.SIGN_SPACE_3U);
-            for (String morseChar : morseChars) {
-                Character asciiChar = MorseMap.morseToLetter(morseChar);
-                if (asciiChar != null) {
-                    outputBuilder.append(asciiChar);
-                }
-            }
-            outputBuilder.append(' ');
-        }
-
-        // Prepare final result
+        // Prepare final result; morse and text are rendered when asked for
         result.success = true;
-        result.array = normalizedArray;
-        result.morse = morseBuilder.toString();
-        result.output = outputBuilder.toString().trim();
+        result.symbolCount = normalizedArray.length;
+        if (pool == null || normalizedArray.length < 2 * ChunkedTranslation.MIN_CHUNK_SYMBOLS) {
+            result.symbols = PackedSymbols.pack(normalizedArray);
+            return result;
+        }
+        // Long text is decoded in parallel now, rather than at once on the thread showing it
+        // Speedup against the sequential path is measured by ChunkedTranslationTest#benchmark_chunkedAgainstSequential
+        result.symbols = ChunkedTranslation.pack(normalizedArray, token, pool);
+        result.output = ChunkedTranslation.decode(normalizedArray, token, pool);
         return result;
     }
 
+    /**
+     * Runs are far fewer than frames, so the run array grows only as needed.
+     */
+    static int[] ensureCapacity(int[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(array.length * 2, 16));
+    }
+
+    /**
+     * Converts an accumulated duration to the run length handed to the {@link ArrayNormalizer}.
+     *
+     * @param count accumulated duration; positive for elements, negative for spaces
+     * @param nanos true if count is in nanoseconds, false if in frames
+     * @return run length in frames, or in microseconds (never zero for a non-empty run)
+     */
+    static int toRunLength(long count, boolean nanos) {
+        if (!nanos) {
+            return (int) count;
+        }
+        long micros = Math.min(Math.abs(count) / 1000L, Integer.MAX_VALUE);
+        if (count != 0 && micros == 0) {
+            // Repeated camera timestamps may produce runs shorter than a microsecond
+            micros = 1;
+        }
+        return (int) (count < 0 ? -micros : micros);
+    }
+
+    /**
+     * Result of a translation. Normalized symbols are kept packed, see {@link PackedSymbols}; morse and text are rendered from them on first request, and cached.
+     * So a result discarded unread costs a few longs, and kept results hold no strings until shown.
+     * Results about to be shown are rendered on the thread producing them, see {@link Result#render()}, so the main thread only reads strings.
+     */
     public static class Result {
         private final int submitCode;
         private final int baseline;
         private boolean success;
-        private int[] array;
+        /* Packed normalized symbols, null if none */
+        private long[] symbols;
+        private int symbolCount;
+        /* Rendered on first request, unless given */
         private String morse;
         private String output;
 
@@ -174,11 +492,33 @@ public class Translator {
             this.submitCode = submitCode;
             this.success = success;
             this.baseline = baseline;
-            this.array = array;
+            this.symbols = array == null ? null : PackedSymbols.pack(array);
+            this.symbolCount = array == null ? 0 : array.length;
             this.morse = morse;
             this.output = output;
         }
 
+        private Result(int submitCode, @NonNull Result result) {
+            this.submitCode = submitCode;
+            this.success = result.success;
+            this.baseline = result.baseline;
+            this.symbols = result.symbols;
+            this.symbolCount = result.symbolCount;
+            this.morse = result.morse;
+            this.output = result.output;
+        }
+
+        /**
+         * Same result, for another submission; e.g. a result taken from cache.
+         *
+         * @param submitCode submit code of the new submission
+         * @return a result sharing the content of this one
+         */
+        @NonNull
+        public Result withSubmitCode(int submitCode) {
+            return new Result(submitCode, this);
+        }
+
         public boolean isSuccess() {
             return success;
         }
@@ -187,22 +527,50 @@ public class Translator {
             return submitCode;
         }
 
+        /**
+         * @return normalized array, unpacked on each call; null if none
+         */
         public int[] getArray() {
-            return array;
+            return symbols == null ? null : PackedSymbols.unpack(symbols, symbolCount);
         }
 
         public int getBaseline() {
             return baseline;
         }
 
+        /**
+         * @return morse string; rendered from the symbols on first call, if not given
+         */
         public String getMorse() {
+            // Strings are immutable, a concurrent first call at worst renders twice
+            if (morse == null && symbols != null) {
+                morse = MorseDecoder.render(symbols, symbolCount);
+            }
             return morse;
         }
 
+        /**
+         * @return text; decoded from the symbols on first call, if not given
+         */
         public String getOutput() {
+            if (output == null && symbols != null) {
+                output = MorseDecoder.get().decode(symbols, symbolCount);
+            }
             return output;
         }
 
+        /**
+         * Renders morse and text now, unless already done; read straight from the packed symbols.
+         *
+         * @return this result
+         */
+        @NonNull
+        public Result render() {
+            getMorse();
+            getOutput();
+            return this;
+        }
+
         @NonNull
         @Override
         public String toString() {
@@ -210,15 +578,41 @@ public class Translator {
                     "submitCode=" + submitCode +
                     ", baseline=" + baseline +
                     ", success=" + success +
-                    ", morse='" + morse + '\'' +
-                    ", output='" + output + '\'' +
+                    ", morse='" + getMorse() + '\'' +
+                    ", output='" + getOutput() + '\'' +
                     '}';
         }
     }
 
+    /**
+     * Normalizers are shared by concurrent translations; they must keep no state between normalizations.
+     */
     public interface ArrayNormalizer {
         @NonNull
         int[] normalize(@NonNull int[] source);
-        void reset();
+
+        /**
+         * Same as {@link ArrayNormalizer#normalize(int[])}, abandoned once the token is cancelled; long loops check it, see {@link CancellationToken#poll(int)}.
+         * A normalizer not overriding this is abandoned only after it is done.
+         *
+         * @throws CancellationException if cancelled
+         */
+        @NonNull
+        default int[] normalize(@NonNull int[] source, @NonNull CancellationToken token) {
+            return normalize(source);
+        }
+
+        /**
+         * Same as {@link ArrayNormalizer#normalize(int[], CancellationToken)}; passes over long arrays may be split in chunks,
+         * in parallel on the pool, see {@link ChunkedTranslation}.
+         * A normalizer not overriding this normalizes on the calling thread only.
+         *
+         * @param pool runs the chunks; null to normalize on the calling thread only
+         * @throws CancellationException if cancelled
+         */
+        @NonNull
+        default int[] normalize(@NonNull int[] source, @NonNull CancellationToken token, @Nullable ForkJoinPool pool) {
+            return normalize(source, token);
+        }
     }
 }
@@ -0,0 +1,258 @@
+package raha.app.morsebuddy.system;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Takes an integer array as input, same as {@link KMeansNormalizer}, and outputs an array which contains only integers defined in {@link Translator.IntegerRepresentation}.
+ * <p>
+ * Hand-keyed morse speeds up and slows down within a message, so fixed clusters mislabel elements at the ends of it.
+ * Here the unit is hidden and allowed to drift: the hidden state is the unit, on a geometric grid, and it moves by at most one step per element.
+ * Each element is the unit times its class (1 or 3 for marks, 1, 3 or 7 for spaces), with log-normal timing error; classes have fixed priors.
+ * The most likely units and classes of the whole message are decoded by Viterbi, in O(n * states).
+ * <p>
+ * Decoding is incremental, see {@link Stream}; a batch normalization is a stream over the given array, with the unit grid spanning its durations.
+ */
+public class ViterbiNormalizer implements Translator.ArrayNormalizer {
+    private static final String TAG = "ViterbiNormalizer";
+    /* Ratio between neighboring units of the grid */
+    private static final double UNIT_STEP = 1.04;
+    /* Most units in the grid; the step grows if the range needs more */
+    private static final int MAX_UNITS = 96;
+
+    /**
+     * The user must ensure that the sourceArray contains <b>both positive and negative integer (except zero)</b>, where positive represents a dash or dot, and negative represents a space.
+     * If positive or negative number is absent, then it will raise exception.
+     *
+     * @param sourceArray given array containing only positive and negative integers.
+     * @return normalized array.
+     */
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray) {
+        return normalize(sourceArray, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link ViterbiNormalizer#normalize(int[])}; a step costs a pass over the whole grid, so the token is checked at every element.
+     */
+    @NonNull
+    @Override
+    public int[] normalize(@NonNull int[] sourceArray, @NonNull CancellationToken token) {
+        Log.d(TAG, "before normalization=" + Arrays.toString(sourceArray));
+
+        int markCount = 0;
+        int spaceCount = 0;
+        long shortest = Long.MAX_VALUE;
+        long longest = 0L;
+        for (int i = 0; i < sourceArray.length; i++) {
+            token.poll(i);
+            final int integer = sourceArray[i];
+            if (integer > 0) {
+                markCount++;
+            } else if (integer < 0) {
+                spaceCount++;
+            }
+            shortest = Math.min(shortest, Math.abs((long) integer));
+            longest = Math.max(longest, Math.abs((long) integer));
+        }
+        // Raise exception if both negative or positive values not found
+        if (markCount == 0 || spaceCount == 0 || markCount + spaceCount != sourceArray.length) {
+            throw new IllegalArgumentException("Source array must contain both negative and positive integers (except zero).");
+        }
+
+        // Unit is at most the longest element (all dots), at least a half of the shortest one (timing error)
+        Stream stream = new Stream(shortest / 2.0, longest);
+        for (int integer : sourceArray) {
+            token.throwIfCancelled();
+            stream.append(integer);
+        }
+        int[] normalized = stream.decode();
+
+        Log.d(TAG, "normalized=" + Arrays.toString(normalized) + " unit=" + stream.getUnit());
+
+        return normalized;
+    }
+
+    /**
+     * Viterbi decoder fed one element at a time, e.g. while the signal is being recorded.
+     * The best path of everything appended so far is available at any time; earlier labels may change as later elements arrive.
+     * Not thread-safe.
+     */
+    public static class Stream {
+        private static final int[] MARK_UNITS = new int[]{Translator.IntegerRepresentation.PLUS_1, Translator.IntegerRepresentation.PLUS_3};
+        private static final int[] SPACE_UNITS = new int[]{-Translator.IntegerRepresentation.MINUS_1, -Translator.IntegerRepresentation.MINUS_3, -Translator.IntegerRepresentation.MINUS_7};
+        /* Log priors of the classes, in the order above; most spaces are between elements */
+        private static final double[] MARK_PRIORS = new double[]{Math.log(0.5), Math.log(0.5)};
+        private static final double[] SPACE_PRIORS = new double[]{Math.log(0.6), Math.log(0.3), Math.log(0.1)};
+        /* Log probabilities of the unit staying, or moving one step either way */
+        private static final double STAY = Math.log(0.6);
+        private static final double MOVE = Math.log(0.2);
+        /* Relative timing error of hand keying, as a standard deviation of the log duration */
+        private static final double SIGMA = 0.25;
+
+        /* Units of the grid, and their logs */
+        private final double[] units;
+        private final double[] logUnits;
+        /* Score of the best path ending in each unit, and a scratch for the next one */
+        private double[] scores;
+        private double[] nextScores;
+        /* Per element and unit: best class, and the step the unit came from (-1, 0, 1) */
+        private byte[] classes;
+        private byte[] moves;
+        /* Signs of the elements */
+        private boolean[] signs;
+        private int count;
+
+        /**
+         * @param minUnit shortest unit to consider, in the unit of the elements
+         * @param maxUnit longest unit to consider
+         */
+        public Stream(double minUnit, double maxUnit) {
+            final double low = Math.max(minUnit, 1e-3);
+            final double high = Math.max(maxUnit, low);
+            final double range = Math.log(high / low);
+            int size = (int) Math.ceil(range / Math.log(UNIT_STEP)) + 1;
+            final double step;
+            if (size > MAX_UNITS) {
+                size = MAX_UNITS;
+                step = range / (size - 1);
+            } else {
+                step = Math.log(UNIT_STEP);
+            }
+            this.units = new double[size];
+            this.logUnits = new double[size];
+            for (int u = 0; u < size; u++) {
+                logUnits[u] = Math.log(low) + u * step;
+                units[u] = Math.exp(logUnits[u]);
+            }
+            this.scores = new double[size];
+            this.nextScores = new double[size];
+            this.classes = new byte[16 * size];
+            this.moves = new byte[16 * size];
+            this.signs = new boolean[16];
+            this.count = 0;
+        }
+
+        /**
+         * Forgets the elements, ready for a new message.
+         */
+        public void reset() {
+            Arrays.fill(scores, 0.0);
+            count = 0;
+        }
+
+        /**
+         * One Viterbi step.
+         *
+         * @param element duration of a mark (positive) or a space (negative); zero is ignored
+         */
+        public void append(int element) {
+            if (element == 0) {
+                return;
+            }
+            final int size = units.length;
+            if (signs.length == count) {
+                signs = Arrays.copyOf(signs, count * 2);
+                classes = Arrays.copyOf(classes, count * 2 * size);
+                moves = Arrays.copyOf(moves, count * 2 * size);
+            }
+            final boolean isMark = element > 0;
+            final int[] candidates = isMark ? MARK_UNITS : SPACE_UNITS;
+            final double[] priors = isMark ? MARK_PRIORS : SPACE_PRIORS;
+            final double duration = Math.abs((double) element);
+            final double logDuration = Math.log(duration);
+            // Durations are whole frames or microseconds; rounding widens the error of short ones
+            final double quantization = 0.5 / duration;
+            final double variance = SIGMA * SIGMA + quantization * quantization;
+            final int offset = count * size;
+
+            for (int u = 0; u < size; u++) {
+                // Best previous unit: the same one or a neighbor
+                int move = 0;
+                double best = Double.NEGATIVE_INFINITY;
+                if (count == 0) {
+                    best = 0.0;
+                } else {
+                    for (int m = -1; m <= 1; m++) {
+                        final int previous = u - m;
+                        if (previous < 0 || previous >= size) {
+                            continue;
+                        }
+                        final double candidate = scores[previous] + (m == 0 ? STAY : MOVE);
+                        if (candidate > best) {
+                            best = candidate;
+                            move = m;
+                        }
+                    }
+                }
+                // Best class for this unit
+                int bestClass = 0;
+                double bestEmission = Double.NEGATIVE_INFINITY;
+                for (int c = 0; c < candidates.length; c++) {
+                    final double error = logDuration - logUnits[u] - Math.log(candidates[c]);
+                    final double emission = priors[c] - error * error / (2.0 * variance);
+                    if (emission > bestEmission) {
+                        bestEmission = emission;
+                        bestClass = c;
+                    }
+                }
+                nextScores[u] = best + bestEmission;
+                classes[offset + u] = (byte) bestClass;
+                moves[offset + u] = (byte) move;
+            }
+            final double[] swap = scores;
+            scores = nextScores;
+            nextScores = swap;
+            signs[count++] = isMark;
+        }
+
+        /**
+         * @return number of elements appended
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return unit at the end of the best path; zero if nothing appended
+         */
+        public double getUnit() {
+            return count == 0 ? 0.0 : units[bestUnit()];
+        }
+
+        /**
+         * Traces the best path back from its end.
+         *
+         * @return normalized elements appended so far, as {@link Translator.IntegerRepresentation}
+         */
+        @NonNull
+        public int[] decode() {
+            final int[] normalized = new int[count];
+            if (count == 0) {
+                return normalized;
+            }
+            final int size = units.length;
+            int u = bestUnit();
+            for (int i = count - 1; i >= 0; i--) {
+                final int c = classes[i * size + u];
+                normalized[i] = signs[i] ? MARK_UNITS[c] : -SPACE_UNITS[c];
+                u -= moves[i * size + u];
+            }
+            return normalized;
+        }
+
+        private int bestUnit() {
+            int best = 0;
+            for (int u = 1; u < units.length; u++) {
+                if (scores[u] > scores[best]) {
+                    best = u;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
+import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -25,6 +26,8 @@ import raha.app.morsebuddy.R;
 import raha.app.morsebuddy.camera.CameraHelper;
 import raha.app.morsebuddy.camera.SignalRecorder;
 import raha.app.morsebuddy.ui.view.GraphView;
+import raha.app.morsebuddy.ui.view.TargetView;
+import raha.app.morsebuddy.util.Constants;
 
 public class LivePreviewActivity extends AppCompatActivity {
     private static final String TAG = "LivePreviewActivity";
@@ -75,6 +78,7 @@ public class LivePreviewActivity extends AppCompatActivity {
         textMorse.setMovementMethod(new ScrollingMovementMethod());
         textMorse.setHorizontallyScrolling(true);
         TextView textOutput = findViewById(R.id.text_output);
+        TextView textChannels = findViewById(R.id.text_channels);
         CircularProgressIndicator loading = findViewById(R.id.loading_bar);
         loading.hide();
 
@@ -82,16 +86,17 @@ public class LivePreviewActivity extends AppCompatActivity {
         btnFrameRate.setOnClickListener(v -> {
             // Since recorder control methods are being directly called, status should be retrieved from recorder directly;
             // For example, viewModel.getFrameRate.getValue() might return inaccurate value, since they are updated from background thread.
-            if (viewModel.getSignalRecorder().getFrameRate() == SignalRecorder.FrameRate.FPS_60) {
-                viewModel.getSignalRecorder().setFrameRate(SignalRecorder.FrameRate.FPS_30);
-            } else if (viewModel.getSignalRecorder().getFrameRate() == SignalRecorder.FrameRate.FPS_30) {
-                viewModel.getSignalRecorder().setFrameRate(SignalRecorder.FrameRate.FPS_60);
-            }
+            // Cycles through all frame rates; the camera delivers the closest rate it supports
+            SignalRecorder.FrameRate[] frameRates = SignalRecorder.FrameRate.values();
+            SignalRecorder.FrameRate current = viewModel.getSignalRecorder().getFrameRate();
+            viewModel.getSignalRecorder().setFrameRate(frameRates[(current.ordinal() + 1) % frameRates.length]);
         });
+        TargetView targetView = findViewById(R.id.target_view);
         MaterialButton btnLens = findViewById(R.id.btn_lens);
         btnLens.setOnClickListener(v -> {
             try {
                 cameraHelper.switchLensFacing();
+                targetView.setFrontFacing(cameraHelper.isFrontFacing());
             } catch (CameraInfoUnavailableException e) {
                 // Falls through
                 Toast.makeText(this,
@@ -114,8 +119,24 @@ public class LivePreviewActivity extends AppCompatActivity {
 
         cameraHelper = new CameraHelper(getApplicationContext(), LivePreviewActivity.this, previewView);
         cameraHelper.setImageProcessor(viewModel.getSignalRecorder());
+        // Each camera frame is a sample of its own, so frames arriving during a brief stall of the analyzer are queued rather than dropped
+        cameraHelper.setBackpressure(viewModel.getSignalRecorder().getRecordingMode() == SignalRecorder.RecordingMode.CAMERA_FRAME
+                ? CameraHelper.Backpressure.BLOCK_PRODUCER
+                : CameraHelper.Backpressure.KEEP_ONLY_LATEST, CameraHelper.DEFAULT_IMAGE_QUEUE_DEPTH);
 
         Slider baselineSlider = findViewById(R.id.slider_baseline);
+        MaterialButton btnAutoBaseline = findViewById(R.id.btn_auto_baseline);
+        btnAutoBaseline.setOnClickListener(v -> viewModel.getSignalRecorder().setAutoBaseline(btnAutoBaseline.isChecked()));
+        MaterialButton btnChannels = findViewById(R.id.btn_channels);
+        btnChannels.setChecked(viewModel.getSignalRecorder().getChannelCount() > 0);
+        btnChannels.setOnClickListener(v -> {
+            // Other blinking lamps in view are recorded and translated alongside the target, from the next recording on
+            if (btnChannels.isChecked()) {
+                viewModel.getSignalRecorder().detectChannels(SignalRecorder.MAX_CHANNEL_COUNT);
+            } else {
+                viewModel.getSignalRecorder().clearChannels();
+            }
+        });
         // Initial state of the slider
         float initialBaseline = viewModel.getRecorderBaseline().getValue() != null ? viewModel.getRecorderBaseline().getValue() : 0f;
         baselineSlider.addOnChangeListener((slider, value, fromUser) -> {
@@ -132,10 +153,26 @@ public class LivePreviewActivity extends AppCompatActivity {
             @Override
             public void onStopTrackingTouch(@NonNull Slider slider) {
                 int newBaseline = (int) (slider.getValue() * 127f / slider.getValueTo());
+                // Overrides the automatic baseline
                 viewModel.getSignalRecorder().setBaseline(newBaseline);
             }
         });
 
+        viewModel.getRecorderBaseline().observe(LivePreviewActivity.this, newBaseline -> {
+            // Estimated baselines move the slider; user changes are already there
+            if (viewModel.getSignalRecorder().isAutoBaseline()) {
+                // Slider only reaches 127, higher estimates are shown at its end
+                baselineSlider.setValue((float) Math.min(newBaseline, 127) * baselineSlider.getValueTo() / 127f);
+            }
+        });
+        viewModel.getRecorderAutoBaseline().observe(LivePreviewActivity.this, autoBaseline -> btnAutoBaseline.setChecked(autoBaseline));
+
+        viewModel.getTargetRegion().observe(LivePreviewActivity.this, region -> {
+            if (region != null) {
+                targetView.setTarget(region[0], region[1], region[2], Constants.SAMPLE_SIZE_IN_PIXEL);
+            }
+        });
+
         viewModel.getGraphValueArray().observe(LivePreviewActivity.this, ints -> {
             Log.d(TAG, "received value array from ViewModel.");
             if (ints != null) {
@@ -147,21 +184,35 @@ public class LivePreviewActivity extends AppCompatActivity {
 
         viewModel.getRecorderFrameRate().observe(LivePreviewActivity.this, frameRate -> {
             Log.d(TAG, "received frame rate from ViewModel. newFrameRate=" + frameRate);
-            btnFrameRate.setIconResource(frameRate == SignalRecorder.FrameRate.FPS_30 ? R.drawable.ic_30fps : R.drawable.ic_60fps);
+            btnFrameRate.setIconResource(getFrameRateIcon(frameRate));
+            // Used to detect frames skipped by the camera stream
+            cameraHelper.setTargetFrameRate(frameRate.getValue());
         });
         viewModel.getRecorderState().observe(LivePreviewActivity.this, recorderState -> {
             Log.d(TAG, "received recorder state from ViewModel. newState=" + recorderState);
             if (recorderState == LivePreviewViewModel.RecorderState.RECORDING) {
                 btnRecord.setImageResource(R.drawable.ic_record_stop);
+                // Partial translation of the new session will follow
+                textMorse.setText("");
+                textOutput.setText("");
                 // Disable all
                 btnFrameRate.setEnabled(false);
                 btnLens.setEnabled(false);
+                btnAutoBaseline.setEnabled(false);
+                btnChannels.setEnabled(false);
                 baselineSlider.setEnabled(false);
             } else if (recorderState == LivePreviewViewModel.RecorderState.IDLE) {
                 btnRecord.setImageResource(R.drawable.ic_record_start);
+                if (cameraHelper.getAnalyzedFrameCount() > 0L) {
+                    // How well the stream was delivered; skipped frames are missing from the recorded signal
+                    Log.d(TAG, "stream stats, analyzed=" + cameraHelper.getAnalyzedFrameCount() + " skipped=" + cameraHelper.getSkippedFrameCount()
+                            + " latency=" + cameraHelper.getAnalyzerLatency() / 1000L + "us fps=" + cameraHelper.getMeasuredFrameRate());
+                }
                 // Disable all
                 btnFrameRate.setEnabled(true);
                 btnLens.setEnabled(true);
+                btnAutoBaseline.setEnabled(true);
+                btnChannels.setEnabled(true);
                 baselineSlider.setEnabled(true);
             }
         });
@@ -177,6 +228,13 @@ public class LivePreviewActivity extends AppCompatActivity {
                 loading.hide();
             }
         });
+        viewModel.getPartialTranslationResult().observe(LivePreviewActivity.this, result -> {
+            // Only shown while recording; the complete translation follows once the session ends
+            if (viewModel.getSignalRecorder().isRecording()) {
+                textMorse.setText(result.getMorse());
+                textOutput.setText(result.getOutput());
+            }
+        });
         viewModel.getTranslationResult().observe(LivePreviewActivity.this, result -> {
             Log.d(TAG, "received translation result from ViewModel. result=" + result);
             String morse = result.getMorse();
@@ -191,6 +249,23 @@ public class LivePreviewActivity extends AppCompatActivity {
                 Toast.makeText(getApplicationContext(), R.string.cannot_translate, Toast.LENGTH_SHORT).show();
             }
         });
+        viewModel.getChannelTranslationResults().observe(LivePreviewActivity.this, results -> {
+            // One line for each translated channel, numbered as in the recorder; hidden without channels
+            StringBuilder channelsBuilder = new StringBuilder();
+            if (results != null) {
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null || !results[i].isSuccess()) {
+                        continue;
+                    }
+                    if (channelsBuilder.length() > 0) {
+                        channelsBuilder.append('\n');
+                    }
+                    channelsBuilder.append(getString(R.string.channel_output, i + 1, results[i].getOutput()));
+                }
+            }
+            textChannels.setText(channelsBuilder);
+            textChannels.setVisibility(channelsBuilder.length() > 0 ? View.VISIBLE : View.GONE);
+        });
 
         viewModel.getProcessCameraProvider()
                 .observe(
@@ -223,9 +298,22 @@ public class LivePreviewActivity extends AppCompatActivity {
     public void onDestroy() {
         super.onDestroy();
         if (cameraHelper != null) {
-            cameraHelper.stop();
+            cameraHelper.release();
         }
         Log.d(TAG, "on destroy called.");
     }
 
+    private static int getFrameRateIcon(SignalRecorder.FrameRate frameRate) {
+        switch (frameRate) {
+            case FPS_30:
+                return R.drawable.ic_30fps;
+            case FPS_120:
+                return R.drawable.ic_120fps;
+            case FPS_240:
+                return R.drawable.ic_240fps;
+            default:
+                return R.drawable.ic_60fps;
+        }
+    }
+
 }
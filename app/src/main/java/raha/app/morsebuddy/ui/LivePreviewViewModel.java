@@ -1,6 +1,9 @@
 package raha.app.morsebuddy.ui;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -12,6 +15,7 @@ import androidx.lifecycle.MutableLiveData;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 
 import raha.app.morsebuddy.camera.SignalRecorder;
@@ -23,10 +27,23 @@ public class LivePreviewViewModel extends AndroidViewModel {
     private MutableLiveData<ProcessCameraProvider> cameraProviderLiveData;
     private final MutableLiveData<SignalRecorder.FrameRate> recorderFrameRate;
     private final MutableLiveData<Integer> recorderBaseline;
+    private final MutableLiveData<Boolean> recorderAutoBaseline;
     private final MutableLiveData<Translator.Result> translationResult;
+    private final MutableLiveData<Translator.Result> partialTranslationResult;
     private final MutableLiveData<RecorderState> recorderState;
     private final MutableLiveData<TranslatorState> translatorState;
     private final MutableLiveData<int[]> graphValueArray;
+    private final MutableLiveData<int[]> targetRegion;
+    private final MutableLiveData<Translator.Result[]> channelTranslationResults;
+    /* Latest result of each additional channel; written from worker threads */
+    private final Translator.Result[] channelResults;
+    /* Translating state is shown at least this long (milliseconds), so quick results do not flicker; zero shows results at once */
+    private volatile long minimumDisplayTime;
+    /* Uptime the latest translation began at */
+    private volatile long translationBeginTime;
+    /* Posts results held back for the minimum display time; tagged with the token below */
+    private final Handler mainHandler;
+    private final Object displayToken;
 
     enum RecorderState {
         RECORDING,
@@ -52,12 +69,23 @@ public class LivePreviewViewModel extends AndroidViewModel {
 
         // Initialize variables
         signalRecorder = new SignalRecorder(SignalRecorder.FrameRate.FPS_60);
+        // Durations from camera timestamps are more accurate than fixed-rate polling
+        signalRecorder.setRecordingMode(SignalRecorder.RecordingMode.CAMERA_FRAME);
         recorderFrameRate = new MutableLiveData<>(signalRecorder.getFrameRate());
         recorderBaseline = new MutableLiveData<>(signalRecorder.getBaseline());
+        recorderAutoBaseline = new MutableLiveData<>(signalRecorder.isAutoBaseline());
         recorderState = new MutableLiveData<>(RecorderState.IDLE);
         translatorState = new MutableLiveData<>(TranslatorState.IDLE);
         translationResult = new MutableLiveData<>();
+        partialTranslationResult = new MutableLiveData<>();
         graphValueArray = new MutableLiveData<>();
+        targetRegion = new MutableLiveData<>();
+        channelTranslationResults = new MutableLiveData<>();
+        channelResults = new Translator.Result[SignalRecorder.MAX_CHANNEL_COUNT];
+        minimumDisplayTime = 0L;
+        translationBeginTime = 0L;
+        mainHandler = new Handler(Looper.getMainLooper());
+        displayToken = new Object();
 
         // Setting listeners
         signalRecorder.setRenderer(new SignalRecorder.GraphRenderer() {
@@ -86,9 +114,24 @@ public class LivePreviewViewModel extends AndroidViewModel {
                 recorderBaseline.postValue(newBaseline);
             }
 
+            @Override
+            public void onAutoBaselineChange(boolean autoBaseline) {
+                Log.d(TAG, "received Callback.onAutoBaselineChange call from SignalRecorder.");
+                recorderAutoBaseline.postValue(autoBaseline);
+            }
+
+            @Override
+            public void onTargetMove(int top, int left, int size) {
+                targetRegion.postValue(new int[]{top, left, size});
+            }
+
             @Override
             public void onRecordStart() {
                 Log.d(TAG, "received Callback.onRecordStart call from SignalRecorder.");
+                synchronized (channelResults) {
+                    Arrays.fill(channelResults, null);
+                    channelTranslationResults.postValue(null);
+                }
                 recorderState.postValue(RecorderState.RECORDING);
             }
 
@@ -101,24 +144,64 @@ public class LivePreviewViewModel extends AndroidViewModel {
             @Override
             public void onTranslationBegin() {
                 Log.d(TAG, "received Callback.onTranslationBegin call from SignalRecorder.");
+                // A held back result is superseded
+                mainHandler.removeCallbacksAndMessages(displayToken);
+                translationBeginTime = SystemClock.uptimeMillis();
                 translatorState.postValue(TranslatorState.TRANSLATING);
             }
 
             @Override
             public void onTranslationCancel() {
                 Log.d(TAG, "received Callback.onTranslationCancel call from SignalRecorder.");
+                mainHandler.removeCallbacksAndMessages(displayToken);
                 translatorState.postValue(TranslatorState.IDLE);
             }
 
             @Override
             public void onTranslationComplete(@NonNull Translator.Result result) {
                 Log.d(TAG, "received Callback.onTranslationComplete call from SignalRecorder.");
-                translationResult.postValue(result);
-                translatorState.postValue(TranslatorState.IDLE);
+                final long displayTime = translationBeginTime + minimumDisplayTime;
+                if (SystemClock.uptimeMillis() >= displayTime) {
+                    translationResult.postValue(result);
+                    translatorState.postValue(TranslatorState.IDLE);
+                } else {
+                    mainHandler.postAtTime(() -> {
+                        translationResult.setValue(result);
+                        translatorState.setValue(TranslatorState.IDLE);
+                    }, displayToken, displayTime);
+                }
+            }
+
+            @Override
+            public void onPartialTranslation(@NonNull Translator.Result result) {
+                Log.d(TAG, "received Callback.onPartialTranslation call from SignalRecorder.");
+                partialTranslationResult.postValue(result);
+            }
+
+            @Override
+            public void onChannelTranslationComplete(int channel, @NonNull Translator.Result result) {
+                Log.d(TAG, "received Callback.onChannelTranslationComplete call from SignalRecorder, channel=" + channel);
+                synchronized (channelResults) {
+                    channelResults[channel - 1] = result;
+                    channelTranslationResults.postValue(Arrays.copyOf(channelResults, channelResults.length));
+                }
             }
         });
     }
 
+    /**
+     * Sets how long the translating state is shown at least, before a result; results are never delayed beyond it.
+     *
+     * @param minimumDisplayTime milliseconds; zero to show results as soon as they are ready
+     */
+    public void setMinimumDisplayTime(long minimumDisplayTime) {
+        this.minimumDisplayTime = Math.max(0L, minimumDisplayTime);
+    }
+
+    public long getMinimumDisplayTime() {
+        return minimumDisplayTime;
+    }
+
     public SignalRecorder getSignalRecorder() {
         return signalRecorder;
     }
@@ -131,6 +214,10 @@ public class LivePreviewViewModel extends AndroidViewModel {
         return recorderBaseline;
     }
 
+    public LiveData<Boolean> getRecorderAutoBaseline() {
+        return recorderAutoBaseline;
+    }
+
     public LiveData<RecorderState> getRecorderState() {
         return recorderState;
     }
@@ -143,10 +230,31 @@ public class LivePreviewViewModel extends AndroidViewModel {
         return translationResult;
     }
 
+    /**
+     * @return text translated so far by the running recorder session
+     */
+    public LiveData<Translator.Result> getPartialTranslationResult() {
+        return partialTranslationResult;
+    }
+
+    /**
+     * @return latest translation result of each additional channel, channel 1 first; null for channels not translated yet
+     */
+    public LiveData<Translator.Result[]> getChannelTranslationResults() {
+        return channelTranslationResults;
+    }
+
     public LiveData<int[]> getGraphValueArray() {
         return graphValueArray;
     }
 
+    /**
+     * @return target region as {top, left, size}, in sample-pixels
+     */
+    public LiveData<int[]> getTargetRegion() {
+        return targetRegion;
+    }
+
     public LiveData<ProcessCameraProvider> getProcessCameraProvider() {
         if (cameraProviderLiveData == null) {
             cameraProviderLiveData = new MutableLiveData<>();
@@ -169,6 +277,7 @@ public class LivePreviewViewModel extends AndroidViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
+        mainHandler.removeCallbacksAndMessages(displayToken);
         //signalRecorder.cleanUp();
         signalRecorder = null;
         Log.d(TAG, "view model cleared.");
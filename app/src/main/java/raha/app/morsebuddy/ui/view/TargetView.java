@@ -19,6 +19,13 @@ public class TargetView extends View {
     private Path mPath;
     private Paint mPaint;
 
+    /* Center of the target, as fractions of the sample rows and columns */
+    private float rowFraction = 0.5f;
+    private float columnFraction = 0.5f;
+    /* Side of the target, as a fraction of the sample side */
+    private float sizeFraction = Constants.TARGET_SAMPLE_RATIO;
+    private boolean frontFacing = false;
+
     public TargetView(Context context) {
         this(context, null);
     }
@@ -44,26 +51,53 @@ public class TargetView extends View {
         mPaint.setStrokeWidth(1f);
     }
 
+    /**
+     * Moves the drawn target to the given region of the image sample.
+     *
+     * @param top        top row of the target, in sample-pixels
+     * @param left       left column of the target, in sample-pixels
+     * @param size       side of the target, in sample-pixels
+     * @param sampleSize side of the whole sample, in sample-pixels
+     */
+    public void setTarget(int top, int left, int size, int sampleSize) {
+        rowFraction = (top + size / 2f) / sampleSize;
+        columnFraction = (left + size / 2f) / sampleSize;
+        sizeFraction = (float) size / sampleSize;
+        invalidate();
+    }
+
+    /**
+     * Front-facing preview is mirrored, so sample columns run the other way.
+     */
+    public void setFrontFacing(boolean frontFacing) {
+        this.frontFacing = frontFacing;
+        invalidate();
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
         float width = getWidth();
         float height = getHeight();
-        float size = width * Constants.TARGET_SAMPLE_RATIO;
+        float size = width * sizeFraction;
         float aimSize = size * AIM_TARGET_RATIO;
 
-        float centerX = width / 2f;
-        float centerY = height / 2f;
-
-        float targetLeft = (width - size) / 2f;
-        float targetTop = (height - size) / 2f;
-        float targetRight = (width + size) / 2f;
-        float targetBottom = (height + size) / 2f;
-        float aimLeft = (width - aimSize) / 2f;
-        float aimTop = (height - aimSize) / 2f;
-        float aimRight = (width + aimSize) / 2f;
-        float aimBottom = (height + aimSize) / 2f;
+        // Sample is the center square of the portrait preview, of side equal to the width.
+        // Sample rows run along the sensor height, i.e. right to left on the display;
+        // sample columns run top to bottom, or bottom to top on the mirrored front-facing preview.
+        float sampleTop = (height - width) / 2f;
+        float centerX = width * (1f - rowFraction);
+        float centerY = sampleTop + width * (frontFacing ? 1f - columnFraction : columnFraction);
+
+        float targetLeft = centerX - size / 2f;
+        float targetTop = centerY - size / 2f;
+        float targetRight = centerX + size / 2f;
+        float targetBottom = centerY + size / 2f;
+        float aimLeft = centerX - aimSize / 2f;
+        float aimTop = centerY - aimSize / 2f;
+        float aimRight = centerX + aimSize / 2f;
+        float aimBottom = centerY + aimSize / 2f;
 
 
         mPath.reset();
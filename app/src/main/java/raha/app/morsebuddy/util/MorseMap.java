@@ -3,6 +3,7 @@ package raha.app.morsebuddy.util;
 import androidx.annotation.Nullable;
 
 import java.util.HashMap;
+import java.util.Map;
 
 public class MorseMap {
     public static final String SIGN_DOT = "●";
@@ -10,9 +11,17 @@ public class MorseMap {
     public static final String SIGN_SPACE_1U = "";
     public static final String SIGN_SPACE_3U = "  ";
     public static final String SIGN_SPACE_7U = "    ";
+    /* Longest code of a letter, in elements */
+    public static final int MAX_CODE_LENGTH = 5;
+    /* Code of no elements; a letter's code is this followed by its elements, dot as 0 and dash as 1 */
+    public static final int EMPTY_CODE = 1;
+    /* Returned for codes without a letter */
+    public static final char NO_LETTER = 0;
 
     private static final HashMap<String, Character> morseTable;
     private static final HashMap<Character, String> letterTable;
+    /* Letters by code, see EMPTY_CODE */
+    private static final char[] codeTable;
 
     static {
         morseTable = new HashMap<>();
@@ -89,6 +98,14 @@ public class MorseMap {
         letterTable.put('7', "――●●●");
         letterTable.put('8', "―――●●");
         letterTable.put('9', "――――●");
+        codeTable = new char[EMPTY_CODE << (MAX_CODE_LENGTH + 1)];
+        for (Map.Entry<String, Character> entry : morseTable.entrySet()) {
+            int code = EMPTY_CODE;
+            for (int i = 0; i < entry.getKey().length(); i++) {
+                code = code << 1 | (entry.getKey().startsWith(SIGN_DASH, i) ? 1 : 0);
+            }
+            codeTable[code] = entry.getValue();
+        }
     }
 
     @Nullable
@@ -96,6 +113,16 @@ public class MorseMap {
         return morseTable.get(morse);
     }
 
+    /**
+     * Same as {@link MorseMap#morseToLetter(String)}, by the packed code of the letter; no lookup in a map.
+     *
+     * @param code {@link MorseMap#EMPTY_CODE} followed by the elements, dot as 0 and dash as 1; e.g. 0b101 for ●―
+     * @return the letter, or {@link MorseMap#NO_LETTER} if none has this code
+     */
+    public static char codeToLetter(int code) {
+        return code >= 0 && code < codeTable.length ? codeTable[code] : NO_LETTER;
+    }
+
     @Nullable
     public static String letterToMorse(char c) {
         return letterTable.get(c);
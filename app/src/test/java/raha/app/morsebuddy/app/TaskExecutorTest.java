@@ -0,0 +1,187 @@
+package raha.app.morsebuddy.app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that waiting tasks are replaced by newer ones of the same key, the statistics of each key, and the delivery of callbacks.
+ */
+public class TaskExecutorTest {
+
+    /* Main thread of the tests; keeps the posts until they are run */
+    private static class PostQueue implements Executor {
+        private final List<Runnable> posts = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            posts.add(command);
+        }
+
+        synchronized int size() {
+            return posts.size();
+        }
+
+        void runAll() {
+            final Runnable[] pending;
+            synchronized (this) {
+                pending = posts.toArray(new Runnable[0]);
+                posts.clear();
+            }
+            for (Runnable post : pending) {
+                post.run();
+            }
+        }
+    }
+
+    private static <R> TaskExecutor.Callback<R> recording(final List<String> events) {
+        return new TaskExecutor.Callback<R>() {
+            @Override
+            public void onComplete(R result) {
+                events.add("complete " + result);
+            }
+        };
+    }
+
+    /* Blocks the worker until released, so the following tasks wait */
+    private static void block(TaskExecutor executor, final CountDownLatch release) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                started.countDown();
+                release.await();
+                return null;
+            }
+        }, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    /* Waits until every task submitted so far has run, and queued its callbacks; tasks run one at a time, in order */
+    private static void drain(TaskExecutor executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(counting(new AtomicInteger(), 0, done), null);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static Callable<Integer> counting(final AtomicInteger runs, final int value, final CountDownLatch done) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                runs.incrementAndGet();
+                done.countDown();
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void latestTaskOfKeyWins() throws Exception {
+        TaskExecutor executor = new TaskExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        // Keeps the worker busy, so the following tasks wait
+        executor.execute("blocker", new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                started.countDown();
+                release.await();
+                return null;
+            }
+        }, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicInteger replacedRuns = new AtomicInteger();
+        AtomicInteger latestRuns = new AtomicInteger();
+        AtomicInteger otherRuns = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 5; i++) {
+            executor.execute("translation", counting(replacedRuns, i, new CountDownLatch(1)), null);
+        }
+        executor.execute("translation", counting(latestRuns, 5, done), null);
+        // Tasks without a key are never replaced
+        executor.execute(counting(otherRuns, 6, done), null);
+        assertEquals(1, executor.getStats("translation").getQueueDepth());
+        assertEquals(5, executor.getStats("translation").getReplaced());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.stop();
+        assertEquals(0, replacedRuns.get());
+        assertEquals(1, latestRuns.get());
+        assertEquals(1, otherRuns.get());
+
+        // Run time is recorded right after the task returns
+        for (int i = 0; i < 100 && executor.getStats(null).getCompleted() == 0; i++) {
+            Thread.sleep(10);
+        }
+        TaskExecutor.Stats stats = executor.getStats("translation");
+        assertEquals(6, stats.getSubmitted());
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(1, stats.getCompleted());
+        assertTrue(stats.getLastWaitTime() > 0);
+        assertEquals(1, executor.getStats(null).getCompleted());
+        assertEquals(0, executor.getStats("unknown").getSubmitted());
+    }
+
+    @Test
+    public void callbacksAreDeliveredInOnePost() throws Exception {
+        PostQueue mainThread = new PostQueue();
+        TaskExecutor executor = new TaskExecutor(mainThread);
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            executor.execute(counting(new AtomicInteger(), i, new CountDownLatch(1)), TaskExecutorTest.<Integer>recording(events));
+        }
+        drain(executor);
+        // No start is posted for plain callbacks
+        assertEquals(1, mainThread.size());
+        mainThread.runAll();
+        assertEquals(Arrays.asList("complete 0", "complete 1", "complete 2"), events);
+
+        events.clear();
+        executor.execute(counting(new AtomicInteger(), 3, new CountDownLatch(1)), new TaskExecutor.StartCallback<Integer>() {
+            @Override
+            public void onStart() {
+                events.add("start");
+            }
+
+            @Override
+            public void onComplete(Integer result) {
+                events.add("complete " + result);
+            }
+        });
+        drain(executor);
+        assertEquals(1, mainThread.size());
+        mainThread.runAll();
+        assertEquals(Arrays.asList("start", "complete 3"), events);
+        executor.stop();
+    }
+
+    @Test
+    public void replacedTaskIsNeverCalledBack() throws Exception {
+        PostQueue mainThread = new PostQueue();
+        TaskExecutor executor = new TaskExecutor(mainThread);
+        CountDownLatch release = new CountDownLatch(1);
+        block(executor, release);
+
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            executor.execute("translation", counting(new AtomicInteger(), i, new CountDownLatch(1)), TaskExecutorTest.<Integer>recording(events));
+        }
+        assertEquals(4, executor.getStats("translation").getReplaced());
+        release.countDown();
+        drain(executor);
+        mainThread.runAll();
+        assertEquals(Arrays.asList("complete 4"), events);
+        executor.stop();
+    }
+}
@@ -0,0 +1,52 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the estimated baseline on bimodal signals.
+ */
+public class BaselineEstimatorTest {
+
+    @Test
+    public void noThresholdForSingleValue() {
+        BaselineEstimator estimator = new BaselineEstimator();
+        assertEquals(-1, estimator.getThreshold());
+        for (int i = 0; i < 100; i++) {
+            estimator.add(12);
+        }
+        assertEquals(-1, estimator.getThreshold());
+    }
+
+    @Test
+    public void thresholdIsInTheMiddleOfTheGap() {
+        BaselineEstimator estimator = new BaselineEstimator();
+        for (int i = 0; i < 300; i++) {
+            estimator.add(i % 3 == 0 ? 80 : 10);
+        }
+        // Any of 10 to 79 splits the same way
+        assertEquals(44, estimator.getThreshold());
+    }
+
+    @Test
+    public void separatesNoisyClasses() {
+        BaselineEstimator estimator = new BaselineEstimator();
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            // Dark frames far more often than bright ones, both noisy
+            estimator.add(i % 5 == 0 ? 60 + (int) (random.nextGaussian() * 6) : 8 + (int) (random.nextGaussian() * 4));
+        }
+        final int threshold = estimator.getThreshold();
+        assertTrue("threshold=" + threshold, threshold > 20 && threshold < 48);
+
+        // Values out of range fall into the end bins
+        estimator.reset();
+        estimator.add(-5);
+        estimator.add(1000);
+        assertEquals(2, estimator.getCount());
+        assertEquals(127, estimator.getThreshold());
+    }
+}
@@ -0,0 +1,121 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import raha.app.morsebuddy.system.KMeansNormalizer;
+import raha.app.morsebuddy.system.RatioNormalizer;
+import raha.app.morsebuddy.system.SignalStore;
+import raha.app.morsebuddy.system.Translator;
+import raha.app.morsebuddy.util.MorseMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records two lamps sending different words in the same synthetic frames, the way the recorder does with channels:
+ * the second lamp is detected as a channel beside the target, each region gets its own signal, and each signal is translated on its own.
+ */
+public class ChannelRecordingTest {
+    private static final int SIZE = 8;
+    private static final int UNIT_FRAMES = 4;
+    private static final int BASELINE = 50;
+    /* Target lamp, channel lamp and a steady lamp which is no source */
+    private static final int TARGET_TOP = 20;
+    private static final int TARGET_LEFT = 20;
+    private static final int CHANNEL_TOP = 56;
+    private static final int CHANNEL_LEFT = 48;
+    private static final int STEADY_TOP = 8;
+    private static final int STEADY_LEFT = 60;
+
+    /* On or off for each frame of the text, a few units of darkness on both ends */
+    private static boolean[] keyFrames(String text, int length) {
+        boolean[] frames = new boolean[length];
+        int unit = 3;
+        for (int w = 0; w < text.length(); w++) {
+            final char c = text.charAt(w);
+            if (c == ' ') {
+                // Word space, three units already after the letter
+                unit += 4;
+                continue;
+            }
+            final String code = MorseMap.letterToMorse(c);
+            for (int e = 0; e < code.length(); e++) {
+                final int units = code.startsWith(MorseMap.SIGN_DASH, e) ? 3 : 1;
+                Arrays.fill(frames, unit * UNIT_FRAMES, (unit + units) * UNIT_FRAMES, true);
+                unit += units + 1;
+            }
+            // Letter space
+            unit += 2;
+        }
+        return frames;
+    }
+
+    /* Plane of the sample size, so that sample-pixels are plane bytes one to one */
+    private static final PlaneOffsets PLANE_OFFSETS = new PlaneOffsets(ImageSample.SAMPLE_SIZE, 1, ImageSample.SAMPLE_SIZE, ImageSample.SAMPLE_SIZE);
+
+    /* Filled from a plane like camera frames, so that the integral image is rebuilt */
+    private static void drawFrame(ImageSample sample, Random random, boolean target, boolean channel) {
+        byte[] pixels = new byte[ImageSample.SAMPLE_SIZE * ImageSample.SAMPLE_SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (20 + random.nextInt(3));
+        }
+        drawSquare(pixels, TARGET_TOP, TARGET_LEFT, target ? 240 : 20);
+        drawSquare(pixels, CHANNEL_TOP, CHANNEL_LEFT, channel ? 200 : 20);
+        drawSquare(pixels, STEADY_TOP, STEADY_LEFT, 240);
+        sample.fill(PLANE_OFFSETS, ByteBuffer.wrap(pixels));
+    }
+
+    private static void drawSquare(byte[] pixels, int top, int left, int brightness) {
+        for (int row = top; row < top + SIZE; row++) {
+            Arrays.fill(pixels, row * ImageSample.SAMPLE_SIZE + left, row * ImageSample.SAMPLE_SIZE + left + SIZE, (byte) brightness);
+        }
+    }
+
+    @Test
+    public void translatesEachChannelOnItsOwn() {
+        final int length = 600;
+        boolean[] targetKeys = keyFrames("SOS SOS", length);
+        boolean[] channelKeys = keyFrames("TEST ME", length);
+        ImageSample sample = new ImageSample();
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(TARGET_TOP, TARGET_LEFT);
+        ContrastEngine contrastEngine = new ContrastEngine();
+        contrastEngine.setTargetSize(SIZE);
+
+        // Detection while both lamps are sending; the target is the first source, so the channel never overlaps it
+        Random random = new Random(7L);
+        for (int frame = 0; frame < 80; frame++) {
+            drawFrame(sample, random, targetKeys[frame], channelKeys[frame]);
+            tracker.update(sample, SIZE);
+        }
+        int[] tops = new int[]{TARGET_TOP, 0, 0};
+        int[] lefts = new int[]{TARGET_LEFT, 0, 0};
+        assertEquals(2, tracker.findSources(SIZE, 1, 3, tops, lefts));
+        assertEquals(CHANNEL_TOP, tops[1]);
+        assertEquals(CHANNEL_LEFT, lefts[1]);
+
+        // Recording: contrast of the target and of the channel from the same frames
+        int[] channelTops = Arrays.copyOfRange(tops, 1, 2);
+        int[] channelLefts = Arrays.copyOfRange(lefts, 1, 2);
+        int[] channelContrasts = new int[1];
+        int[] targetSignal = new int[length];
+        int[] channelSignal = new int[length];
+        for (int frame = 0; frame < length; frame++) {
+            drawFrame(sample, random, targetKeys[frame], channelKeys[frame]);
+            contrastEngine.calculate(sample, channelTops, channelLefts, SIZE, 1, channelContrasts);
+            targetSignal[frame] = contrastEngine.calculate(sample, TARGET_TOP, TARGET_LEFT, SIZE);
+            channelSignal[frame] = channelContrasts[0];
+        }
+
+        Translator translator = new Translator(new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE));
+        Translator.Result target = translator.resolve(0, SignalStore.of(targetSignal, null), false, BASELINE);
+        Translator.Result channel = translator.resolve(1, SignalStore.of(channelSignal, null), false, BASELINE);
+        assertTrue(target.isSuccess());
+        assertTrue(channel.isSuccess());
+        assertEquals("SOS SOS", target.getOutput());
+        assertEquals("TEST ME", channel.getOutput());
+    }
+}
@@ -0,0 +1,48 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the FPS range chosen among typical ranges advertised by cameras.
+ */
+public class FpsRangesTest {
+    /* Back camera of a typical phone */
+    private static final int[] LOWERS = new int[]{15, 30, 10, 15, 24, 30, 60};
+    private static final int[] UPPERS = new int[]{15, 30, 30, 30, 24, 60, 60};
+
+    @Test
+    public void noRanges() {
+        assertEquals(-1, FpsRanges.choose(new int[0], new int[0], 60));
+    }
+
+    @Test
+    public void prefersFixedRangeAtTarget() {
+        // Reaches 60, and never drops below it
+        assertEquals(6, FpsRanges.choose(LOWERS, UPPERS, 60));
+        // [30, 30] over [10, 30] and [15, 30]
+        assertEquals(1, FpsRanges.choose(LOWERS, UPPERS, 30));
+    }
+
+    @Test
+    public void prefersLeastOvershoot() {
+        // [24, 24] is steady at the target; [30, 30] and [30, 60] would only deliver faster than asked
+        assertEquals(4, FpsRanges.choose(LOWERS, UPPERS, 24));
+        // Both floors reach the target, so the lower upper bound wins
+        assertEquals(1, FpsRanges.choose(new int[]{30, 30}, new int[]{60, 30}, 20));
+    }
+
+    @Test
+    public void reachesAsCloseAsSupported() {
+        // Nothing reaches 240; the fastest ranges reach 60, of which the steadiest
+        assertEquals(6, FpsRanges.choose(LOWERS, UPPERS, 240));
+        // [7, 30] reaches further than the steadier [15, 24]
+        assertEquals(1, FpsRanges.choose(new int[]{15, 7}, new int[]{24, 30}, 120));
+    }
+
+    @Test
+    public void tiesKeepTheFirstRange() {
+        assertEquals(0, FpsRanges.choose(new int[]{30, 30}, new int[]{30, 30}, 30));
+    }
+}
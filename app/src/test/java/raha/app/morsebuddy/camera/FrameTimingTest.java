@@ -0,0 +1,101 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks counting of dropped and duplicated frames, and the measured frame rate, from camera timestamps.
+ */
+public class FrameTimingTest {
+    /* 60 fps */
+    private static final long INTERVAL = 16_666_667L;
+
+    @Test
+    public void regularFramesDropNothing() {
+        FrameTiming timing = new FrameTiming();
+        timing.reset(INTERVAL);
+        for (int i = 0; i < 100; i++) {
+            // Jitter of a fifth of an interval; gaps stay within one and a half intervals
+            assertEquals(0, timing.onFrame(5_000_000_000L + i * INTERVAL + (i % 2 == 0 ? 1 : -1) * INTERVAL / 5));
+        }
+    }
+
+    @Test
+    public void countsDroppedFrames() {
+        FrameTiming timing = new FrameTiming();
+        timing.reset(INTERVAL);
+        assertEquals(0, timing.onFrame(0L));
+        assertEquals(0, timing.onFrame(INTERVAL));
+        // Two frames missing
+        assertEquals(2, timing.onFrame(4 * INTERVAL));
+        // One and a half intervals is still on time, a bit more is one frame missing
+        assertEquals(0, timing.onFrame(4 * INTERVAL + INTERVAL * 3 / 2));
+        assertEquals(1, timing.onFrame(4 * INTERVAL + INTERVAL * 3 / 2 + INTERVAL * 8 / 5));
+    }
+
+    @Test
+    public void countsDuplicatedFrames() {
+        FrameTiming timing = new FrameTiming();
+        timing.reset(INTERVAL);
+        assertEquals(0, timing.onFrame(10 * INTERVAL));
+        assertEquals(FrameTiming.DUPLICATE, timing.onFrame(10 * INTERVAL));
+        assertEquals(FrameTiming.DUPLICATE, timing.onFrame(9 * INTERVAL));
+        // Duplicates are not taken as the latest frame
+        assertEquals(0, timing.onFrame(11 * INTERVAL));
+    }
+
+    @Test
+    public void timestampWrapIsNotADuplicate() {
+        FrameTiming timing = new FrameTiming();
+        timing.reset(INTERVAL);
+        final long last = Long.MAX_VALUE - INTERVAL / 2;
+        assertEquals(0, timing.onFrame(last));
+        // Wraps to a negative timestamp, one interval later
+        assertEquals(0, timing.onFrame(last + INTERVAL));
+        assertEquals(1, timing.onFrame(last + 3 * INTERVAL));
+        assertEquals(FrameTiming.DUPLICATE, timing.onFrame(last));
+    }
+
+    @Test
+    public void resetForgetsPreviousFrames() {
+        FrameTiming timing = new FrameTiming();
+        timing.reset(INTERVAL);
+        timing.onFrame(100 * INTERVAL);
+        // New stream starting at an older timestamp; without a nominal interval, gaps are never counted
+        timing.reset(0L);
+        assertEquals(0, timing.onFrame(INTERVAL));
+        assertEquals(0, timing.onFrame(50 * INTERVAL));
+        assertEquals(FrameTiming.DUPLICATE, timing.onFrame(50 * INTERVAL));
+    }
+
+    @Test
+    public void measuresDeliveredFrameRate() {
+        FrameTiming timing = new FrameTiming();
+        // Configured for 60 fps, but delivering 30 fps, e.g. in low light
+        timing.reset(INTERVAL);
+        long timestamp = 0L;
+        for (int i = 0; i < FrameTiming.MIN_MEASURED_INTERVALS; i++) {
+            timing.onFrame(timestamp);
+            timestamp += 2 * INTERVAL;
+            assertEquals(0, timing.getMeasuredFrameRate());
+        }
+        for (int i = 0; i < 200; i++) {
+            timing.onFrame(timestamp);
+            // Duplicates do not count
+            timing.onFrame(timestamp);
+            timestamp += 2 * INTERVAL;
+        }
+        assertEquals(30, timing.getMeasuredFrameRate());
+
+        // Back to the configured rate
+        for (int i = 0; i < 200; i++) {
+            timing.onFrame(timestamp);
+            timestamp += INTERVAL;
+        }
+        assertEquals(60, timing.getMeasuredFrameRate());
+
+        timing.reset(INTERVAL);
+        assertEquals(0, timing.getMeasuredFrameRate());
+    }
+}
@@ -0,0 +1,132 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that sampling straight from the y-plane buffer matches the copy-based sampling,
+ * and that region sums match plain pixel sums.
+ */
+public class ImageSampleTest {
+    private static final int IMAGE_WIDTH = 320;
+    private static final int IMAGE_HEIGHT = 240;
+    private static final int SAMPLE_SIZE = ImageSample.SAMPLE_SIZE;
+
+    private static byte[] randomPlane(int rowStride, long seed) {
+        byte[] plane = new byte[rowStride * IMAGE_HEIGHT];
+        new Random(seed).nextBytes(plane);
+        return plane;
+    }
+
+    private static void assertSameSample(int rowStride, byte[] plane, ByteBuffer buffer) {
+        // Same argument order as SignalRecorder.processImage
+        ImageSample copied = new ImageSample(rowStride, 1, IMAGE_HEIGHT, IMAGE_WIDTH, plane);
+        ImageSample direct = new ImageSample(rowStride, 1, IMAGE_HEIGHT, IMAGE_WIDTH, buffer);
+
+        assertArrayEquals(copied.getSamplePixels(), direct.getSamplePixels());
+        ContrastEngine engine = new ContrastEngine();
+        assertEquals(engine.calculate(copied), engine.calculate(direct));
+    }
+
+    /* Plain sum of the unsigned pixels inside the rectangle */
+    private static int sumOf(byte[] pixels, int top, int left, int bottom, int right) {
+        int total = 0;
+        for (int row = top; row < bottom; row++) {
+            for (int col = left; col < right; col++) {
+                total += pixels[row * SAMPLE_SIZE + col] & 0xff;
+            }
+        }
+        return total;
+    }
+
+    @Test
+    public void heapBuffer_matchesCopiedPlane() {
+        for (long seed = 0; seed < 16; seed++) {
+            byte[] plane = randomPlane(IMAGE_WIDTH, seed);
+            assertSameSample(IMAGE_WIDTH, plane, ByteBuffer.wrap(plane));
+        }
+    }
+
+    @Test
+    public void paddedDirectBuffer_matchesCopiedPlane() {
+        // Row stride is often larger than the image width
+        final int rowStride = IMAGE_WIDTH + 64;
+        for (long seed = 0; seed < 16; seed++) {
+            byte[] plane = randomPlane(rowStride, seed);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(plane.length);
+            buffer.put(plane).rewind();
+            assertSameSample(rowStride, plane, buffer);
+        }
+    }
+
+    @Test
+    public void bufferWithOffset_matchesRemainingBytes() {
+        final int offset = 7;
+        byte[] plane = randomPlane(IMAGE_WIDTH, 42L);
+        byte[] shifted = new byte[plane.length + offset];
+        System.arraycopy(plane, 0, shifted, offset, plane.length);
+        ByteBuffer buffer = ByteBuffer.wrap(shifted);
+        buffer.position(offset);
+
+        assertSameSample(IMAGE_WIDTH, plane, buffer);
+        // Sampling must not consume the buffer
+        assertEquals(offset, buffer.position());
+    }
+
+    @Test
+    public void brightTarget_producesSameContrast() {
+        byte[] plane = new byte[IMAGE_WIDTH * IMAGE_HEIGHT];
+        // Light source at the center of the image
+        for (int row = IMAGE_HEIGHT / 2 - 20; row < IMAGE_HEIGHT / 2 + 20; row++) {
+            for (int col = IMAGE_WIDTH / 2 - 20; col < IMAGE_WIDTH / 2 + 20; col++) {
+                plane[row * IMAGE_WIDTH + col] = (byte) 0xF0;
+            }
+        }
+        ImageSample direct = new ImageSample(IMAGE_WIDTH, 1, IMAGE_HEIGHT, IMAGE_WIDTH, ByteBuffer.wrap(plane));
+        assertTrue(new ContrastEngine().calculate(direct) > 0);
+        assertSameSample(IMAGE_WIDTH, plane, ByteBuffer.wrap(plane));
+    }
+
+    @Test
+    public void integralSums_matchPlainSums() {
+        Random random = new Random(7L);
+        ImageSample sample = new ImageSample(IMAGE_WIDTH, 1, IMAGE_HEIGHT, IMAGE_WIDTH, ByteBuffer.wrap(randomPlane(IMAGE_WIDTH, 7L)));
+        byte[] pixels = sample.getSamplePixels();
+        for (int pass = 0; pass < 2; pass++) {
+            // Word-wise sums first, then sums from the integral image
+            if (pass == 1) {
+                sample.prepareIntegral();
+            }
+            for (int i = 0; i < 500; i++) {
+                int top = random.nextInt(SAMPLE_SIZE);
+                int left = random.nextInt(SAMPLE_SIZE);
+                int bottom = top + 1 + random.nextInt(SAMPLE_SIZE - top);
+                int right = left + 1 + random.nextInt(SAMPLE_SIZE - left);
+                assertEquals(sumOf(pixels, top, left, bottom, right), sample.sum(top, left, bottom, right));
+            }
+            assertEquals(sumOf(pixels, 0, 0, SAMPLE_SIZE, SAMPLE_SIZE), sample.sum(0, 0, SAMPLE_SIZE, SAMPLE_SIZE));
+        }
+    }
+
+    @Test
+    public void ringBackground_ignoresFarAwayLight() {
+        byte[] plane = new byte[IMAGE_WIDTH * IMAGE_HEIGHT];
+        // Light source at the center, and another bright area far away in a corner
+        for (int row = 0; row < IMAGE_HEIGHT; row++) {
+            for (int col = 0; col < IMAGE_WIDTH; col++) {
+                boolean center = Math.abs(row - IMAGE_HEIGHT / 2) < 20 && Math.abs(col - IMAGE_WIDTH / 2) < 20;
+                boolean corner = row < 60 && col < 100;
+                plane[row * IMAGE_WIDTH + col] = (byte) (center ? 0xF0 : corner ? 0xC0 : 0x10);
+            }
+        }
+        ImageSample sample = new ImageSample(IMAGE_WIDTH, 1, IMAGE_HEIGHT, IMAGE_WIDTH, ByteBuffer.wrap(plane));
+        ContrastEngine engine = new ContrastEngine();
+        int wholeSampleContrast = engine.calculate(sample);
+        engine.setRingWidth(4);
+        assertTrue(engine.calculate(sample) > wholeSampleContrast);
+    }
+}
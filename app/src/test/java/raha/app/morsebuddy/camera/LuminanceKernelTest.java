@@ -0,0 +1,148 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import raha.app.morsebuddy.util.Constants;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that word-wise luminance reduction is bit-identical to the byte-at-a-time loops it replaces.
+ */
+public class LuminanceKernelTest {
+    private static final int SAMPLE_SIZE = Constants.SAMPLE_SIZE_IN_PIXEL;
+    private static final int TARGET_SIZE = Constants.TARGET_SIZE_IN_PIXEL;
+    private static final int IMAGE_WIDTH = 320;
+    private static final int IMAGE_HEIGHT = 240;
+
+    /* The per-frame loops as they were in SignalRecorder */
+    private static int legacyContrast(byte[] samplePixels, byte[] targetPixels) {
+        int total = 0;
+        for (byte samplePixel : samplePixels) {
+            total += samplePixel & 0xff;
+        }
+        int sampleMean = total / samplePixels.length;
+        total = 0;
+        for (byte targetPixel : targetPixels) {
+            total += targetPixel & 0xff;
+        }
+        int targetMean = total / targetPixels.length;
+        return Math.max(targetMean - sampleMean, 0);
+    }
+
+    /* The central target as it was extracted by ImageSample */
+    private static byte[] legacyTarget(byte[] samplePixels) {
+        byte[] target = new byte[TARGET_SIZE * TARGET_SIZE];
+        int index = 0;
+        for (int x = (SAMPLE_SIZE - TARGET_SIZE) / 2; x < (SAMPLE_SIZE + TARGET_SIZE) / 2; x++) {
+            for (int y = (SAMPLE_SIZE - TARGET_SIZE) / 2; y < (SAMPLE_SIZE + TARGET_SIZE) / 2; y++) {
+                target[index++] = samplePixels[SAMPLE_SIZE * x + y];
+            }
+        }
+        return target;
+    }
+
+    private static int byteLoop(byte[] bytes, int from, int to) {
+        int total = 0;
+        for (int i = from; i < to; i++) {
+            total += bytes[i] & 0xff;
+        }
+        return total;
+    }
+
+    private static ImageSample randomSample(Random random) {
+        byte[] plane = new byte[IMAGE_WIDTH * IMAGE_HEIGHT];
+        random.nextBytes(plane);
+        return new ImageSample(IMAGE_WIDTH, 1, IMAGE_HEIGHT, IMAGE_WIDTH, ByteBuffer.wrap(plane));
+    }
+
+    @Test
+    public void sumUnsigned_matchesByteLoop() {
+        Random random = new Random(1L);
+        byte[] bytes = new byte[8192];
+        random.nextBytes(bytes);
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).rewind();
+        for (int i = 0; i < 2000; i++) {
+            int from = random.nextInt(bytes.length);
+            int to = from + random.nextInt(bytes.length - from + 1);
+            int expected = byteLoop(bytes, from, to);
+            assertEquals(expected, LuminanceKernel.sumUnsigned(heap, from, to));
+            assertEquals(expected, LuminanceKernel.sumUnsigned(direct, from, to));
+        }
+    }
+
+    @Test
+    public void sumUnsigned_saturatedBytesDoNotOverflowLanes() {
+        byte[] bytes = new byte[1 << 16];
+        Arrays.fill(bytes, (byte) 0xFF);
+        assertEquals(byteLoop(bytes, 0, bytes.length), LuminanceKernel.sumUnsigned(ByteBuffer.wrap(bytes), 0, bytes.length));
+        assertEquals(byteLoop(bytes, 3, bytes.length - 5), LuminanceKernel.sumUnsigned(ByteBuffer.wrap(bytes), 3, bytes.length - 5));
+    }
+
+    @Test
+    public void contrast_matchesLegacyLoops() {
+        Random random = new Random(2L);
+        ContrastEngine engine = new ContrastEngine();
+        for (int i = 0; i < 200; i++) {
+            ImageSample sample = randomSample(random);
+            byte[] pixels = sample.getSamplePixels();
+            // Brighten the target area now and then, so contrast is not always zero
+            if (i % 2 == 0) {
+                for (int x = (SAMPLE_SIZE - TARGET_SIZE) / 2; x < (SAMPLE_SIZE + TARGET_SIZE) / 2; x++) {
+                    for (int y = (SAMPLE_SIZE - TARGET_SIZE) / 2; y < (SAMPLE_SIZE + TARGET_SIZE) / 2; y++) {
+                        pixels[SAMPLE_SIZE * x + y] = (byte) (0x80 | random.nextInt(0x80));
+                    }
+                }
+            }
+            int expected = legacyContrast(pixels, legacyTarget(pixels));
+            assertEquals(expected, engine.calculate(sample));
+            sample.prepareIntegral();
+            assertEquals(expected, engine.calculate(sample));
+        }
+    }
+
+    @Ignore("Microbenchmark; run manually")
+    @Test
+    public void benchmark_contrastPerFrame() {
+        final int frames = 200_000;
+        Random random = new Random(3L);
+        ImageSample sample = randomSample(random);
+        byte[] pixels = sample.getSamplePixels();
+        byte[] target = legacyTarget(pixels);
+        ContrastEngine engine = new ContrastEngine();
+        // A single target is summed word-wise; the integral image is only built for many regions, and must not serve it here
+        assertFalse(sample.isIntegralValid());
+        long legacySum = 0;
+        long wordWiseSum = 0;
+        long legacyTime = Long.MAX_VALUE;
+        long wordWiseTime = Long.MAX_VALUE;
+        // Best of a few rounds, the first ones warming up
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                legacySum += legacyContrast(pixels, target);
+            }
+            legacyTime = Math.min(legacyTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                wordWiseSum += engine.calculate(sample);
+            }
+            wordWiseTime = Math.min(wordWiseTime, System.nanoTime() - start);
+        }
+        assertFalse(sample.isIntegralValid());
+        // Both loops must agree frame for frame
+        assertEquals(legacySum, wordWiseSum);
+        Logger.getLogger(LuminanceKernelTest.class.getName()).info(String.format(Locale.ROOT,
+                "contrast per frame: byte loops %.1f ns, word-wise %.1f ns, %.2fx",
+                (double) legacyTime / frames, (double) wordWiseTime / frames, (double) legacyTime / wordWiseTime));
+    }
+}
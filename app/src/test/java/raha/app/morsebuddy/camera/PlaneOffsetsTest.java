@@ -0,0 +1,89 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the offsets of the sample-pixels against plain row and column arithmetic, for padded rows and interleaved pixels.
+ */
+public class PlaneOffsetsTest {
+    private static final int SAMPLE_SIZE = ImageSample.SAMPLE_SIZE;
+    /* Same argument order as SignalRecorder.processImage: rows of the plane first, then columns */
+    private static final int ROWS = 240;
+    private static final int COLUMNS = 320;
+
+    /* Every third row, and every third column of the central square */
+    private static void assertOffsets(int rowStride, int pixelStride) {
+        PlaneOffsets planeOffsets = new PlaneOffsets(rowStride, pixelStride, ROWS, COLUMNS);
+        assertTrue(planeOffsets.matches(rowStride, pixelStride, ROWS, COLUMNS));
+        assertFalse(planeOffsets.matches(rowStride + 1, pixelStride, ROWS, COLUMNS));
+        assertEquals(SAMPLE_SIZE * SAMPLE_SIZE, planeOffsets.getCount());
+        final int step = ROWS / SAMPLE_SIZE;
+        final int firstColumn = 42;
+        int max = 0;
+        for (int r = 0; r < SAMPLE_SIZE; r++) {
+            for (int c = 0; c < SAMPLE_SIZE; c++) {
+                final int expected = r * step * rowStride + (firstColumn + c * step) * pixelStride;
+                assertEquals("row=" + r + " column=" + c, expected, planeOffsets.getOffsets()[r * SAMPLE_SIZE + c]);
+                max = Math.max(max, expected);
+            }
+        }
+        assertEquals(max, planeOffsets.getMaxOffset());
+
+        // Sampled pixels are the plane bytes at those offsets
+        byte[] plane = new byte[rowStride * ROWS];
+        new Random(rowStride * 31L + pixelStride).nextBytes(plane);
+        ImageSample sample = new ImageSample();
+        sample.fill(planeOffsets, ByteBuffer.wrap(plane));
+        for (int i = 0; i < SAMPLE_SIZE * SAMPLE_SIZE; i++) {
+            assertEquals(plane[planeOffsets.getOffsets()[i]], sample.getSamplePixels()[i]);
+        }
+    }
+
+    @Test
+    public void packedRows() {
+        assertOffsets(COLUMNS, 1);
+    }
+
+    @Test
+    public void paddedRows() {
+        assertOffsets(COLUMNS + 64, 1);
+    }
+
+    @Test
+    public void interleavedPixels() {
+        // Row stride is in bytes, it already spans the pixel stride
+        assertOffsets(COLUMNS * 2, 2);
+        assertOffsets(COLUMNS * 2 + 32, 2);
+    }
+
+    @Test
+    public void smallGeometryClearsTheRest() {
+        ImageSample sample = new ImageSample();
+        byte[] bright = new byte[COLUMNS * ROWS];
+        Arrays.fill(bright, (byte) 0xF0);
+        sample.fill(new PlaneOffsets(COLUMNS, 1, ROWS, COLUMNS), ByteBuffer.wrap(bright));
+
+        // Fewer rows and columns than the sample has
+        PlaneOffsets small = new PlaneOffsets(60, 1, 60, 60);
+        assertEquals(60 * 60, small.getCount());
+        byte[] dim = new byte[60 * 60];
+        Arrays.fill(dim, (byte) 0x10);
+        sample.fill(small, ByteBuffer.wrap(dim));
+        byte[] pixels = sample.getSamplePixels();
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals("pixel " + i, i < small.getCount() ? 0x10 : 0, pixels[i]);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsShortPlane() {
+        PlaneOffsets planeOffsets = new PlaneOffsets(COLUMNS, 1, ROWS, COLUMNS);
+        new ImageSample().fill(planeOffsets, ByteBuffer.wrap(new byte[COLUMNS * ROWS / 2]));
+    }
+}
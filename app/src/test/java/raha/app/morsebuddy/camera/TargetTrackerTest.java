@@ -0,0 +1,146 @@
+package raha.app.morsebuddy.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds synthetic frames with blinking squares to the tracker, and checks where the target goes.
+ */
+public class TargetTrackerTest {
+    private static final int SAMPLE_SIZE = ImageSample.SAMPLE_SIZE;
+    private static final int SIZE = 8;
+
+    /* Dim noisy background, with a square of the given brightness */
+    private static void drawFrame(ImageSample sample, Random random, int top, int left, int brightness) {
+        byte[] pixels = sample.getSamplePixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (20 + random.nextInt(3));
+        }
+        drawSquare(pixels, top, left, brightness);
+    }
+
+    private static void drawSquare(byte[] pixels, int top, int left, int brightness) {
+        for (int row = top; row < top + SIZE; row++) {
+            Arrays.fill(pixels, row * SAMPLE_SIZE + left, row * SAMPLE_SIZE + left + SIZE, (byte) brightness);
+        }
+    }
+
+    @Test
+    public void followsBlinkingSource() {
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(0, 0);
+        ImageSample sample = new ImageSample();
+        Random random = new Random(1L);
+        boolean moved = false;
+        for (int frame = 0; frame < 60; frame++) {
+            // On for three frames, off for three
+            drawFrame(sample, random, 50, 30, frame % 6 < 3 ? 240 : 20);
+            moved |= tracker.update(sample, SIZE);
+        }
+        assertTrue(moved);
+        assertEquals(50, tracker.getTop());
+        assertEquals(30, tracker.getLeft());
+    }
+
+    @Test
+    public void followsDriftingSource() {
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(40, 40);
+        ImageSample sample = new ImageSample();
+        Random random = new Random(2L);
+        int left = 40;
+        for (int frame = 0; frame < 150; frame++) {
+            if (frame >= 30 && frame < 90 && frame % 10 == 0) {
+                // One pixel to the right, well within the local search
+                left++;
+            }
+            drawFrame(sample, random, 40, left, frame % 4 < 2 ? 240 : 20);
+            tracker.update(sample, SIZE);
+        }
+        // Variance fades slowly, so the target settles some frames after the source stops
+        assertEquals(40, tracker.getTop());
+        assertEquals(left, tracker.getLeft());
+    }
+
+    @Test
+    public void staysStillWithoutBlinking() {
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(36, 36);
+        ImageSample sample = new ImageSample();
+        Random random = new Random(3L);
+        for (int frame = 0; frame < 60; frame++) {
+            // Steady bright square elsewhere, and sensor noise
+            drawFrame(sample, random, 5, 5, 240);
+            assertFalse(tracker.update(sample, SIZE));
+        }
+        assertEquals(36, tracker.getTop());
+        assertEquals(36, tracker.getLeft());
+    }
+
+    @Test
+    public void waitsForWarmUp() {
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(0, 0);
+        ImageSample sample = new ImageSample();
+        Random random = new Random(4L);
+        for (int frame = 0; frame < 10; frame++) {
+            drawFrame(sample, random, 50, 30, frame % 2 == 0 ? 240 : 20);
+            assertFalse(tracker.update(sample, SIZE));
+        }
+        assertFalse(tracker.isWarmedUp());
+        assertEquals(0, tracker.getTop());
+    }
+
+    @Test
+    public void findsSourcesStrongestFirst() {
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(0, 0);
+        ImageSample sample = new ImageSample();
+        Random random = new Random(5L);
+        for (int frame = 0; frame < 60; frame++) {
+            final boolean on = frame % 6 < 3;
+            drawFrame(sample, random, 10, 10, on ? 120 : 20);
+            drawSquare(sample.getSamplePixels(), 50, 50, on ? 240 : 20);
+            drawSquare(sample.getSamplePixels(), 10, 60, on ? 180 : 20);
+            // Steady lamp, not a source
+            drawSquare(sample.getSamplePixels(), 60, 10, 240);
+            tracker.update(sample, SIZE);
+        }
+        int[] tops = new int[5];
+        int[] lefts = new int[5];
+        assertEquals(3, tracker.findSources(SIZE, 0, 5, tops, lefts));
+        assertArrayEquals(new int[]{50, 10, 10}, Arrays.copyOf(tops, 3));
+        assertArrayEquals(new int[]{50, 60, 10}, Arrays.copyOf(lefts, 3));
+
+        // Windows already taken, e.g. the target, are kept and never found again
+        tops[0] = 10;
+        lefts[0] = 60;
+        assertEquals(3, tracker.findSources(SIZE, 1, 5, tops, lefts));
+        assertArrayEquals(new int[]{10, 50, 10}, Arrays.copyOf(tops, 3));
+        assertArrayEquals(new int[]{60, 50, 10}, Arrays.copyOf(lefts, 3));
+
+        // At most the given count
+        assertEquals(2, tracker.findSources(SIZE, 0, 2, tops, lefts));
+        assertArrayEquals(new int[]{50, 10}, Arrays.copyOf(tops, 2));
+    }
+
+    @Test
+    public void findsNoSourcesBeforeWarmUp() {
+        TargetTracker tracker = new TargetTracker();
+        tracker.reset(0, 0);
+        ImageSample sample = new ImageSample();
+        Random random = new Random(6L);
+        for (int frame = 0; frame < 10; frame++) {
+            drawFrame(sample, random, 50, 30, frame % 2 == 0 ? 240 : 20);
+            tracker.update(sample, SIZE);
+        }
+        int[] tops = new int[]{7, 0};
+        int[] lefts = new int[]{7, 0};
+        assertEquals(1, tracker.findSources(SIZE, 1, 2, tops, lefts));
+        assertEquals(7, tops[0]);
+    }
+}
@@ -0,0 +1,94 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import raha.app.morsebuddy.util.MorseMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sliding floor against a brute-force one, that it follows ambient light, and that it leaves a steady signal as it is.
+ */
+public class AdaptiveBaselineTest {
+
+    @Test
+    public void matchesBruteForceFloor() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 50; trial++) {
+            final int length = random.nextInt(300);
+            final int window = 1 + random.nextInt(40);
+            int[] values = new int[length];
+            long[] timestamps = new long[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = random.nextInt(100);
+                timestamps[i] = i * 1000L;
+            }
+            SignalStore detrended = AdaptiveBaseline.detrend(SignalStore.of(values, timestamps), window);
+            assertEquals(length, detrended.size());
+            for (int i = 0; i < length; i++) {
+                int floor = Integer.MAX_VALUE;
+                for (int j = Math.max(i - window / 2, 0); j <= Math.min(i + window / 2, length - 1); j++) {
+                    floor = Math.min(floor, values[j]);
+                }
+                assertEquals(values[i] - floor, detrended.get(i));
+                assertEquals(timestamps[i], detrended.getTimestamp(i));
+            }
+        }
+    }
+
+    @Test
+    public void followsAmbientLight() {
+        // Dots on a background that brightens during the session
+        final int length = 600;
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            final int ambient = i * 60 / length;
+            values[i] = ambient + (i % 20 < 5 ? 40 : 0);
+        }
+        final int baseline = 20;
+        SignalStore detrended = AdaptiveBaseline.detrend(SignalStore.of(values, null), 60);
+        int[] runs = Translator.toRuns(detrended, false, baseline);
+        assertNotNull(runs);
+        // Every dot and gap is kept apart, which a fixed baseline cannot do
+        for (int i = 0; i < runs.length; i++) {
+            assertEquals(i % 2 == 0 ? 5 : -15, runs[i], i == runs.length - 1 ? 1 : 0);
+        }
+        assertTrue(Translator.toRuns(SignalStore.of(values, null), false, baseline).length < runs.length);
+    }
+
+    @Test
+    public void keepsSteadySignal() {
+        // Slow keying at 30 fps, with the recorder's default window: one unit is 8 frames, the window 120
+        final int unitLength = 8;
+        final int window = 4 * 30;
+        Random random = new Random(6);
+        StringBuilder units = new StringBuilder("0000000");
+        for (char c : "SOS TOO".toCharArray()) {
+            if (c == ' ') {
+                units.append("0000");
+                continue;
+            }
+            String code = MorseMap.letterToMorse(c);
+            for (int e = 0; e < code.length(); e++) {
+                units.append(code.startsWith(MorseMap.SIGN_DASH, e) ? "1110" : "10");
+            }
+            units.append("00");
+        }
+        int[] values = new int[units.length() * unitLength];
+        for (int i = 0; i < values.length; i++) {
+            // Steady ambient: contrast of dark frames is noise just above zero
+            values[i] = units.charAt(i / unitLength) == '1' ? 60 + random.nextInt(20) : random.nextInt(5);
+        }
+        SignalStore raw = SignalStore.of(values, null);
+        SignalStore detrended = AdaptiveBaseline.detrend(raw, window);
+        for (int i = 0; i < values.length; i++) {
+            // Floor of every window is the lowest noise, never a mark
+            assertTrue(values[i] - detrended.get(i) >= 0 && values[i] - detrended.get(i) < 5);
+        }
+        for (int baseline = 5; baseline < 55; baseline += 5) {
+            assertArrayEquals(Translator.toRuns(raw, false, baseline), Translator.toRuns(detrended, false, baseline));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the runs of an indexed session are the same as those built from its frames, for every baseline.
+ */
+public class BaselineIndexTest {
+
+    @Test
+    public void emptySessionHasNoRuns() {
+        BaselineIndex index = BaselineIndex.of(SignalStore.of(new int[0], null), false);
+        assertEquals(0, index.getLevelCount());
+        assertNull(index.getRuns(0));
+    }
+
+    @Test
+    public void matchesRawFramesForEveryBaseline() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 100; trial++) {
+            final int length = 1 + random.nextInt(400);
+            int[] values = new int[length];
+            long[] timestamps = new long[length];
+            long time = 0L;
+            for (int i = 0; i < length; i++) {
+                // Few levels, so that consecutive frames are often merged
+                values[i] = random.nextInt(4) == 0 ? random.nextInt(128) : (i / 7 % 2) * 60 + random.nextInt(3);
+                time += random.nextInt(40_000_000);
+                timestamps[i] = time;
+            }
+            SignalStore signal = SignalStore.of(values, timestamps);
+            BaselineIndex framesIndex = BaselineIndex.of(signal, false);
+            BaselineIndex timestampsIndex = BaselineIndex.of(signal, true);
+            for (int baseline = -1; baseline <= 128; baseline++) {
+                assertArrayEquals(Translator.toRuns(signal, false, baseline), framesIndex.getRuns(baseline));
+                assertArrayEquals(Translator.toRuns(signal, true, baseline), timestampsIndex.getRuns(baseline));
+            }
+        }
+    }
+
+    @Test
+    public void matchesRunLengthSignalForEveryBaseline() {
+        Random random = new Random(13);
+        for (int trial = 0; trial < 100; trial++) {
+            RunLengthSignal recording = new RunLengthSignal(30 + random.nextInt(40), 1 + random.nextInt(3));
+            final int length = 1 + random.nextInt(400);
+            long time = 0L;
+            for (int i = 0; i < length; i++) {
+                time += 30_000_000L + random.nextInt(5_000_000);
+                recording.append((i / 9 % 2) * 80 + random.nextInt(20), time);
+            }
+            RunLengthSignal signal = recording.copy();
+            BaselineIndex framesIndex = BaselineIndex.of(signal, false);
+            BaselineIndex timestampsIndex = BaselineIndex.of(signal, true);
+            for (int baseline = -1; baseline <= 128; baseline++) {
+                assertArrayEquals(Translator.toRuns(signal, false, baseline), framesIndex.getRuns(baseline));
+                assertArrayEquals(Translator.toRuns(signal, true, baseline), timestampsIndex.getRuns(baseline));
+            }
+        }
+    }
+}
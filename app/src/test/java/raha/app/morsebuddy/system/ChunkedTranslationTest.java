@@ -0,0 +1,231 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the chunked stages are identical to the sequential ones, and that their chunks check the token.
+ * Their speedup against the number of cores is measured by a benchmark, run manually.
+ */
+public class ChunkedTranslationTest {
+
+    /* Frames of a long random message with noisy levels and jittered durations, and their camera timestamps */
+    private static SignalStore randomSignal(Random random, int elements, boolean withTimestamps) {
+        int[] values = new int[elements * 30];
+        long[] timestamps = withTimestamps ? new long[values.length] : null;
+        int index = 0;
+        long time = 0L;
+        // Leading silence
+        for (int f = 0; f < 50; f++) {
+            values[index++] = random.nextInt(20);
+        }
+        for (int i = 0; i < elements; i++) {
+            final int units = i % 2 == 0 ? (random.nextBoolean() ? 1 : 3) : (new int[]{1, 1, 3, 7})[random.nextInt(4)];
+            final int frames = Math.max(1, units * 3 + random.nextInt(3) - 1);
+            for (int f = 0; f < frames; f++) {
+                values[index++] = i % 2 == 0 ? 150 + random.nextInt(100) : random.nextInt(60);
+            }
+        }
+        if (timestamps != null) {
+            for (int f = 0; f < index; f++) {
+                time += 16_000_000L + random.nextInt(2_000_000);
+                timestamps[f] = time;
+            }
+        }
+        return SignalStore.of(Arrays.copyOf(values, index), timestamps == null ? null : Arrays.copyOf(timestamps, index));
+    }
+
+    private static int[] randomNormalized(Random random, int length) {
+        int[] normalized = new int[length];
+        for (int i = 0; i < length; i++) {
+            if (i % 2 == 0) {
+                normalized[i] = random.nextBoolean() ? 1 : 3;
+            } else {
+                final int space = random.nextInt(10);
+                normalized[i] = space < 6 ? -1 : space < 9 ? -3 : -7;
+            }
+        }
+        return normalized;
+    }
+
+    @Test
+    public void runsIdenticalToSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Random random = new Random(67);
+        for (int trial = 0; trial < 6; trial++) {
+            SignalStore signal = randomSignal(random, 16_000 + random.nextInt(16_000), trial % 2 == 1);
+            for (int baseline : new int[]{30, 59, 100, 149, 300}) {
+                assertArrayEquals(Translator.toRuns(signal, trial % 2 == 1, baseline), ChunkedTranslation.toRuns(signal, trial % 2 == 1, baseline, CancellationToken.NONE, pool));
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void indexRunsIdenticalToSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Random random = new Random(79);
+        for (int trial = 0; trial < 4; trial++) {
+            SignalStore signal = randomSignal(random, 16_000 + random.nextInt(16_000), trial % 2 == 1);
+            for (int baseline : new int[]{30, 59, 100, 149, 300}) {
+                // A fresh index, so the runs are built in chunks rather than taken from the cache
+                BaselineIndex index = BaselineIndex.of(signal, trial % 2 == 1);
+                assertArrayEquals(Translator.toRuns(signal, trial % 2 == 1, baseline), index.getRuns(baseline, CancellationToken.NONE, pool));
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void normalizationIdenticalToSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Random random = new Random(83);
+        RatioNormalizer ratio = new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE);
+        KMeansNormalizer kMeans = new KMeansNormalizer();
+        for (int trial = 0; trial < 4; trial++) {
+            int[] runs = Translator.toRuns(randomSignal(random, 16_000 + random.nextInt(16_000), false), false, 100);
+            RatioNormalizer.Estimate estimate = ratio.estimate(runs);
+            RatioNormalizer.Estimate chunkedEstimate = ratio.estimate(runs, CancellationToken.NONE, pool);
+            assertArrayEquals(estimate.getNormalized(), chunkedEstimate.getNormalized());
+            assertEquals(estimate.getUnit(), chunkedEstimate.getUnit(), 0.0);
+            assertEquals(estimate.getConfidence(), chunkedEstimate.getConfidence(), 0.0f);
+            assertArrayEquals(ratio.normalize(runs), ratio.normalize(runs, CancellationToken.NONE, pool));
+            assertArrayEquals(kMeans.normalize(runs), kMeans.normalize(runs, CancellationToken.NONE, pool));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void chunksCheckTheToken() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        SignalStore signal = randomSignal(new Random(89), 16_000, false);
+        int[] normalized = randomNormalized(new Random(97), 100_000);
+        try {
+            ChunkedTranslation.pack(normalized, token, pool);
+            fail("pack");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        try {
+            ChunkedTranslation.decode(normalized, token, pool);
+            fail("decode");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        BaselineIndex index = BaselineIndex.of(signal, false);
+        try {
+            index.getRuns(100, token, pool);
+            fail("index runs");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        // Left unbuilt, not cached as empty
+        assertArrayEquals(Translator.toRuns(signal, false, 100), index.getRuns(100, CancellationToken.NONE, pool));
+        pool.shutdown();
+    }
+
+    @Test
+    public void packingAndTextIdenticalToSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Random random = new Random(71);
+        MorseDecoder decoder = new MorseDecoder();
+        for (int trial = 0; trial < 10; trial++) {
+            int[] normalized = randomNormalized(random, 1 + random.nextInt(200_000));
+            assertArrayEquals(PackedSymbols.pack(normalized), ChunkedTranslation.pack(normalized, CancellationToken.NONE, pool));
+            assertEquals(decoder.decode(normalized), ChunkedTranslation.decode(normalized, CancellationToken.NONE, pool));
+        }
+        pool.shutdown();
+    }
+
+    /* Best time of a stage in nanoseconds, the first rounds warming up */
+    private static long best(Runnable stage) {
+        long time = Long.MAX_VALUE;
+        for (int round = 0; round < 15; round++) {
+            final long start = System.nanoTime();
+            stage.run();
+            time = Math.min(time, System.nanoTime() - start);
+        }
+        return time;
+    }
+
+    /* Best time of the runs of a fresh index; index caches the runs it built, so each round takes a new one, built before the clock starts */
+    private static long bestIndexRuns(SignalStore signal, int baseline, ForkJoinPool pool) {
+        long time = Long.MAX_VALUE;
+        for (int round = 0; round < 15; round++) {
+            BaselineIndex index = BaselineIndex.of(signal, true);
+            final long start = System.nanoTime();
+            if (pool == null) {
+                index.getRuns(baseline);
+            } else {
+                index.getRuns(baseline, CancellationToken.NONE, pool);
+            }
+            time = Math.min(time, System.nanoTime() - start);
+        }
+        return time;
+    }
+
+    @Ignore("Benchmark; run manually")
+    @Test
+    public void benchmark_chunkedAgainstSequential() {
+        final int baseline = 100;
+        Random random = new Random(73);
+        // Each stage takes its input from the previous one, all of the same long signal
+        final SignalStore signal = randomSignal(random, 200_000, true);
+        final int[] runs = Translator.toRuns(signal, true, baseline);
+        final RatioNormalizer ratio = new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE);
+        final KMeansNormalizer kMeans = new KMeansNormalizer();
+        final int[] normalized = ratio.normalize(runs);
+        final MorseDecoder decoder = new MorseDecoder();
+        final String text = decoder.decode(normalized);
+
+
+        final Logger logger = Logger.getLogger(ChunkedTranslationTest.class.getName());
+        logger.info(String.format(Locale.ROOT, "%d frames, %d runs", signal.size(), runs.length));
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= cores; parallelism++) {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            // Chunked stages must give the same results as the sequential ones they are timed against
+            assertArrayEquals(runs, ChunkedTranslation.toRuns(signal, true, baseline, CancellationToken.NONE, pool));
+            assertArrayEquals(runs, BaselineIndex.of(signal, true).getRuns(baseline, CancellationToken.NONE, pool));
+            assertArrayEquals(normalized, ratio.normalize(runs, CancellationToken.NONE, pool));
+            assertArrayEquals(kMeans.normalize(runs), kMeans.normalize(runs, CancellationToken.NONE, pool));
+            assertEquals(text, ChunkedTranslation.decode(normalized, CancellationToken.NONE, pool));
+
+            // Sequential stages are timed again next to the chunked ones, so both run equally warmed up
+            final long sequentialRuns = best(() -> Translator.toRuns(signal, true, baseline));
+            final long sequentialIndexRuns = bestIndexRuns(signal, baseline, null);
+            final long sequentialRatio = best(() -> ratio.normalize(runs));
+            final long sequentialKMeans = best(() -> kMeans.normalize(runs));
+            final long sequentialDecode = best(() -> {
+                PackedSymbols.pack(normalized);
+                decoder.decode(normalized);
+            });
+            final long chunkedRuns = best(() -> ChunkedTranslation.toRuns(signal, true, baseline, CancellationToken.NONE, pool));
+            final long chunkedIndexRuns = bestIndexRuns(signal, baseline, pool);
+            final long chunkedRatio = best(() -> ratio.normalize(runs, CancellationToken.NONE, pool));
+            final long chunkedKMeans = best(() -> kMeans.normalize(runs, CancellationToken.NONE, pool));
+            final long chunkedDecode = best(() -> {
+                ChunkedTranslation.pack(normalized, CancellationToken.NONE, pool);
+                ChunkedTranslation.decode(normalized, CancellationToken.NONE, pool);
+            });
+            pool.shutdown();
+            // Ratio is sequential time over chunked time; above 1 means the chunked stage is faster
+            logger.info(String.format(Locale.ROOT, "parallelism %d of %d cores: sequential runs %.1f ms, index runs %.1f ms, ratio %.1f ms, k-means %.1f ms, decode %.1f ms;"
+                            + " speedup runs %.2fx, index runs %.2fx, ratio %.2fx, k-means %.2fx, decode %.2fx",
+                    parallelism, cores, sequentialRuns / 1e6, sequentialIndexRuns / 1e6, sequentialRatio / 1e6, sequentialKMeans / 1e6, sequentialDecode / 1e6,
+                    (double) sequentialRuns / chunkedRuns, (double) sequentialIndexRuns / chunkedIndexRuns,
+                    (double) sequentialRatio / chunkedRatio, (double) sequentialKMeans / chunkedKMeans, (double) sequentialDecode / chunkedDecode));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import raha.app.morsebuddy.clustering.KMeans;
+
+import static org.junit.Assert.*;
+
+/**
+ * Regression of the normalizer against the object-based k-means it replaced; the output must be identical.
+ */
+public class KMeansNormalizerTest {
+
+    /* The normalization as it was, on top of KMeans, with its centroids ranked in the given order */
+    private static int[] legacyNormalize(int[] sourceArray, Comparator<KMeans.Centroid> order) {
+        final List<Integer> negativeList = new ArrayList<>();
+        final List<Integer> positiveList = new ArrayList<>();
+        for (Integer integer : sourceArray) {
+            if (integer < 0) {
+                negativeList.add(integer);
+            } else if (integer > 0) {
+                positiveList.add(integer);
+            }
+        }
+        int _oneUnit = Collections.max(negativeList);
+        int _sevenUnit = Collections.min(negativeList);
+        int _threeUnit = (_oneUnit + _sevenUnit) / 2;
+        int oneUnit = Collections.min(positiveList);
+        int threeUnit = Collections.max(positiveList);
+        KMeans.Centroid[] centroids = new KMeans.Centroid[]{new KMeans.Centroid(oneUnit), new KMeans.Centroid(threeUnit), new KMeans.Centroid(_oneUnit), new KMeans.Centroid(_threeUnit), new KMeans.Centroid(_sevenUnit)};
+        KMeans.Element[] elements = new KMeans.Element[sourceArray.length];
+        for (int i = 0; i < sourceArray.length; i++) {
+            elements[i] = new KMeans.Element(sourceArray[i]);
+        }
+        KMeans.Clusters clustered = KMeans.fit(centroids, elements, 100);
+        KMeans.Centroid[] clusteredCentroids = clustered.getCentroids();
+        KMeans.Element[] clusteredElements = clustered.getElements();
+        Arrays.sort(clusteredCentroids, order);
+        Map<Integer, Integer> map = new HashMap<>();
+        map.put(clusteredCentroids[0].getValue(), Translator.IntegerRepresentation.MINUS_7);
+        map.put(clusteredCentroids[1].getValue(), Translator.IntegerRepresentation.MINUS_3);
+        map.put(clusteredCentroids[2].getValue(), Translator.IntegerRepresentation.MINUS_1);
+        map.put(clusteredCentroids[3].getValue(), Translator.IntegerRepresentation.PLUS_1);
+        map.put(clusteredCentroids[4].getValue(), Translator.IntegerRepresentation.PLUS_3);
+        int[] normalized = new int[clusteredElements.length];
+        for (int i = 0; i < clusteredElements.length; i++) {
+            Integer normal = map.get(clusteredElements[i].getCenter());
+            normalized[i] = (normal == null ? (clusteredElements[i].getCenter() < 0 ? Translator.IntegerRepresentation.MINUS_1 : Translator.IntegerRepresentation.PLUS_1) : normal);
+        }
+        return normalized;
+    }
+
+    /* Alternating marks and spaces of a random message, with timing jitter */
+    private static int[] randomRuns(Random random, int unit, double jitter) {
+        final int length = 2 + random.nextInt(120);
+        int[] runs = new int[length];
+        for (int i = 0; i < length; i++) {
+            final int units = i % 2 == 0 ? (random.nextBoolean() ? 1 : 3) : (new int[]{1, 1, 1, 3, 7})[random.nextInt(5)];
+            final int duration = Math.max(1, (int) Math.round(units * unit * (1.0 + jitter * random.nextGaussian())));
+            runs[i] = i % 2 == 0 ? duration : -duration;
+        }
+        // Needs both signs
+        runs[1] = -Math.abs(runs[1]);
+        return runs;
+    }
+
+    @Test
+    public void identicalToObjectKMeans() {
+        KMeansNormalizer normalizer = new KMeansNormalizer();
+        Random random = new Random(17);
+        for (int trial = 0; trial < 1500; trial++) {
+            final int[] runs;
+            switch (trial % 3) {
+                case 0:
+                    // Frame counts; includes single-frame runs
+                    runs = randomRuns(random, 1 + random.nextInt(6), 0.3);
+                    break;
+                case 1:
+                    // Microseconds from camera timestamps
+                    runs = randomRuns(random, 30_000 + random.nextInt(200_000), 0.2);
+                    break;
+                default:
+                    // Arbitrary values, few distinct ones
+                    runs = new int[2 + random.nextInt(40)];
+                    for (int i = 0; i < runs.length; i++) {
+                        runs[i] = (random.nextInt(6) + 1) * (i % 2 == 0 ? 1 : -1);
+                    }
+                    break;
+            }
+            assertArrayEquals(Arrays.toString(runs), legacyNormalize(runs, Comparator.naturalOrder()), normalizer.normalize(runs));
+        }
+    }
+
+    @Test
+    public void identicalForHugeRuns() {
+        // Beyond the range where the placeholder centroid of the original algorithm is always farthest
+        KMeansNormalizer normalizer = new KMeansNormalizer();
+        Random random = new Random(19);
+        for (int trial = 0; trial < 200; trial++) {
+            int[] runs = randomRuns(random, 100_000, 0.2);
+            runs[runs.length - 1 - random.nextInt(runs.length - 1) / 2 * 2] = -(1 << 30) - random.nextInt(1 << 29);
+            runs[random.nextInt(runs.length / 2) * 2] = 1_500_000_000 + random.nextInt(600_000_000);
+            if (runs[1] > 0 || runs.length < 2) {
+                continue;
+            }
+            // Clusters must be identical; ranks are by value, where the difference-based compareTo of the legacy path overflows
+            assertArrayEquals(Arrays.toString(runs), legacyNormalize(runs, Comparator.comparingInt(KMeans.Centroid::getValue)), normalizer.normalize(runs));
+        }
+    }
+
+    @Test
+    public void longSessionInMicroseconds() {
+        // About an hour of keying at a unit of 0.3 s; the durations of each kind sum far past an int
+        final int unit = 300_000;
+        Random random = new Random(23);
+        int[] units = new int[24_000];
+        int[] runs = new int[units.length];
+        long markTotal = 0L;
+        for (int i = 0; i < units.length; i++) {
+            units[i] = i % 2 == 0 ? (random.nextBoolean() ? 1 : 3) : -(new int[]{1, 1, 3, 7})[random.nextInt(4)];
+            runs[i] = units[i] * unit;
+            markTotal += Math.max(runs[i], 0);
+        }
+        assertTrue(markTotal > Integer.MAX_VALUE);
+        assertArrayEquals(units, new KMeansNormalizer().normalize(runs));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleSign() {
+        new KMeansNormalizer().normalize(new int[]{3, 1, 3});
+    }
+}
@@ -0,0 +1,94 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import raha.app.morsebuddy.util.MorseMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Regression of the single-pass decoder against splitting the morse string, as the translator did before.
+ */
+public class MorseDecoderTest {
+
+    /* Text as it was decoded from the morse string */
+    private static String legacyDecode(String morse) {
+        StringBuilder outputBuilder = new StringBuilder();
+        String[] morseWords = morse.split(MorseMap.SIGN_SPACE_7U);
+        for (String morseWord : morseWords) {
+            String[] morseChars = morseWord.split(MorseMap.SIGN_SPACE_3U);
+            for (String morseChar : morseChars) {
+                Character asciiChar = MorseMap.morseToLetter(morseChar);
+                if (asciiChar != null) {
+                    outputBuilder.append(asciiChar);
+                }
+            }
+            outputBuilder.append(' ');
+        }
+        return outputBuilder.toString().trim();
+    }
+
+    @Test
+    public void identicalToSplitting() {
+        MorseDecoder decoder = new MorseDecoder();
+        Random random = new Random(47);
+        for (int trial = 0; trial < 3000; trial++) {
+            // Alternating marks and spaces; letters up to seven elements long, so some are unknown
+            int[] normalized = new int[1 + random.nextInt(80)];
+            final boolean markFirst = random.nextInt(4) > 0;
+            for (int i = 0; i < normalized.length; i++) {
+                if ((i % 2 == 0) == markFirst) {
+                    normalized[i] = random.nextBoolean() ? 1 : 3;
+                } else {
+                    final int space = random.nextInt(10);
+                    normalized[i] = space < 6 ? -1 : space < 9 ? -3 : -7;
+                }
+            }
+            final String morse = MorseDecoder.render(normalized);
+            assertEquals(morse, legacyDecode(morse), decoder.decode(normalized));
+        }
+    }
+
+    @Test
+    public void decodesPackedSymbols() {
+        // Thread decoder, taking turns with the array decodings on the same buffer
+        MorseDecoder decoder = MorseDecoder.get();
+        assertSame(decoder, MorseDecoder.get());
+        Random random = new Random(48);
+        for (int trial = 0; trial < 1000; trial++) {
+            int[] normalized = new int[random.nextInt(120)];
+            for (int i = 0; i < normalized.length; i++) {
+                if (i % 2 == 0) {
+                    normalized[i] = random.nextBoolean() ? 1 : 3;
+                } else {
+                    final int space = random.nextInt(10);
+                    normalized[i] = space < 6 ? -1 : space < 9 ? -3 : -7;
+                }
+            }
+            final long[] packed = PackedSymbols.pack(normalized);
+            final String expected = decoder.decode(normalized);
+            assertEquals(expected, decoder.decode(packed, normalized.length));
+            assertEquals(MorseDecoder.render(normalized), MorseDecoder.render(packed, normalized.length));
+        }
+    }
+
+    @Test
+    public void decodesEveryLetter() {
+        MorseDecoder decoder = new MorseDecoder();
+        final String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        for (int l = 0; l < letters.length(); l++) {
+            final String code = MorseMap.letterToMorse(letters.charAt(l));
+            int[] normalized = new int[code.length() * 2 - 1];
+            for (int e = 0; e < code.length(); e++) {
+                normalized[e * 2] = code.startsWith(MorseMap.SIGN_DASH, e) ? 3 : 1;
+                if (e > 0) {
+                    normalized[e * 2 - 1] = -1;
+                }
+            }
+            assertEquals(String.valueOf(letters.charAt(l)), decoder.decode(normalized));
+            assertEquals(code, MorseDecoder.render(normalized));
+        }
+    }
+}
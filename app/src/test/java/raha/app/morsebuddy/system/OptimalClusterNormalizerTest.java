@@ -0,0 +1,83 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the clusters are optimal, and that clean and jittered timings are normalized correctly.
+ */
+public class OptimalClusterNormalizerTest {
+
+    private static double cost(long[] values, int[] weights, int[] starts) {
+        double total = 0.0;
+        for (int c = 0; c < starts.length; c++) {
+            final int end = c + 1 < starts.length ? starts[c + 1] : values.length;
+            double sum = 0.0;
+            double weight = 0.0;
+            for (int i = starts[c]; i < end; i++) {
+                sum += (double) values[i] * weights[i];
+                weight += weights[i];
+            }
+            final double mean = sum / weight;
+            for (int i = starts[c]; i < end; i++) {
+                total += weights[i] * (values[i] - mean) * (values[i] - mean);
+            }
+        }
+        return total;
+    }
+
+    @Test
+    public void clustersAreOptimal() {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 300; trial++) {
+            final int n = 3 + random.nextInt(12);
+            long[] values = new long[n];
+            int[] weights = new int[n];
+            long value = 0L;
+            for (int i = 0; i < n; i++) {
+                value += 1 + random.nextInt(50);
+                values[i] = value;
+                weights[i] = 1 + random.nextInt(5);
+            }
+            final double optimal = cost(values, weights, OptimalClusterNormalizer.cluster(values, weights, 3));
+            // Every split in three contiguous clusters
+            for (int a = 1; a < n - 1; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    assertTrue(optimal <= cost(values, weights, new int[]{0, a, b}) + 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void normalizesJitteredTiming() {
+        OptimalClusterNormalizer normalizer = new OptimalClusterNormalizer();
+        Random random = new Random(29);
+        final int[] units = new int[]{1, -1, 3, -3, 1, -1, 1, -7, 3, -1, 3, -3, 1, -1, 3, -1, 1};
+        for (int trial = 0; trial < 100; trial++) {
+            final int unit = 40_000 + random.nextInt(100_000);
+            int[] runs = new int[units.length];
+            for (int i = 0; i < units.length; i++) {
+                runs[i] = (int) Math.round(units[i] * unit * (1.0 + 0.08 * random.nextGaussian()));
+            }
+            assertArrayEquals(units, normalizer.normalize(runs));
+        }
+    }
+
+    @Test
+    public void labelsMissingClustersByUnit() {
+        OptimalClusterNormalizer normalizer = new OptimalClusterNormalizer();
+        // Only dashes, and spaces between elements
+        assertArrayEquals(new int[]{3, -1, 3, -1, 3}, normalizer.normalize(new int[]{30, -10, 31, -11, 30}));
+        // Only dots, with letter and word spaces
+        assertArrayEquals(new int[]{1, -3, 1, -7, 1}, normalizer.normalize(new int[]{10, -30, 10, -70, 10}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleSign() {
+        new OptimalClusterNormalizer().normalize(new int[]{-3, -1});
+    }
+}
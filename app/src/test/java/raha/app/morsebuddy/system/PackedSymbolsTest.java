@@ -0,0 +1,57 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks packing round trips, across long boundaries, and the lazy views of a result.
+ */
+public class PackedSymbolsTest {
+    private static final int[] SYMBOLS = new int[]{-7, -3, -1, 1, 3};
+
+    @Test
+    public void roundTrips() {
+        Random random = new Random(53);
+        for (int length = 0; length < 100; length++) {
+            int[] normalized = new int[length];
+            for (int i = 0; i < length; i++) {
+                normalized[i] = SYMBOLS[random.nextInt(SYMBOLS.length)];
+            }
+            long[] packed = PackedSymbols.pack(normalized);
+            assertEquals((length + 20) / 21, packed.length);
+            assertArrayEquals(normalized, PackedSymbols.unpack(packed, length));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherValues() {
+        PackedSymbols.pack(new int[]{1, -2});
+    }
+
+    @Test
+    public void resultRendersLazily() {
+        // S O S
+        int[] normalized = new int[]{1, -1, 1, -1, 1, -3, 3, -1, 3, -1, 3, -3, 1, -1, 1, -1, 1};
+        Translator.Result result = new Translator.Result(7, 40, true, normalized, null, null);
+        Translator.Result copy = result.withSubmitCode(8);
+        assertEquals("SOS", result.getOutput());
+        assertEquals(MorseDecoder.render(normalized), copy.getMorse());
+        assertEquals("SOS", copy.getOutput());
+        assertEquals(8, copy.getSubmitCode());
+        assertArrayEquals(normalized, copy.getArray());
+
+        // Rendered at once, e.g. on the worker thread
+        Translator.Result rendered = new Translator.Result(10, 40, true, normalized, null, null).render();
+        assertEquals("SOS", rendered.getOutput());
+        assertEquals(copy.getMorse(), rendered.getMorse());
+
+        Translator.Result failed = new Translator.Result(9, 40, false, null, null, null);
+        assertNull(failed.getArray());
+        assertNull(failed.getMorse());
+        assertNull(failed.getOutput());
+        assertSame(failed, failed.render());
+    }
+}
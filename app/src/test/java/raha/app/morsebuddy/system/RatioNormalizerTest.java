@@ -0,0 +1,79 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the selection, the fast path on clean timings and the fallback on ambiguous ones.
+ */
+public class RatioNormalizerTest {
+
+    /* Fails if used; the fast path must decide */
+    private static final Translator.ArrayNormalizer NO_FALLBACK = new Translator.ArrayNormalizer() {
+        @Override
+        public int[] normalize(int[] sourceArray) {
+            throw new AssertionError("fallback used for " + Arrays.toString(sourceArray));
+        }
+    };
+
+    @Test
+    public void selectsKthSmallest() {
+        Random random = new Random(31);
+        for (int trial = 0; trial < 500; trial++) {
+            int[] values = new int[1 + random.nextInt(60)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt(20) - 5;
+            }
+            final int k = random.nextInt(values.length);
+            int[] sorted = values.clone();
+            Arrays.sort(sorted);
+            assertEquals(sorted[k], RatioNormalizer.select(values, 0, values.length, k));
+        }
+    }
+
+    @Test
+    public void normalizesCleanTimingWithoutFallback() {
+        RatioNormalizer normalizer = new RatioNormalizer(NO_FALLBACK, RatioNormalizer.DEFAULT_MIN_CONFIDENCE);
+        Random random = new Random(37);
+        final int[][] messages = new int[][]{
+                {1, -1, 3, -3, 1, -1, 1, -7, 3, -1, 3, -3, 1, -1, 3, -1, 1},
+                // Mostly dashes, median mark is a dash
+                {3, -1, 3, -1, 3, -3, 3, -1, 1, -7, 3, -1, 3},
+                // Only dots
+                {1, -1, 1, -1, 1, -3, 1, -7, 1},
+        };
+        for (int[] units : messages) {
+            for (int trial = 0; trial < 100; trial++) {
+                final int unit = 1_000 + random.nextInt(200_000);
+                int[] runs = new int[units.length];
+                for (int i = 0; i < units.length; i++) {
+                    runs[i] = (int) Math.round(units[i] * unit * (1.0 + 0.05 * random.nextGaussian()));
+                }
+                assertArrayEquals(units, normalizer.normalize(runs));
+                RatioNormalizer.Estimate estimate = normalizer.estimate(runs);
+                assertTrue(normalizer.isConfident(estimate));
+                assertArrayEquals(units, estimate.getNormalized());
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackWhenNotConfident() {
+        RatioNormalizer normalizer = new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE);
+        // Only dashes: the unit is taken from them, and the spaces between elements are a third of it
+        int[] runs = new int[]{30, -10, 31, -11, 30, -10, 29};
+        RatioNormalizer.Estimate estimate = normalizer.estimate(runs);
+        assertFalse(normalizer.isConfident(estimate));
+        assertTrue(estimate.getConfidence() < RatioNormalizer.DEFAULT_MIN_CONFIDENCE);
+        assertArrayEquals(new KMeansNormalizer().normalize(runs), normalizer.normalize(runs));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleSign() {
+        new RatioNormalizer(NO_FALLBACK, RatioNormalizer.DEFAULT_MIN_CONFIDENCE).normalize(new int[]{3, 1, 3});
+    }
+}
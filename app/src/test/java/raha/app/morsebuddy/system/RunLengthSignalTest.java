@@ -0,0 +1,130 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import raha.app.morsebuddy.util.MorseMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that run-length signals are compact, and translate to the same runs as the raw frames whenever exact;
+ * always at the baseline of the session.
+ */
+public class RunLengthSignalTest {
+    private static final int THRESHOLD = 40;
+
+    @Test
+    public void keepsOnlyEdgesOfRuns() {
+        RunLengthSignal signal = new RunLengthSignal(THRESHOLD, 1);
+        for (int i = 0; i < 100; i++) {
+            signal.append(i / 10 % 2 == 0 ? 10 : 90, i);
+        }
+        assertEquals(100, signal.getFrameCount());
+        // Ten runs; an edge frame on each side and an interior in between
+        assertTrue(signal.getSegmentCount() <= 30);
+        assertEquals(100, signal.copy().getFrameCount());
+    }
+
+    @Test
+    public void copiesLatestFrames() {
+        RunLengthSignal signal = new RunLengthSignal(THRESHOLD, 1);
+        for (int i = 0; i < 30; i++) {
+            signal.append(i < 20 ? 50 + i % 3 : 5, i);
+        }
+        int[] window = new int[25];
+        assertEquals(25, signal.copyLatest(window));
+        assertEquals(5, window[24]);
+        assertEquals(5, window[15]);
+        assertTrue(window[14] >= 50);
+        assertTrue(window[0] >= 50);
+    }
+
+    @Test
+    public void translatesLikeRawFramesWhenExact() {
+        Random random = new Random(7);
+        int exactCount = 0;
+        for (int trial = 0; trial < 200; trial++) {
+            RunLengthSignal signal = new RunLengthSignal(THRESHOLD, 1 + trial % 3);
+            final int length = 20 + random.nextInt(300);
+            int[] values = new int[length];
+            long[] timestamps = new long[length];
+            long time = 0L;
+            boolean on = random.nextBoolean();
+            for (int i = 0; i < length; i++) {
+                if (random.nextInt(8) == 0) {
+                    on = !on;
+                }
+                // Bright and dark levels with noise, and occasional partially exposed frames
+                values[i] = random.nextInt(10) == 0 ? 30 + random.nextInt(30) : on ? 70 + random.nextInt(20) : random.nextInt(20);
+                time += 30_000_000L + random.nextInt(5_000_000);
+                timestamps[i] = time;
+                signal.append(values[i], time);
+            }
+            RunLengthSignal complete = signal.copy();
+            SignalStore raw = SignalStore.of(values, timestamps);
+            for (int baseline = 0; baseline < 100; baseline += 5) {
+                if (!complete.isExact(baseline)) {
+                    continue;
+                }
+                exactCount++;
+                assertArrayEquals(Translator.toRuns(raw, false, baseline), Translator.toRuns(complete, false, baseline));
+                assertArrayEquals(Translator.toRuns(raw, true, baseline), Translator.toRuns(complete, true, baseline));
+            }
+            // Provisional threshold itself is always exact
+            assertTrue(complete.isExact(THRESHOLD));
+        }
+        assertTrue(exactCount > 1000);
+    }
+
+    @Test
+    public void translatesLikeRawFramesAtSessionBaseline() {
+        Random random = new Random(9);
+        final String letters = "ETIANMSURWDKGOHVFLPJBXCYZQ";
+        Translator translator = new Translator(new OptimalClusterNormalizer());
+        int successCount = 0;
+        for (int trial = 0; trial < 100; trial++) {
+            // Session baseline is the provisional threshold
+            final int baseline = 20 + random.nextInt(60);
+            RunLengthSignal signal = new RunLengthSignal(baseline, 1 + trial % 3);
+            final int unit = 2 + random.nextInt(6);
+            final int capacity = 4096;
+            int[] values = new int[capacity];
+            long[] timestamps = new long[capacity];
+            int length = 0;
+            // Keyed letters, with noisy levels on both sides of the baseline and partially exposed frames at the edges
+            for (int l = 0; l < 8 && length < capacity - 200; l++) {
+                final String code = MorseMap.letterToMorse(letters.charAt(random.nextInt(letters.length())));
+                for (int e = 0; e < code.length(); e++) {
+                    final int mark = code.startsWith(MorseMap.SIGN_DASH, e) ? 3 * unit : unit;
+                    final int space = e == code.length() - 1 ? (random.nextInt(3) == 0 ? 7 : 3) * unit : unit;
+                    for (int f = 0; f < mark + space; f++) {
+                        final boolean on = f < mark;
+                        final boolean edge = f == 0 || f == mark;
+                        values[length] = edge ? baseline - 10 + random.nextInt(20) : on ? baseline + 20 + random.nextInt(40) : random.nextInt(baseline);
+                        timestamps[length] = (length == 0 ? 0L : timestamps[length - 1]) + 16_000_000L + random.nextInt(1_000_000);
+                        signal.append(values[length], timestamps[length]);
+                        length++;
+                    }
+                }
+            }
+            SignalStore raw = SignalStore.of(Arrays.copyOf(values, length), Arrays.copyOf(timestamps, length));
+            RunLengthSignal complete = signal.copy();
+            assertTrue(complete.isExact(baseline));
+            for (int t = 0; t < 2; t++) {
+                final boolean useTimestamps = t == 1;
+                Translator.Result expected = translator.resolve(trial, raw, useTimestamps, baseline);
+                Translator.Result actual = translator.resolve(trial, complete, useTimestamps, baseline);
+                assertEquals(expected.isSuccess(), actual.isSuccess());
+                assertArrayEquals(expected.getArray(), actual.getArray());
+                assertEquals(expected.getOutput(), actual.getOutput());
+                if (expected.isSuccess()) {
+                    successCount++;
+                }
+            }
+        }
+        assertTrue(successCount > 150);
+    }
+}
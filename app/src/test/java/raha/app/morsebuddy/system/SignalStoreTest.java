@@ -0,0 +1,165 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks chunked appends, ring-style eviction and windowed copies of the signal store,
+ * and that translating from the store matches translating the plain recorded array.
+ */
+public class SignalStoreTest {
+    private static final int CHUNK_SIZE = 16;
+
+    @Test
+    public void growsAcrossChunks() {
+        SignalStore store = new SignalStore(new SignalStore.ChunkPool(CHUNK_SIZE, 4), 0);
+        for (int i = 0; i < CHUNK_SIZE * 10 + 3; i++) {
+            store.append(i, i * 10L);
+        }
+        assertEquals(CHUNK_SIZE * 10 + 3, store.size());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(i, store.get(i));
+            assertEquals(i * 10L, store.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void evictsOldestChunkWhenCapped() {
+        SignalStore store = new SignalStore(new SignalStore.ChunkPool(CHUNK_SIZE, 4), 3);
+        final int total = CHUNK_SIZE * 7 + 5;
+        for (int i = 0; i < total; i++) {
+            store.append(i, 0L);
+        }
+        // Latest frames are kept, within whole chunks
+        assertEquals(CHUNK_SIZE * 2 + 5, store.size());
+        assertEquals(total - store.size(), store.getEvictedCount());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(store.getEvictedCount() + i, store.get(i));
+        }
+    }
+
+    @Test
+    public void copiesLatestWindow() {
+        SignalStore store = new SignalStore(new SignalStore.ChunkPool(CHUNK_SIZE, 4), 0);
+        for (int i = 0; i < 50; i++) {
+            store.append(i, 0L);
+        }
+        int[] window = new int[20];
+        assertEquals(20, store.copyLatest(window));
+        for (int i = 0; i < window.length; i++) {
+            assertEquals(30 + i, window[i]);
+        }
+        // Shorter signal fills the window from the start
+        int[] wide = new int[80];
+        assertEquals(50, store.copyLatest(wide));
+        assertEquals(49, wide[49]);
+        assertEquals(0, wide[50]);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        SignalStore.ChunkPool pool = new SignalStore.ChunkPool(CHUNK_SIZE, 8);
+        SignalStore store = new SignalStore(pool, 0);
+        for (int i = 0; i < 40; i++) {
+            store.append(i, i);
+        }
+        SignalStore copy = store.copy();
+        store.clear();
+        for (int i = 0; i < 40; i++) {
+            store.append(-1, -1L);
+        }
+        assertEquals(40, copy.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, copy.get(i));
+            assertEquals(i, copy.getTimestamp(i));
+        }
+    }
+
+    /* Runs of a plain array, as built before recordings were kept in a store: trimmed copy, then one pass over it */
+    private static int[] legacyRuns(int[] givenArray, long[] timestamps, int baseline) {
+        int[] array = new int[givenArray.length];
+        boolean nonZeroFound = false;
+        for (int i = 0; i < givenArray.length; ++i) {
+            array[i] = Math.max(givenArray[i] - baseline, 0);
+            nonZeroFound |= array[i] != 0;
+        }
+        if (!nonZeroFound) {
+            return null;
+        }
+        int startIndex = 0;
+        while (array[startIndex] == 0) {
+            startIndex++;
+        }
+        int endIndex = array.length - 1;
+        while (array[endIndex] == 0) {
+            endIndex--;
+        }
+        int[] trimmedArray = Arrays.copyOfRange(array, startIndex, endIndex);
+        int[] newArray = new int[trimmedArray.length];
+        int index = 0;
+        boolean lastWasZero = false;
+        long count = 0;
+        for (int i = 0; i < trimmedArray.length; i++) {
+            final long duration = timestamps == null ? 1 : timestamps[startIndex + i + 1] - timestamps[startIndex + i];
+            if (trimmedArray[i] == 0) {
+                if (lastWasZero) {
+                    count -= duration;
+                } else {
+                    newArray[index++] = Translator.toRunLength(count, timestamps != null);
+                    lastWasZero = true;
+                    count = -duration;
+                }
+            } else {
+                if (lastWasZero) {
+                    newArray[index++] = Translator.toRunLength(count, timestamps != null);
+                    lastWasZero = false;
+                    count = duration;
+                } else {
+                    count += duration;
+                }
+            }
+        }
+        if (index < newArray.length) {
+            newArray[index++] = Translator.toRunLength(count, timestamps != null);
+        }
+        return Arrays.copyOf(newArray, index);
+    }
+
+    @Test
+    public void matchesPlainArrayOnRandomSignals() {
+        Random random = new Random(12L);
+        Translator translator = new Translator(new OptimalClusterNormalizer());
+        for (int trial = 0; trial < 300; trial++) {
+            final int length = random.nextInt(CHUNK_SIZE * 20);
+            final int baseline = random.nextInt(100);
+            final boolean useTimestamps = trial % 2 == 0;
+            int[] values = new int[length];
+            long[] timestamps = new long[length];
+            // Appended frame by frame, so that signals span many chunks
+            SignalStore store = new SignalStore(new SignalStore.ChunkPool(CHUNK_SIZE, 4), 0);
+            long time = random.nextInt(1_000_000);
+            for (int i = 0; i < length; i++) {
+                // Blinks of a few lengths, with noise around the baseline
+                values[i] = (i / (1 + (i / 50) % 4) % 2 == 0 ? 150 : 20) + random.nextInt(60) - 30;
+                time += 16_000_000L + random.nextInt(2_000_000);
+                timestamps[i] = time;
+                store.append(values[i], timestamps[i]);
+            }
+            final long[] givenTimestamps = useTimestamps ? timestamps : null;
+            final int[] expected = legacyRuns(values, givenTimestamps, baseline);
+            assertArrayEquals("trial " + trial, expected, Translator.toRuns(store, useTimestamps, baseline));
+
+            Translator.Result result = translator.resolve(trial, store, useTimestamps, baseline);
+            assertEquals("trial " + trial, expected != null && expected.length >= 2, result.isSuccess());
+            if (result.isSuccess()) {
+                assertEquals("trial " + trial, new MorseDecoder().decode(new OptimalClusterNormalizer().normalize(expected)), result.getOutput());
+                // The plain array overload reads the same frames
+                assertEquals(result.getOutput(), translator.resolve(trial, values, givenTimestamps, baseline).getOutput());
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import raha.app.morsebuddy.util.MorseMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds generated morse signals sample by sample and checks when and what the streaming translator commits.
+ */
+public class StreamingTranslatorTest {
+    private static final int ON = 100;
+    private static final int OFF = 0;
+
+    /* Signal of the given text, unitLength samples per morse unit, followed by trailing space of the given units */
+    private static int[] signal(String text, int unitLength, int trailingUnits) {
+        StringBuilder units = new StringBuilder();
+        String[] words = text.split(" ");
+        for (int w = 0; w < words.length; w++) {
+            if (w > 0) {
+                units.append("0000000");
+            }
+            for (int l = 0; l < words[w].length(); l++) {
+                if (l > 0) {
+                    units.append("000");
+                }
+                String code = MorseMap.letterToMorse(words[w].charAt(l));
+                for (int e = 0; e < code.length(); e++) {
+                    if (e > 0) {
+                        units.append('0');
+                    }
+                    units.append(code.startsWith(MorseMap.SIGN_DASH, e) ? "111" : "1");
+                }
+            }
+        }
+        for (int i = 0; i < trailingUnits; i++) {
+            units.append('0');
+        }
+        int[] signal = new int[units.length() * unitLength];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = units.charAt(i / unitLength) == '1' ? ON : OFF;
+        }
+        return signal;
+    }
+
+    private static StreamingTranslator feed(int[] signal) {
+        StreamingTranslator translator = new StreamingTranslator();
+        translator.reset(OFF);
+        for (int i = 0; i < signal.length; i++) {
+            translator.push(signal[i], i);
+        }
+        return translator;
+    }
+
+    @Test
+    public void decodesWords() {
+        assertEquals("SOS HELLO WORLD", feed(signal("SOS HELLO WORLD", 5, 8)).getOutput());
+    }
+
+    @Test
+    public void learnsUnitWhenFirstMarkIsDash() {
+        assertEquals("TEST MORSE", feed(signal("TEST MORSE", 4, 8)).getOutput());
+    }
+
+    @Test
+    public void ignoresLeadingSpace() {
+        int[] signal = signal("PARIS", 6, 8);
+        int[] delayed = new int[signal.length + 50];
+        System.arraycopy(signal, 0, delayed, 50, signal.length);
+        assertEquals("PARIS", feed(delayed).getOutput());
+    }
+
+    @Test
+    public void commitsLetterShortlyAfterItEnds() {
+        final int unitLength = 5;
+        // "ET": dot, letter gap, dash
+        int[] signal = signal("ET", unitLength, 8);
+        StreamingTranslator translator = new StreamingTranslator();
+        translator.reset(OFF);
+        int committedAt = -1;
+        for (int i = 0; i < signal.length; i++) {
+            if (translator.push(signal[i], i) && committedAt < 0) {
+                committedAt = i;
+            }
+        }
+        // E ends after one unit; committed once the space exceeds the letter gap, not when T starts or the session ends
+        assertTrue("committed at " + committedAt, committedAt > unitLength * 3 && committedAt <= unitLength * 4);
+        assertEquals("ET", translator.getOutput());
+    }
+
+    @Test
+    public void morseHasLetterAndWordSpaces() {
+        StreamingTranslator translator = feed(signal("EE T", 5, 8));
+        String expected = MorseMap.SIGN_DOT + MorseMap.SIGN_SPACE_3U + MorseMap.SIGN_DOT + MorseMap.SIGN_SPACE_7U + MorseMap.SIGN_DASH + MorseMap.SIGN_SPACE_7U;
+        assertEquals(expected, translator.getMorse());
+    }
+
+    @Test
+    public void survivesFlicker() {
+        // One-frame marks and spaces, never a letter gap; pending marks fill up between spaces
+        StreamingTranslator translator = new StreamingTranslator();
+        translator.reset(50);
+        for (int i = 0; i < 1000; i++) {
+            translator.push(i % 2 == 0 ? ON : OFF, i);
+        }
+        assertEquals(1.0, translator.getUnit(), 0.0);
+    }
+
+    @Test
+    public void followsUpdatedBaseline() {
+        // Ambient light above the initial baseline, e.g. the one of the previous session
+        final int ambient = 60;
+        int[] signal = signal("HELLO WORLD", 5, 8);
+        int[] lit = new int[signal.length + 40];
+        for (int i = 0; i < lit.length; i++) {
+            lit[i] = i < 40 ? ambient : signal[i - 40] + ambient;
+        }
+        StreamingTranslator stale = new StreamingTranslator();
+        stale.reset(OFF);
+        StreamingTranslator updated = new StreamingTranslator();
+        updated.reset(OFF);
+        for (int i = 0; i < lit.length; i++) {
+            if (i == 20) {
+                // Estimate arrives while the first run is still going on
+                updated.setBaseline(ambient + ON / 2);
+            }
+            stale.push(lit[i], i);
+            updated.push(lit[i], i);
+        }
+        assertEquals("", stale.getOutput());
+        assertEquals("HELLO WORLD", updated.getOutput());
+        assertEquals(ambient + ON / 2, updated.getResult(0).getBaseline());
+    }
+
+    @Test
+    public void keepsCommittedTextWhenBaselineChanges() {
+        int[] signal = signal("SOS SOS", 5, 8);
+        StreamingTranslator translator = new StreamingTranslator();
+        translator.reset(OFF);
+        final int half = signal.length / 2;
+        for (int i = 0; i < half; i++) {
+            translator.push(signal[i], i);
+        }
+        final String committed = translator.getOutput();
+        final double unit = translator.getUnit();
+        assertEquals("SOS", committed);
+        // Still between marks and spaces
+        translator.setBaseline(ON / 2);
+        assertEquals(unit, translator.getUnit(), 0.0);
+        for (int i = half; i < signal.length; i++) {
+            translator.push(signal[i], i);
+        }
+        assertEquals("SOS SOS", translator.getOutput());
+    }
+}
@@ -0,0 +1,159 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that cancelled translations are abandoned, and that one translator serves concurrent translations.
+ */
+public class TranslatorTest {
+
+    /* Frames of a random message; marks at 200, spaces at 10 */
+    private static int[] randomFrames(Random random) {
+        final int length = 6 + random.nextInt(60);
+        int[] frames = new int[length * 24];
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            final int units = i % 2 == 0 ? (random.nextBoolean() ? 1 : 3) : (new int[]{1, 1, 3, 7})[random.nextInt(4)];
+            for (int f = 0; f < units * 3; f++) {
+                frames[index++] = i % 2 == 0 ? 200 : 10;
+            }
+        }
+        return Arrays.copyOf(frames, index);
+    }
+
+    /* Frames of random messages, long enough that every loop checks the token several times */
+    private static int[] longFrames(Random random) {
+        int[] frames = new int[0];
+        while (frames.length < 32 * CancellationToken.CHECK_INTERVAL) {
+            int[] message = randomFrames(random);
+            int[] joined = Arrays.copyOf(frames, frames.length + message.length);
+            System.arraycopy(message, 0, joined, frames.length, message.length);
+            frames = joined;
+        }
+        return frames;
+    }
+
+    /* Cancels itself at the given check; i.e. within a stage, not between stages */
+    private static CancellationToken cancelledAtCheck(final int check) {
+        return new CancellationToken() {
+            private int checks;
+
+            @Override
+            public void throwIfCancelled() {
+                if (++checks == check) {
+                    cancel();
+                }
+                super.throwIfCancelled();
+            }
+        };
+    }
+
+    @Test
+    public void loopsCheckTheToken() {
+        SignalStore signal = SignalStore.of(longFrames(new Random(67)), null);
+        try {
+            Translator.toRuns(signal, false, 100, cancelledAtCheck(2));
+            fail("runs");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        int[] runs = Translator.toRuns(signal, false, 100);
+        Translator.ArrayNormalizer[] normalizers = new Translator.ArrayNormalizer[]{
+                new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE),
+                new KMeansNormalizer(),
+                new OptimalClusterNormalizer(),
+                new ViterbiNormalizer()
+        };
+        for (Translator.ArrayNormalizer normalizer : normalizers) {
+            try {
+                normalizer.normalize(runs.clone(), cancelledAtCheck(2));
+                fail(normalizer.getClass().getSimpleName());
+            } catch (CancellationException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void cancelledWithinStagesReturnsNull() {
+        Translator translator = new Translator(new OptimalClusterNormalizer());
+        SignalStore signal = SignalStore.of(longFrames(new Random(71)), null);
+        assertNull(translator.resolve(1, signal, false, 100, cancelledAtCheck(2)));
+        // Past the runs, within normalization
+        final int[] runChecks = new int[1];
+        Translator.toRuns(signal, false, 100, new CancellationToken() {
+            @Override
+            public void throwIfCancelled() {
+                runChecks[0]++;
+            }
+        });
+        assertNull(translator.resolve(1, signal, false, 100, cancelledAtCheck(runChecks[0] + 2)));
+
+        // Runs left unbuilt by a cancelled translation are built by the next one
+        BaselineIndex index = BaselineIndex.of(signal, false);
+        assertNull(translator.resolve(1, index, 100, cancelledAtCheck(2)));
+        assertArrayEquals(Translator.toRuns(signal, false, 100), index.getRuns(100));
+        assertEquals(translator.resolve(1, signal, false, 100).getOutput(), translator.resolve(1, index, 100, new CancellationToken()).getOutput());
+    }
+
+    @Test
+    public void cancelledTranslationReturnsNull() {
+        Translator translator = new Translator(new KMeansNormalizer());
+        CancellationToken token = new CancellationToken();
+        SignalStore signal = SignalStore.of(randomFrames(new Random(59)), null);
+        assertNotNull(translator.resolve(1, signal, false, 100, token));
+        token.cancel();
+        assertNull(translator.resolve(1, signal, false, 100, token));
+        assertNull(translator.resolve(1, BaselineIndex.of(signal, false), 100, token));
+
+        // The shared token is never cancelled
+        CancellationToken.NONE.cancel();
+        assertFalse(CancellationToken.NONE.isCancelled());
+    }
+
+    @Test
+    public void concurrentTranslationsMatchSequential() throws Exception {
+        final Translator translator = new Translator(new RatioNormalizer(new KMeansNormalizer(), RatioNormalizer.DEFAULT_MIN_CONFIDENCE));
+        Random random = new Random(61);
+        List<SignalStore> signals = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            SignalStore signal = SignalStore.of(randomFrames(random), null);
+            signals.add(signal);
+            expected.add(translator.resolve(i, signal, false, 100).getOutput());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Translator.Result>> futures = new ArrayList<>();
+            for (int i = 0; i < signals.size(); i++) {
+                final int submitCode = i;
+                final SignalStore signal = signals.get(i);
+                futures.add(executor.submit(new Callable<Translator.Result>() {
+                    @Override
+                    public Translator.Result call() {
+                        return translator.resolve(submitCode, signal, false, 100);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Translator.Result result = futures.get(i).get();
+                assertEquals(i, result.getSubmitCode());
+                assertEquals(expected.get(i), result.getOutput());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package raha.app.morsebuddy.system;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a drifting unit is tracked, and that the stream agrees with the batch normalization.
+ */
+public class ViterbiNormalizerTest {
+    private static final int[] UNITS = new int[]{1, -1, 3, -3, 1, -1, 1, -7, 3, -1, 3, -3, 1, -1, 3, -1, 1, -7,
+            3, -1, 1, -1, 3, -3, 1, -3, 3, -1, 3, -1, 3, -7, 1, -1, 1, -1, 1, -3, 3, -1, 1, -1, 3};
+
+    /* Speed changes by the given factor from the first element to the last */
+    private static int[] driftingRuns(Random random, int unit, double drift, double jitter) {
+        int[] runs = new int[UNITS.length];
+        for (int i = 0; i < UNITS.length; i++) {
+            final double current = unit * Math.pow(drift, (double) i / (UNITS.length - 1));
+            runs[i] = (int) Math.round(UNITS[i] * current * (1.0 + jitter * random.nextGaussian()));
+        }
+        return runs;
+    }
+
+    @Test
+    public void tracksDriftingUnit() {
+        ViterbiNormalizer normalizer = new ViterbiNormalizer();
+        Random random = new Random(41);
+        for (int trial = 0; trial < 100; trial++) {
+            // Three times slower at the end; a dash at the start is as long as a dot at the end
+            final double drift = trial % 2 == 0 ? 3.0 : 1.0 / 3.0;
+            int[] runs = driftingRuns(random, 20_000 + random.nextInt(100_000), drift, 0.05);
+            assertArrayEquals(UNITS, normalizer.normalize(runs));
+        }
+    }
+
+    @Test
+    public void streamMatchesBatch() {
+        Random random = new Random(43);
+        int[] runs = driftingRuns(random, 50_000, 2.0, 0.1);
+        long shortest = Long.MAX_VALUE;
+        long longest = 0L;
+        for (int run : runs) {
+            shortest = Math.min(shortest, Math.abs(run));
+            longest = Math.max(longest, Math.abs(run));
+        }
+        ViterbiNormalizer.Stream stream = new ViterbiNormalizer.Stream(shortest / 2.0, longest);
+        for (int i = 0; i < runs.length; i++) {
+            stream.append(runs[i]);
+            assertEquals(i + 1, stream.getCount());
+            assertEquals(i + 1, stream.decode().length);
+        }
+        assertArrayEquals(new ViterbiNormalizer().normalize(runs), stream.decode());
+        assertTrue(stream.getUnit() > 50_000 * 1.5);
+
+        stream.reset();
+        assertEquals(0, stream.getCount());
+        assertEquals(0.0, stream.getUnit(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleSign() {
+        new ViterbiNormalizer().normalize(new int[]{-3, -1});
+    }
+}